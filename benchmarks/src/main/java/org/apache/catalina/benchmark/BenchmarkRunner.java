@@ -0,0 +1,35 @@
+package org.apache.catalina.benchmark;
+
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Entry point of the benchmark jar.  Runs the benchmarks selected on the
+ * command line, with the usual JMH options, and always attaches the GC
+ * profiler so that the allocation rate per operation is reported next to
+ * the throughput.
+ */
+
+public final class BenchmarkRunner {
+
+
+    public static void main(String args[])
+        throws CommandLineOptionException, RunnerException {
+
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+
+    }
+
+
+}
@@ -0,0 +1,61 @@
+package org.apache.catalina.benchmark;
+
+
+import java.io.InputStream;
+
+
+/**
+ * Input stream returning the same bytes over and over, so that a parser
+ * reading from it can be driven indefinitely without being reset.
+ */
+
+public final class ReplayInputStream extends InputStream {
+
+
+    /**
+     * Construct a stream replaying the specified bytes.
+     *
+     * @param data The bytes to be replayed
+     */
+    public ReplayInputStream(byte data[]) {
+
+        this.data = data;
+
+    }
+
+
+    /**
+     * The bytes replayed by this stream.
+     */
+    private byte data[] = null;
+
+
+    /**
+     * The position of the next byte to be returned.
+     */
+    private int pos = 0;
+
+
+    public int read() {
+
+        int b = data[pos++] & 0xff;
+        if (pos == data.length)
+            pos = 0;
+        return (b);
+
+    }
+
+
+    public int read(byte b[], int off, int len) {
+
+        int n = Math.min(len, data.length - pos);
+        System.arraycopy(data, pos, b, off, n);
+        pos += n;
+        if (pos == data.length)
+            pos = 0;
+        return (n);
+
+    }
+
+
+}
@@ -0,0 +1,64 @@
+package org.apache.catalina.connector.http;
+
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import org.apache.catalina.benchmark.ReplayInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Parsing of the headers of a typical browser request into an
+ * <code>HttpRequestImpl</code> by <code>HttpProcessor.parseHeaders()</code>,
+ * including the handling of the headers it recognizes.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HttpProcessorBenchmark {
+
+
+    private SocketInputStream input = null;
+
+    private HttpProcessor processor = null;
+
+    private HttpRequestImpl request = null;
+
+
+    @Setup
+    public void setup() throws Exception {
+
+        processor = new HttpProcessor(new HttpConnector(), 0);
+        Field field = HttpProcessor.class.getDeclaredField("request");
+        field.setAccessible(true);
+        request = (HttpRequestImpl) field.get(processor);
+        input = new SocketInputStream(new ReplayInputStream
+            (SocketInputStreamBenchmark.HEADERS.getBytes()), 2048);
+
+    }
+
+
+    @Benchmark
+    public HttpRequestImpl parseHeaders() throws Exception {
+
+        request.recycle();
+        processor.parseHeaders(input);
+        return (request);
+
+    }
+
+
+}
@@ -0,0 +1,94 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.catalina.benchmark.ReplayInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Parsing of the request line and of the headers of a typical browser
+ * request by <code>SocketInputStream</code>.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SocketInputStreamBenchmark {
+
+
+    static final String REQUEST_LINE =
+        "GET /examples/servlet/HelloWorldExample?name=value HTTP/1.1\r\n";
+
+
+    static final String HEADERS =
+        "Host: localhost:8080\r\n" +
+        "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:109.0) " +
+        "Gecko/20100101 Firefox/115.0\r\n" +
+        "Accept: text/html,application/xhtml+xml,application/xml;" +
+        "q=0.9,*/*;q=0.8\r\n" +
+        "Accept-Language: en-US,en;q=0.5\r\n" +
+        "Accept-Encoding: gzip, deflate\r\n" +
+        "Connection: keep-alive\r\n" +
+        "Cookie: JSESSIONID=4F2A1B9C0D3E5F6A7B8C9D0E1F2A3B4C\r\n" +
+        "\r\n";
+
+
+    private SocketInputStream headerInput = null;
+
+    private HttpHeader header = new HttpHeader();
+
+    private SocketInputStream requestInput = null;
+
+    private HttpRequestLine requestLine = new HttpRequestLine();
+
+
+    @Setup
+    public void setup() {
+
+        requestInput = new SocketInputStream
+            (new ReplayInputStream(REQUEST_LINE.getBytes()), 2048);
+        headerInput = new SocketInputStream
+            (new ReplayInputStream(HEADERS.getBytes()), 2048);
+
+    }
+
+
+    @Benchmark
+    public HttpRequestLine readRequestLine() throws Exception {
+
+        requestLine.recycle();
+        requestInput.readRequestLine(requestLine);
+        return (requestLine);
+
+    }
+
+
+    @Benchmark
+    public int readHeaders() throws IOException {
+
+        int n = 0;
+        while (true) {
+            headerInput.readHeader(header);
+            if (header.nameEnd == 0)
+                return (n);
+            n++;
+        }
+
+    }
+
+
+}
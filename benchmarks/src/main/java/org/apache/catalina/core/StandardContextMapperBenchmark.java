@@ -0,0 +1,84 @@
+package org.apache.catalina.core;
+
+
+import java.util.concurrent.TimeUnit;
+import org.apache.catalina.Container;
+import org.apache.catalina.connector.HttpRequestBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Mapping of request URIs to the wrappers of a <code>StandardContext</code>
+ * by <code>StandardContextMapper</code>, for each of the kinds of servlet
+ * mapping.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StandardContextMapperBenchmark {
+
+
+    @Param({ "/exact/servlet", "/prefix/a/b/c/d", "/dir/page.jsp",
+             "/static/images/logo.png" })
+    public String uri;
+
+
+    private StandardContextMapper mapper = null;
+
+    private HttpRequestBase request = new HttpRequestBase();
+
+
+    @Setup
+    public void setup() {
+
+        StandardContext context = new StandardContext();
+        context.setPath("/app");
+        addServlet(context, "exact", "/exact/servlet");
+        addServlet(context, "prefix", "/prefix/*");
+        addServlet(context, "jsp", "*.jsp");
+        addServlet(context, "default", "/");
+        for (int i = 0; i < 20; i++)
+            addServlet(context, "servlet" + i, "/servlet" + i + "/*");
+        mapper = new StandardContextMapper();
+        mapper.setContainer(context);
+        request.setContext(context);
+        request.setContextPath("/app");
+        request.setRequestURI("/app" + uri);
+
+    }
+
+
+    @Benchmark
+    public Container map() {
+
+        return (mapper.map(request, false));
+
+    }
+
+
+    private static void addServlet(StandardContext context, String name,
+                                   String pattern) {
+
+        StandardWrapper wrapper = new StandardWrapper();
+        wrapper.setName(name);
+        context.addChild(wrapper);
+        context.addServletMapping(pattern, name);
+
+    }
+
+
+}
@@ -0,0 +1,98 @@
+package org.apache.catalina.core;
+
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletException;
+import org.apache.catalina.Request;
+import org.apache.catalina.Response;
+import org.apache.catalina.ValveContext;
+import org.apache.catalina.connector.HttpRequestBase;
+import org.apache.catalina.connector.HttpResponseBase;
+import org.apache.catalina.valves.ValveBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Invocation of a request through a <code>StandardPipeline</code> of
+ * pass-through valves, measuring the cost of the pipeline itself.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StandardPipelineBenchmark {
+
+
+    @Param({ "1", "4" })
+    public int valves;
+
+
+    private StandardPipeline pipeline = null;
+
+    private HttpRequestBase request = new HttpRequestBase();
+
+    private HttpResponseBase response = new HttpResponseBase();
+
+
+    @Setup
+    public void setup() {
+
+        pipeline = new StandardPipeline();
+        for (int i = 0; i < valves; i++)
+            pipeline.addValve(new PassValve());
+        pipeline.setBasic(new BasicValve());
+
+    }
+
+
+    @Benchmark
+    public HttpRequestBase invoke() throws IOException, ServletException {
+
+        pipeline.invoke(request, response);
+        return (request);
+
+    }
+
+
+    /**
+     * Valve passing the request on to the next valve.
+     */
+    static final class PassValve extends ValveBase {
+
+        public void invoke(Request request, Response response,
+                           ValveContext context)
+            throws IOException, ServletException {
+            context.invokeNext(request, response);
+        }
+
+    }
+
+
+    /**
+     * Basic valve ending the pipeline.
+     */
+    static final class BasicValve extends ValveBase {
+
+        public void invoke(Request request, Response response,
+                           ValveContext context) {
+            ;
+        }
+
+    }
+
+
+}
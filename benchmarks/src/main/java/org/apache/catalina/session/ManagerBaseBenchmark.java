@@ -0,0 +1,111 @@
+package org.apache.catalina.session;
+
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.loader.WebappLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Lookup of active sessions by <code>ManagerBase.findSession()</code>, and
+ * creation of new sessions, from several threads at once.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ManagerBaseBenchmark {
+
+
+    @Param({ "1000", "100000" })
+    public int sessions;
+
+
+    private String ids[] = null;
+
+    private StandardManager manager = null;
+
+
+    @Setup
+    public void setup() throws LifecycleException {
+
+        // Start the manager, so that expired sessions are released by its
+        // background thread as they would be in a running server
+        StandardContext context = new StandardContext();
+        context.setLoader(new WebappLoader());
+        manager = new StandardManager();
+        manager.setContainer(context);
+        manager.setPathname(null);
+        manager.setCheckInterval(1);
+        manager.start();
+        ids = new String[sessions];
+        for (int i = 0; i < sessions; i++)
+            ids[i] = manager.createSession().getId();
+
+    }
+
+
+    @TearDown
+    public void tearDown() throws LifecycleException {
+
+        manager.stop();
+
+    }
+
+
+    @Benchmark
+    public Session findSession(Cursor cursor) throws IOException {
+
+        return (manager.findSession(ids[cursor.next(ids.length)]));
+
+    }
+
+
+    @Benchmark
+    public Session createSession() {
+
+        Session session = manager.createSession();
+        session.expire();
+        return (session);
+
+    }
+
+
+    /**
+     * Position of a thread in the array of session identifiers.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int pos = 0;
+
+        int next(int length) {
+            if (++pos >= length)
+                pos = 0;
+            return (pos);
+        }
+
+    }
+
+
+}
@@ -0,0 +1,66 @@
+package org.apache.catalina.util;
+
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Parsing of a form encoded request body and decoding of a URL encoded
+ * path by <code>RequestUtil</code>.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestUtilBenchmark {
+
+
+    static final byte FORM[] =
+        ("username=jdoe&password=s%3Acr%3Dt&remember=on&" +
+         "redirect=%2Fexamples%2Fservlet%2FHelloWorldExample&" +
+         "comment=Hello+world%21+caf%C3%A9&tag=a&tag=b&tag=c").getBytes();
+
+
+    static final String PATH =
+        "/examples/jsp/caf%C3%A9/num%C3%A9ro%201/index.jsp";
+
+
+    private byte data[] = new byte[FORM.length];
+
+    private HashMap map = new HashMap();
+
+
+    @Benchmark
+    public HashMap parseParameters() throws Exception {
+
+        // The parameters are decoded in place
+        System.arraycopy(FORM, 0, data, 0, FORM.length);
+        map.clear();
+        RequestUtil.parseParameters(map, data, "UTF-8");
+        return (map);
+
+    }
+
+
+    @Benchmark
+    public String URLDecode() {
+
+        return (RequestUtil.URLDecode(PATH, "UTF-8"));
+
+    }
+
+
+}
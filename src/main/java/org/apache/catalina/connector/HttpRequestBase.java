@@ -6,13 +6,9 @@ import java.io.UnsupportedEncodingException;
 import java.security.AccessController;
 import java.security.Principal;
 import java.security.PrivilegedAction;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Locale;
 import java.util.Map;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletRequest;
@@ -27,7 +23,9 @@ import org.apache.catalina.Manager;
 import org.apache.catalina.Realm;
 import org.apache.catalina.Session;
 import org.apache.catalina.util.Enumerator;
+import org.apache.catalina.util.FastHttpDateFormat;
 import org.apache.catalina.util.ParameterMap;
+import org.apache.catalina.util.ParameterParser;
 import org.apache.catalina.util.RequestUtil;
 
 
@@ -91,16 +89,6 @@ public class HttpRequestBase
     protected static ArrayList empty = new ArrayList();
 
 
-    /**
-     * The set of SimpleDateFormat formats to use in getDateHeader().
-     */
-    protected SimpleDateFormat formats[] = {
-        new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US),
-        new SimpleDateFormat("EEEEEE, dd-MMM-yy HH:mm:ss zzz", Locale.US),
-        new SimpleDateFormat("EEE MMMM d HH:mm:ss yyyy", Locale.US)
-    };
-
-
     /**
      * The facade associated with this request.
      */
@@ -570,7 +558,8 @@ public class HttpRequestBase
             ;
         }
 
-        // Parse any parameters specified in the input stream
+        // Parse any parameters specified in the input stream, while reading
+        // it, rather than reading the whole body into memory first
         String contentType = getContentType();
         if (contentType == null)
             contentType = "";
@@ -586,16 +575,10 @@ public class HttpRequestBase
 
             try {
                 int max = getContentLength();
-                int len = 0;
-                byte buf[] = new byte[getContentLength()];
+                ParameterParser parser =
+                    new ParameterParser(results, encoding);
                 ServletInputStream is = getInputStream();
-                while (len < max) {
-                    int next = is.read(buf, len, max - len);
-                    if (next < 0 ) {
-                        break;
-                    }
-                    len += next;
-                }
+                int len = parser.parse(is, max);
                 is.close();
                 if (len < max) {
                     // FIX ME, mod_jk when sending an HTTP POST will sometimes
@@ -611,15 +594,11 @@ public class HttpRequestBase
                     msg.append(max);
                     msg.append(" Read: ");
                     msg.append(len);
-                    msg.append("\n  Bytes Read: ");
-                    if ( len > 0 ) {
-                        msg.append(new String(buf,0,len));
-                    }
                     log(msg.toString());
                     throw new RuntimeException
                         (sm.getString("httpRequestBase.contentLengthMismatch"));
                 }
-                RequestUtil.parseParameters(results, buf, encoding);
+                parser.finish();
             } catch (UnsupportedEncodingException ue) {
                 ;
             } catch (IOException e) {
@@ -805,20 +784,11 @@ public class HttpRequestBase
         if (value == null)
             return (-1L);
 
-        // Work around a bug in SimpleDateFormat in pre-JDK1.2b4
-        // (Bug Parade bug #4106807)
-        value += " ";
-
         // Attempt to convert the date header in a variety of formats
-        for (int i = 0; i < formats.length; i++) {
-            try {
-                Date date = formats[i].parse(value);
-                return (date.getTime());
-            } catch (ParseException e) {
-                ;
-            }
-        }
-        throw new IllegalArgumentException(value);
+        long date = FastHttpDateFormat.parseDate(value);
+        if (date == -1L)
+            throw new IllegalArgumentException(value);
+        return (date);
 
     }
 
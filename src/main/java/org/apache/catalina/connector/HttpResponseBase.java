@@ -10,9 +10,7 @@ import java.net.MalformedURLException;
 import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
 import java.security.PrivilegedActionException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
@@ -27,6 +25,7 @@ import org.apache.catalina.HttpResponse;
 import org.apache.catalina.Globals;
 import org.apache.catalina.Logger;
 import org.apache.catalina.util.CookieTools;
+import org.apache.catalina.util.FastHttpDateFormat;
 import org.apache.catalina.util.URL;
 
 
@@ -60,16 +59,6 @@ public class HttpResponseBase
     }
 
 
-    // ----------------------------------------------------------- Constructors
-
-
-    public HttpResponseBase() {
-
-        format.setTimeZone(TimeZone.getTimeZone("GMT"));
-
-    }
-
-
     // ----------------------------------------------------- Instance Variables
 
 
@@ -79,13 +68,6 @@ public class HttpResponseBase
     protected ArrayList cookies = new ArrayList();
 
 
-    /**
-     * The date format we will use for creating date headers.
-     */
-    protected final SimpleDateFormat format =
-        new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz",Locale.US);
-
-
     /**
      * The facade associated with this response.
      */
@@ -857,7 +839,7 @@ public class HttpResponseBase
         if (included)
             return;     // Ignore any call from an included servlet
 
-        addHeader(name, format.format(new Date(value)));
+        addHeader(name, FastHttpDateFormat.formatDate(value));
 
     }
 
@@ -1099,7 +1081,7 @@ public class HttpResponseBase
         if (included)
             return;     // Ignore any call from an included servlet
 
-        setHeader(name, format.format(new Date(value)));
+        setHeader(name, FastHttpDateFormat.formatDate(value));
 
     }
 
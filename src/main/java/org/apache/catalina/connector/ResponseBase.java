@@ -1,10 +1,13 @@
 package org.apache.catalina.connector;
 
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Locale;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletResponse;
@@ -579,17 +582,169 @@ public abstract class ResponseBase
             return;
         }
 
-        // Flush the buffer and start writing full-buffer-size chunks
+        // Flush the buffer, then hand the data to the output stream in one
+        // piece if it is at least as large as the buffer (the output stream
+        // may then send it along with the flushed bytes in a single write)
         flushBuffer();
-        int iterations = len / buffer.length;
-        int leftoverStart = iterations * buffer.length;
-        int leftoverLen = len - leftoverStart;
-        for (int i = 0; i < iterations; i++)
-            write(b, off + (i * buffer.length), buffer.length);
+        if (len >= buffer.length) {
+            output.write(b, off, len);
+            contentCount += len;
+            return;
+        }
 
         // Write the remainder (guaranteed to fit in the buffer)
-        if (leftoverLen > 0)
-            write(b, off + leftoverStart, leftoverLen);
+        System.arraycopy(b, off, buffer, bufferCount, len);
+        bufferCount += len;
+        contentCount += len;
+
+    }
+
+
+    /**
+     * Write the remaining bytes of the specified buffer to our output
+     * stream.  Flush the output stream as necessary.
+     *
+     * @param src The buffer containing the bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void write(ByteBuffer src) throws IOException {
+
+        if (suspended)
+            throw new IOException
+                (sm.getString("responseBase.write.suspended"));
+
+        // If the whole thing fits in the buffer, just put it there
+        int len = src.remaining();
+        if (len == 0)
+            return;
+        if (len <= (buffer.length - bufferCount)) {
+            src.get(buffer, bufferCount, len);
+            bufferCount += len;
+            contentCount += len;
+            return;
+        }
+
+        // Flush the buffer, then hand the data to the output stream
+        flushBuffer();
+        writeOutput(src);
+        contentCount += len;
+
+    }
+
+
+    /**
+     * Write <code>len</code> bytes of the specified file, starting at the
+     * specified position, to our output stream.  Flush the output stream as
+     * necessary.  The position of the channel is not modified.
+     *
+     * @param src The channel of the file to be written
+     * @param position Position in the file of the first byte to be written
+     * @param len The number of bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void write(FileChannel src, long position, long len)
+        throws IOException {
+
+        if (suspended)
+            throw new IOException
+                (sm.getString("responseBase.write.suspended"));
+
+        // If the whole thing fits in the buffer, just read it there
+        if (len <= 0)
+            return;
+        if (len <= (buffer.length - bufferCount)) {
+            read(src, position, (int) len);
+            contentCount += (int) len;
+            return;
+        }
+
+        // Flush the buffer, then hand the file to the output stream
+        flushBuffer();
+        writeOutput(src, position, len);
+        contentCount += (int) len;
+
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    /**
+     * Write the remaining bytes of the specified buffer to the output stream
+     * associated with this Response.  This implementation copies them
+     * through the response buffer, which must be empty; subclasses may hand
+     * the buffer directly to an output stream able to write it.
+     *
+     * @param src The buffer containing the bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected void writeOutput(ByteBuffer src) throws IOException {
+
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), buffer.length);
+            src.get(buffer, 0, n);
+            output.write(buffer, 0, n);
+        }
+
+    }
+
+
+    /**
+     * Write <code>len</code> bytes of the specified file, starting at the
+     * specified position, to the output stream associated with this
+     * Response.  This implementation reads them through the response
+     * buffer, which must be empty; subclasses may hand the file to an
+     * output stream able to transfer it directly to the socket.
+     *
+     * @param src The channel of the file to be written
+     * @param position Position in the file of the first byte to be written
+     * @param len The number of bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected void writeOutput(FileChannel src, long position, long len)
+        throws IOException {
+
+        while (len > 0) {
+            int n = (int) Math.min(len, buffer.length);
+            read(src, position, n);
+            output.write(buffer, 0, n);
+            bufferCount = 0;
+            position += n;
+            len -= n;
+        }
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Read <code>len</code> bytes of the specified file, starting at the
+     * specified position, at the end of the response buffer.
+     *
+     * @param src The channel of the file to be read
+     * @param position Position in the file of the first byte to be read
+     * @param len The number of bytes to be read
+     *
+     * @exception IOException if an input/output error occurs, or if the
+     *  end of the file is reached first
+     */
+    private void read(FileChannel src, long position, int len)
+        throws IOException {
+
+        ByteBuffer dst = ByteBuffer.wrap(buffer, bufferCount, len);
+        while (dst.hasRemaining()) {
+            int n = src.read(dst, position);
+            if (n < 0)
+                throw new EOFException();
+            position += n;
+        }
+        bufferCount += len;
 
     }
 
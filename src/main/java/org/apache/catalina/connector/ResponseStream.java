@@ -3,6 +3,8 @@ package org.apache.catalina.connector;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import javax.servlet.ServletOutputStream;
 import org.apache.catalina.Response;
 import org.apache.catalina.util.StringManager;
@@ -254,6 +256,74 @@ public class ResponseStream
     }
 
 
+    /**
+     * Write the remaining bytes of the specified buffer to our output
+     * stream.  Depending on the connector, content held outside of the heap
+     * may be sent without being copied to the heap.
+     *
+     * @param src The buffer containing the bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void write(ByteBuffer src) throws IOException {
+
+        if (suspended)
+            return;
+
+        if (closed)
+            throw new IOException(sm.getString("responseStream.write.closed"));
+
+        int len = src.remaining();
+        int actual = len;
+        if ((length > 0) && ((count + len) >= length))
+            actual = length - count;
+        int limit = src.limit();
+        src.limit(src.position() + actual);
+        try {
+            ((ResponseBase) response).write(src);
+        } finally {
+            src.limit(limit);
+        }
+        count += actual;
+        if (actual < len)
+            throw new IOException(sm.getString("responseStream.write.count"));
+
+    }
+
+
+    /**
+     * Write <code>len</code> bytes of the specified file, starting at the
+     * specified position, to our output stream.  Depending on the
+     * connector, the bytes may be transferred from the file to the socket
+     * without being copied to the heap.  The position of the channel is
+     * not modified.
+     *
+     * @param src The channel of the file to be written
+     * @param position Position in the file of the first byte to be written
+     * @param len The number of bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void write(FileChannel src, long position, long len)
+        throws IOException {
+
+        if (suspended)
+            return;
+
+        if (closed)
+            throw new IOException(sm.getString("responseStream.write.closed"));
+
+        long actual = len;
+        if ((length > 0) && ((count + len) >= length))
+            actual = length - count;
+        ((ResponseBase) response).write(src, position, actual);
+        count += (int) actual;
+        if (actual < len)
+            throw new IOException(sm.getString("responseStream.write.count"));
+
+    }
+
+
     // -------------------------------------------------------- Package Methods
 
 
@@ -37,6 +37,68 @@ final class DefaultHeaders {
         new HttpHeader("transfer-encoding", "chunked");
 
 
+    /**
+     * Identifiers of the headers the processor acts upon, as returned by
+     * <code>lookup()</code>.
+     */
+    static final int UNKNOWN = -1;
+    static final int AUTHORIZATION = 0;
+    static final int ACCEPT_LANGUAGE = 1;
+    static final int COOKIE = 2;
+    static final int CONTENT_LENGTH = 3;
+    static final int CONTENT_TYPE = 4;
+    static final int HOST = 5;
+    static final int CONNECTION = 6;
+    static final int EXPECT = 7;
+    static final int TRANSFER_ENCODING = 8;
+
+
+    /**
+     * The known header names, indexed by identifier.
+     */
+    private static final char[][] NAMES = {
+        AUTHORIZATION_NAME, ACCEPT_LANGUAGE_NAME, COOKIE_NAME,
+        CONTENT_LENGTH_NAME, CONTENT_TYPE_NAME, HOST_NAME, CONNECTION_NAME,
+        EXPECT_NAME, TRANSFER_ENCODING_NAME
+    };
+
+
+    /**
+     * Perfect hash table of the known header names: the slot computed from
+     * the hash code of a known name holds its identifier, and no two known
+     * names share a slot.  Empty slots hold <code>UNKNOWN</code>.
+     */
+    private static final int[] TABLE;
+
+
+    /**
+     * Mask applied to the mixed hash code to obtain a slot.
+     */
+    private static final int MASK;
+
+
+    static {
+        int size = 16;
+        int[] table = null;
+        while (table == null) {
+            table = new int[size];
+            for (int i = 0; i < size; i++)
+                table[i] = UNKNOWN;
+            for (int i = 0; i < NAMES.length; i++) {
+                int slot = slot(hash(NAMES[i]), size - 1);
+                if (table[slot] != UNKNOWN) {
+                    table = null;
+                    size *= 2;
+                    break;
+                }
+                table[slot] = i;
+            }
+        }
+        TABLE = table;
+        MASK = size - 1;
+    }
+
+
     // ----------------------------------------------------------- Constructors
 
 
@@ -49,6 +111,50 @@ final class DefaultHeaders {
     // --------------------------------------------------------- Public Methods
 
 
+    /**
+     * Return the identifier of the specified header, or <code>UNKNOWN</code>
+     * if the processor does not act upon it.  The header name must already
+     * be lower case.  At most one name comparison is performed.
+     *
+     * @param header The header to look up
+     */
+    static int lookup(HttpHeader header) {
+
+        int id = TABLE[slot(header.hashCode(), MASK)];
+        if ((id != UNKNOWN) && header.equals(NAMES[id]))
+            return (id);
+        return (UNKNOWN);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return the hash code of the specified name, computed the same way as
+     * <code>HttpHeader.hashCode()</code>.
+     */
+    private static int hash(char[] name) {
+
+        int h = 0;
+        for (int i = 0; i < name.length; i++)
+            h = 31 * h + name[i];
+        return (h);
+
+    }
+
+
+    /**
+     * Return the table slot of the specified hash code.
+     */
+    private static int slot(int h, int mask) {
+
+        return ((h ^ (h >>> 7) ^ (h >>> 16)) & mask);
+
+    }
+
+
     // --------------------------------------------------------- Object Methods
 
 
@@ -2,11 +2,16 @@ package org.apache.catalina.connector.http;
 
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.BindException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.security.AccessControlException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.Stack;
 import java.util.Vector;
 import java.security.KeyStoreException;
@@ -83,6 +88,19 @@ public final class HttpConnector
     private Vector created = new Vector();
 
 
+    /**
+     * The sockets currently being processed on their own thread, when
+     * running in virtual thread mode.
+     */
+    private Set connections = Collections.synchronizedSet(new HashSet());
+
+
+    /**
+     * The identifier of the next connection processed on its own thread.
+     */
+    private int connectionSequence = 0;
+
+
     /**
      * The current number of processors that have been created.
      */
@@ -251,6 +269,26 @@ public final class HttpConnector
     private boolean tcpNoDelay = true;
 
 
+    /**
+     * Should each connection be processed on its own virtual thread instead
+     * of a pooled processor?
+     */
+    private boolean useVirtualThreads = false;
+
+
+    /**
+     * The <code>Thread.ofVirtual()</code> method, or <code>null</code> if
+     * virtual threads are not used or not supported by this JVM.
+     */
+    private Method ofVirtual = null;
+
+
+    /**
+     * The <code>Thread.Builder.unstarted(Runnable)</code> method.
+     */
+    private Method unstarted = null;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -431,10 +469,13 @@ public final class HttpConnector
 
 
     /**
-     * Return the current number of processors that have been created.
+     * Return the current number of processors that have been created, or
+     * the number of connections being processed in virtual thread mode.
      */
     public int getCurProcessors() {
 
+        if (useVirtualThreads)
+            return (connections.size());
         return (curProcessors);
 
     }
@@ -726,6 +767,32 @@ public final class HttpConnector
     }
 
 
+    /**
+     * Return the virtual thread mode flag.
+     */
+    public boolean getUseVirtualThreads() {
+
+        return (this.useVirtualThreads);
+
+    }
+
+
+    /**
+     * Set the virtual thread mode flag.  When set, each accepted connection
+     * is processed by a new <code>HttpProcessor</code> on its own virtual
+     * thread; the processor pool and its <code>minProcessors</code> and
+     * <code>maxProcessors</code> limits are not used.  If the JVM does not
+     * support virtual threads, a daemon platform thread is used instead.
+     *
+     * @param useVirtualThreads The new virtual thread mode flag
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+
+        this.useVirtualThreads = useVirtualThreads;
+
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -876,6 +943,81 @@ public final class HttpConnector
     }
 
 
+    /**
+     * Create and start a new thread (virtual if supported) which processes
+     * the specified socket with a processor of its own.
+     *
+     * @param socket The socket to be processed
+     */
+    private void processOnThread(Socket socket) {
+
+        HttpProcessor processor =
+            new HttpProcessor(this, connectionSequence++);
+        Thread thread = null;
+        try {
+            thread = newThread(new ConnectionTask(processor, socket),
+                               processor.toString());
+        } catch (Throwable t) {
+            log("processOnThread", t);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                ;
+            }
+            return;
+        }
+        connections.add(socket);
+        thread.start();
+
+    }
+
+
+    /**
+     * Create (but do not start) a thread that will run the specified task.
+     * A virtual thread is returned if they are supported by this JVM,
+     * otherwise a daemon platform thread.
+     *
+     * @param task The task to run
+     * @param name The name of the thread
+     *
+     * @exception Exception if the virtual thread cannot be created
+     */
+    private Thread newThread(Runnable task, String name) throws Exception {
+
+        if (ofVirtual != null) {
+            Thread thread = (Thread) unstarted.invoke
+                (ofVirtual.invoke(null, new Object[0]), new Object[] { task });
+            thread.setName(name);
+            return (thread);
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return (thread);
+
+    }
+
+
+    /**
+     * Look up the virtual thread factory methods of this JVM, which are
+     * accessed reflectively so that this class still runs on JVMs without
+     * virtual threads.
+     */
+    private void initVirtualThreads() {
+
+        try {
+            Class builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual", new Class[0]);
+            unstarted = builder.getMethod("unstarted",
+                                          new Class[] { Runnable.class });
+        } catch (Throwable t) {
+            log(sm.getString("httpConnector.noVirtualThreads"));
+            ofVirtual = null;
+            unstarted = null;
+        }
+
+    }
+
+
     /**
      * Open and return the server socket for this Connector.  If an IP
      * address has been specified, the socket will be opened only on that
@@ -999,6 +1141,12 @@ public final class HttpConnector
                 continue;
             }
 
+            // In virtual thread mode, process this socket on its own thread
+            if (useVirtualThreads) {
+                processOnThread(socket);
+                continue;
+            }
+
             // Hand this socket off to an appropriate processor
             HttpProcessor processor = createProcessor();
             if (processor == null) {
@@ -1155,10 +1303,12 @@ public final class HttpConnector
         started = true;
 
         // Start our background thread
+        if (useVirtualThreads)
+            initVirtualThreads();
         threadStart();
 
         // Create the specified minimum number of processors
-        while (curProcessors < minProcessors) {
+        while (!useVirtualThreads && (curProcessors < minProcessors)) {
             if ((maxProcessors > 0) && (curProcessors >= maxProcessors))
                 break;
             HttpProcessor processor = newProcessor();
@@ -1182,6 +1332,19 @@ public final class HttpConnector
         lifecycle.fireLifecycleEvent(STOP_EVENT, null);
         started = false;
 
+        // Close the connections processed on their own thread
+        synchronized (connections) {
+            Iterator sockets = connections.iterator();
+            while (sockets.hasNext()) {
+                try {
+                    ((Socket) sockets.next()).close();
+                } catch (IOException e) {
+                    ;
+                }
+            }
+            connections.clear();
+        }
+
         // Gracefully shut down all processors we have created
         for (int i = created.size() - 1; i >= 0; i--) {
             HttpProcessor processor = (HttpProcessor) created.elementAt(i);
@@ -1211,4 +1374,35 @@ public final class HttpConnector
     }
 
 
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * Processes all the requests of a single connection on the calling
+     * thread, in virtual thread mode.
+     */
+    private final class ConnectionTask implements Runnable {
+
+        private HttpProcessor processor = null;
+
+        private Socket socket = null;
+
+        ConnectionTask(HttpProcessor processor, Socket socket) {
+            this.processor = processor;
+            this.socket = socket;
+        }
+
+        public void run() {
+            try {
+                processor.process(socket);
+            } catch (Throwable t) {
+                log("process.invoke", t);
+            } finally {
+                connections.remove(socket);
+            }
+        }
+
+    }
+
+
 }
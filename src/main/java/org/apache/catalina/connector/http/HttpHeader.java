@@ -61,6 +61,12 @@ final class HttpHeader {
     protected int hashCode = 0;
 
 
+    /**
+     * The value as a String, built on first use.
+     */
+    protected String valueString = null;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -76,6 +82,7 @@ final class HttpHeader {
         nameEnd = 0;
         valueEnd = 0;
         hashCode = 0;
+        valueString = null;
 
     }
 
@@ -109,7 +116,44 @@ final class HttpHeader {
      * The String given must be made of lower case characters.
      */
     public boolean equals(String str) {
-        return equals(str.toCharArray(), str.length());
+        int end = str.length();
+        if (end != nameEnd)
+            return false;
+        for (int i=0; i<end; i++) {
+            if (str.charAt(i) != name[i])
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Test if the name of the header is equal to the given string, ignoring
+     * case.  Unlike <code>equals(Object)</code>, the string is not copied.
+     */
+    public boolean equalsIgnoreCase(String str) {
+        int end = str.length();
+        if (end != nameEnd)
+            return false;
+        for (int i=0; i<end; i++) {
+            char c = str.charAt(i);
+            if ((c >= 'A') && (c <= 'Z'))
+                c = (char) (c + ('a' - 'A'));
+            if (c != name[i])
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Return the value of the header as a String.  The String is only built
+     * the first time it is requested.
+     */
+    public String getValue() {
+        if (valueString == null)
+            valueString = new String(value, 0, valueEnd);
+        return valueString;
     }
 
 
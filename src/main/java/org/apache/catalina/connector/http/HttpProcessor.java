@@ -15,6 +15,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.Connector;
 import org.apache.catalina.Globals;
 import org.apache.catalina.HttpRequest;
 import org.apache.catalina.Lifecycle;
@@ -69,6 +70,8 @@ final class HttpProcessor
 
         super();
         this.connector = connector;
+        this.allowChunking = connector.isChunkingAllowed();
+        this.bufferSize = connector.getBufferSize();
         this.debug = connector.getDebug();
         this.id = id;
         this.proxyName = connector.getProxyName();
@@ -82,6 +85,34 @@ final class HttpProcessor
     }
 
 
+    /**
+     * Construct a new HttpProcessor associated with the specified NIO
+     * connector.  Processors created this way do not own a background
+     * thread; they are driven by the connector's worker threads through
+     * <code>process(NioHttpConnection)</code>.
+     *
+     * @param connector NioHttpConnector that owns this processor
+     * @param id Identifier of this HttpProcessor (unique per connector)
+     */
+    public HttpProcessor(NioHttpConnector connector, int id) {
+
+        super();
+        this.connector = connector;
+        this.allowChunking = connector.isChunkingAllowed();
+        this.bufferSize = connector.getBufferSize();
+        this.debug = connector.getDebug();
+        this.id = id;
+        this.proxyName = connector.getProxyName();
+        this.proxyPort = connector.getProxyPort();
+        this.request = (HttpRequestImpl) connector.createRequest();
+        this.response = (HttpResponseImpl) connector.createResponse();
+        this.serverPort = connector.getPort();
+        this.threadName =
+          "NioHttpProcessor[" + connector.getPort() + "][" + id + "]";
+
+    }
+
+
     // ----------------------------------------------------- Instance Variables
 
 
@@ -92,9 +123,21 @@ final class HttpProcessor
 
 
     /**
-     * The HttpConnector with which this processor is associated.
+     * Is chunking allowed by our Connector?
+     */
+    private boolean allowChunking = true;
+
+
+    /**
+     * The input buffer size of our Connector.
+     */
+    private int bufferSize = 2048;
+
+
+    /**
+     * The Connector with which this processor is associated.
      */
-    private HttpConnector connector = null;
+    private Connector connector = null;
 
 
     /**
@@ -491,7 +534,7 @@ final class HttpProcessor
 
         if (debug >= 2)
             log("  parseConnection: address=" + socket.getInetAddress() +
-                ", port=" + connector.getPort());
+                ", port=" + serverPort);
         ((HttpRequestImpl) request).setInet(socket.getInetAddress());
         if (proxyPort != 0)
             request.setServerPort(proxyPort);
@@ -511,7 +554,7 @@ final class HttpProcessor
      * @exception IOException if an input/output error occurs
      * @exception ServletException if a parsing error occurs
      */
-    private void parseHeaders(SocketInputStream input)
+    void parseHeaders(SocketInputStream input)
         throws IOException, ServletException {
 
         while (true) {
@@ -529,18 +572,22 @@ final class HttpProcessor
                 }
             }
 
-            String value = new String(header.value, 0, header.valueEnd);
             if (debug >= 1)
                 log(" Header " + new String(header.name, 0, header.nameEnd)
-                    + " = " + value);
-
-            // Set the corresponding request headers
-            if (header.equals(DefaultHeaders.AUTHORIZATION_NAME)) {
-                request.setAuthorization(value);
-            } else if (header.equals(DefaultHeaders.ACCEPT_LANGUAGE_NAME)) {
-                parseAcceptLanguage(value);
-            } else if (header.equals(DefaultHeaders.COOKIE_NAME)) {
-                Cookie cookies[] = RequestUtil.parseCookieHeader(value);
+                    + " = " + header.getValue());
+
+            // Set the corresponding request headers; the value is only
+            // turned into a String for the headers that need it
+            switch (DefaultHeaders.lookup(header)) {
+            case DefaultHeaders.AUTHORIZATION:
+                request.setAuthorization(header.getValue());
+                break;
+            case DefaultHeaders.ACCEPT_LANGUAGE:
+                parseAcceptLanguage(header.getValue());
+                break;
+            case DefaultHeaders.COOKIE:
+                Cookie cookies[] =
+                    RequestUtil.parseCookieHeader(header.getValue());
                 for (int i = 0; i < cookies.length; i++) {
                     if (cookies[i].getName().equals
                         (Globals.SESSION_COOKIE_NAME)) {
@@ -562,19 +609,15 @@ final class HttpProcessor
                             cookies[i].getValue());
                     request.addCookie(cookies[i]);
                 }
-            } else if (header.equals(DefaultHeaders.CONTENT_LENGTH_NAME)) {
-                int n = -1;
-                try {
-                    n = Integer.parseInt(value);
-                } catch (Exception e) {
-                    throw new ServletException
-                        (sm.getString
-                         ("httpProcessor.parseHeaders.contentLength"));
-                }
-                request.setContentLength(n);
-            } else if (header.equals(DefaultHeaders.CONTENT_TYPE_NAME)) {
-                request.setContentType(value);
-            } else if (header.equals(DefaultHeaders.HOST_NAME)) {
+                break;
+            case DefaultHeaders.CONTENT_LENGTH:
+                request.setContentLength(parseContentLength(header));
+                break;
+            case DefaultHeaders.CONTENT_TYPE:
+                request.setContentType(header.getValue());
+                break;
+            case DefaultHeaders.HOST:
+                String value = header.getValue();
                 int n = value.indexOf(':');
                 if (n < 0) {
                     if (connector.getScheme().equals("http")) {
@@ -606,7 +649,8 @@ final class HttpProcessor
                         request.setServerPort(port);
                     }
                 }
-            } else if (header.equals(DefaultHeaders.CONNECTION_NAME)) {
+                break;
+            case DefaultHeaders.CONNECTION:
                 if (header.valueEquals
                     (DefaultHeaders.CONNECTION_CLOSE_VALUE)) {
                     keepAlive = false;
@@ -618,15 +662,20 @@ final class HttpProcessor
                   keepAlive = true;
                   }
                 */
-            } else if (header.equals(DefaultHeaders.EXPECT_NAME)) {
+                break;
+            case DefaultHeaders.EXPECT:
                 if (header.valueEquals(DefaultHeaders.EXPECT_100_VALUE))
                     sendAck = true;
                 else
                     throw new ServletException
                         (sm.getString
                          ("httpProcessor.parseHeaders.unknownExpectation"));
-            } else if (header.equals(DefaultHeaders.TRANSFER_ENCODING_NAME)) {
+                break;
+            case DefaultHeaders.TRANSFER_ENCODING:
                 //request.setTransferEncoding(header);
+                break;
+            default:
+                break;
             }
 
             request.nextHeader();
@@ -636,6 +685,40 @@ final class HttpProcessor
     }
 
 
+    /**
+     * Parse the value of a <code>Content-Length</code> header directly from
+     * the header characters.
+     *
+     * @param header The <code>Content-Length</code> header
+     *
+     * @exception ServletException if the value is not a valid length
+     */
+    private int parseContentLength(HttpHeader header)
+        throws ServletException {
+
+        int end = header.valueEnd;
+        while ((end > 0) && (header.value[end - 1] == ' '))
+            end--;
+        if (end == 0)
+            throw new ServletException
+                (sm.getString("httpProcessor.parseHeaders.contentLength"));
+        long n = 0;
+        for (int i = 0; i < end; i++) {
+            char c = header.value[i];
+            if ((c < '0') || (c > '9') || (n > Integer.MAX_VALUE))
+                throw new ServletException
+                    (sm.getString
+                     ("httpProcessor.parseHeaders.contentLength"));
+            n = (n * 10) + (c - '0');
+        }
+        if (n > Integer.MAX_VALUE)
+            throw new ServletException
+                (sm.getString("httpProcessor.parseHeaders.contentLength"));
+        return ((int) n);
+
+    }
+
+
     /**
      * Parse the incoming HTTP request and set the corresponding HTTP request
      * properties.
@@ -863,8 +946,10 @@ final class HttpProcessor
      */
     private void ackRequest(OutputStream output)
         throws IOException {
-        if (sendAck)
+        if (sendAck) {
             output.write(ack);
+            output.flush();
+        }
     }
 
 
@@ -873,18 +958,22 @@ final class HttpProcessor
      * to this Processor.  Any exceptions that occur during processing must be
      * swallowed and dealt with.
      *
+     * <b>NOTE</b>:  This method is called directly from the connection's own
+     * thread when the connector runs in virtual thread mode.
+     *
      * @param socket The socket on which we are connected to the client
      */
-    private void process(Socket socket) {
+    void process(Socket socket) {
         boolean ok = true;
-        boolean finishResponse = true;
         SocketInputStream input = null;
         OutputStream output = null;
 
         // Construct and initialize the objects we will need
         try {
             input = new SocketInputStream(socket.getInputStream(),
-                                          connector.getBufferSize());
+                                          bufferSize);
+            output = new SocketOutputStream(socket.getOutputStream(),
+                                            bufferSize);
         } catch (Exception e) {
             log("process.create", e);
             ok = false;
@@ -893,159 +982,221 @@ final class HttpProcessor
         keepAlive = true;
 
         while (!stopped && ok && keepAlive) {
+            ok = process(socket, input, output);
+        }
 
-            finishResponse = true;
+        try {
+            shutdownInput(input);
+            socket.close();
+        } catch (IOException e) {
+            ;
+        } catch (Throwable e) {
+            log("process.invoke", e);
+        }
+        socket = null;
+
+    }
 
+
+    /**
+     * Process the HTTP requests available on a connection multiplexed by an
+     * NioHttpConnector.  Requests are processed as long as bytes of the next
+     * request are already buffered; the connection is then returned to the
+     * connector so that its poller can wait for more input without holding
+     * on to this processor.  Any exceptions that occur during processing
+     * must be swallowed and dealt with.
+     *
+     * @param connection The connection on which requests are available
+     * @return <code>true</code> if the connection should be kept alive and
+     *  handed back to the poller, <code>false</code> if it must be closed
+     */
+    boolean process(NioHttpConnection connection) {
+
+        Socket socket = connection.getSocket();
+        SocketInputStream input = connection.getInput();
+        OutputStream output = connection.getOutput();
+        boolean ok = true;
+
+        keepAlive = true;
+
+        while (!stopped && ok && keepAlive) {
+            ok = process(socket, input, output);
             try {
-                request.setStream(input);
-                request.setResponse(response);
-                output = socket.getOutputStream();
-                response.setStream(output);
-                response.setRequest(request);
-                ((HttpServletResponse) response.getResponse()).setHeader
-                    ("Server", SERVER_INFO);
-            } catch (Exception e) {
-                log("process.create", e);
+                if (ok && keepAlive && (input.available() == 0))
+                    return (true);
+            } catch (IOException e) {
                 ok = false;
             }
+        }
 
+        return (false);
+
+    }
+
+
+    /**
+     * Process a single HTTP request read from the specified input stream,
+     * and write the corresponding response to the specified output stream.
+     * The output stream is only flushed if no further pipelined request is
+     * available on the input stream, or once the input stream has to wait
+     * for the rest of that request.  Any exceptions that occur during
+     * processing must be swallowed and dealt with.
+     *
+     * @param socket The socket on which we are connected to the client
+     * @param input The input stream attached to our socket
+     * @param output The output stream of the socket
+     * @return <code>false</code> if an error occurred and the connection
+     *  must be closed
+     */
+    private boolean process(Socket socket, SocketInputStream input,
+                            OutputStream output) {
+        boolean ok = true;
+        boolean finishResponse = true;
+
+        try {
+            request.setStream(input);
+            input.setOutput(output);
+            request.setResponse(response);
+            response.setStream(output);
+            response.setRequest(request);
+            ((HttpServletResponse) response.getResponse()).setHeader
+                ("Server", SERVER_INFO);
+        } catch (Exception e) {
+            log("process.create", e);
+            ok = false;
+        }
 
-            // Parse the incoming request
-            try {
-                if (ok) {
-
-                    parseConnection(socket);
-                    parseRequest(input, output);
-                    if (!request.getRequest().getProtocol()
-                        .startsWith("HTTP/0"))
-                        parseHeaders(input);
-                    if (http11) {
-                        // Sending a request acknowledge back to the client if
-                        // requested.
-                        ackRequest(output);
-                        // If the protocol is HTTP/1.1, chunking is allowed.
-                        if (connector.isChunkingAllowed())
-                            response.setAllowChunking(true);
-                    }
 
+        // Parse the incoming request
+        try {
+            if (ok) {
+
+                parseConnection(socket);
+                parseRequest(input, output);
+                if (!request.getRequest().getProtocol()
+                    .startsWith("HTTP/0"))
+                    parseHeaders(input);
+                if (http11) {
+                    // Sending a request acknowledge back to the client if
+                    // requested.
+                    ackRequest(output);
+                    // If the protocol is HTTP/1.1, chunking is allowed.
+                    if (allowChunking)
+                        response.setAllowChunking(true);
                 }
-            } catch (EOFException e) {
-                // It's very likely to be a socket disconnect on either the
-                // client or the server
-                ok = false;
-                finishResponse = false;
-            } catch (ServletException e) {
-                ok = false;
+
+            }
+        } catch (EOFException e) {
+            // It's very likely to be a socket disconnect on either the
+            // client or the server
+            ok = false;
+            finishResponse = false;
+        } catch (ServletException e) {
+            ok = false;
+            try {
+                ((HttpServletResponse) response.getResponse())
+                    .sendError(HttpServletResponse.SC_BAD_REQUEST);
+            } catch (Exception f) {
+                ;
+            }
+        } catch (InterruptedIOException e) {
+            if (debug > 1) {
                 try {
+                    log("process.parse", e);
                     ((HttpServletResponse) response.getResponse())
                         .sendError(HttpServletResponse.SC_BAD_REQUEST);
                 } catch (Exception f) {
                     ;
                 }
-            } catch (InterruptedIOException e) {
-                if (debug > 1) {
-                    try {
-                        log("process.parse", e);
-                        ((HttpServletResponse) response.getResponse())
-                            .sendError(HttpServletResponse.SC_BAD_REQUEST);
-                    } catch (Exception f) {
-                        ;
-                    }
-                }
-                ok = false;
-            } catch (Exception e) {
-                try {
-                    log("process.parse", e);
-                    ((HttpServletResponse) response.getResponse()).sendError
-                        (HttpServletResponse.SC_BAD_REQUEST);
-                } catch (Exception f) {
-                    ;
-                }
-                ok = false;
             }
+            ok = false;
+        } catch (Exception e) {
+            try {
+                log("process.parse", e);
+                ((HttpServletResponse) response.getResponse()).sendError
+                    (HttpServletResponse.SC_BAD_REQUEST);
+            } catch (Exception f) {
+                ;
+            }
+            ok = false;
+        }
 
-            // Ask our Container to process this request
+        // Ask our Container to process this request
+        try {
+            ((HttpServletResponse) response).setHeader
+                ("Date", FastHttpDateFormat.getCurrentDate());
+            if (ok) {
+                connector.getContainer().invoke(request, response);
+            }
+        } catch (ServletException e) {
+            log("process.invoke", e);
             try {
-                ((HttpServletResponse) response).setHeader
-                    ("Date", FastHttpDateFormat.getCurrentDate());
-                if (ok) {
-                    connector.getContainer().invoke(request, response);
-                }
-            } catch (ServletException e) {
+                ((HttpServletResponse) response.getResponse()).sendError
+                    (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } catch (Exception f) {
+                ;
+            }
+            ok = false;
+        } catch (InterruptedIOException e) {
+            ok = false;
+        } catch (Throwable e) {
+            log("process.invoke", e);
+            try {
+                ((HttpServletResponse) response.getResponse()).sendError
+                    (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } catch (Exception f) {
+                ;
+            }
+            ok = false;
+        }
+
+        // Finish up the handling of the request
+        if (finishResponse) {
+            try {
+                response.finishResponse();
+            } catch (IOException e) {
+                ok = false;
+            } catch (Throwable e) {
                 log("process.invoke", e);
-                try {
-                    ((HttpServletResponse) response.getResponse()).sendError
-                        (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                } catch (Exception f) {
-                    ;
-                }
                 ok = false;
-            } catch (InterruptedIOException e) {
+            }
+            try {
+                request.finishRequest();
+            } catch (IOException e) {
                 ok = false;
             } catch (Throwable e) {
                 log("process.invoke", e);
-                try {
-                    ((HttpServletResponse) response.getResponse()).sendError
-                        (HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                } catch (Exception f) {
-                    ;
-                }
                 ok = false;
             }
+        }
 
-            // Finish up the handling of the request
-            if (finishResponse) {
-                try {
-                    response.finishResponse();
-                } catch (IOException e) {
-                    ok = false;
-                } catch (Throwable e) {
-                    log("process.invoke", e);
-                    ok = false;
-                }
-                try {
-                    request.finishRequest();
-                } catch (IOException e) {
-                    ok = false;
-                } catch (Throwable e) {
-                    log("process.invoke", e);
-                    ok = false;
-                }
-                try {
-                    if (output != null)
-                        output.flush();
-                } catch (IOException e) {
-                    ok = false;
-                }
-            }
-
-            // We have to check if the connection closure has been requested
-            // by the application or the response stream (in case of HTTP/1.0
-            // and keep-alive).
-            if ( "close".equals(response.getHeader("Connection")) ) {
-                keepAlive = false;
-            }
-
-            // End of request processing
-            status = Constants.PROCESSOR_IDLE;
-
-            // Recycling the request and the response objects
-            request.recycle();
-            response.recycle();
-
+        // We have to check if the connection closure has been requested
+        // by the application or the response stream (in case of HTTP/1.0
+        // and keep-alive).
+        if ( "close".equals(response.getHeader("Connection")) ) {
+            keepAlive = false;
         }
 
+        // Send the response, unless the client has already pipelined its
+        // next request: the response is then held back so that it is sent
+        // along with the following one(s) in a single write, or flushed by
+        // the input stream if the next request is not complete
         try {
-            shutdownInput(input);
-            socket.close();
+            if ((output != null)
+                && (!ok || !keepAlive || stopped || (input.available() == 0)))
+                output.flush();
         } catch (IOException e) {
-            ;
-        } catch (Throwable e) {
-            log("process.invoke", e);
+            ok = false;
         }
-        socket = null;
 
+        // End of request processing
+        status = Constants.PROCESSOR_IDLE;
+
+        // Recycling the request and the response objects
+        request.recycle();
+        response.recycle();
 
+        return (ok);
 
     }
 
@@ -1088,7 +1239,7 @@ final class HttpProcessor
             }
 
             // Finish up this request
-            connector.recycle(this);
+            ((HttpConnector) connector).recycle(this);
 
         }
 
@@ -303,11 +303,9 @@ final class HttpRequestImpl
      */
     public String getHeader(String name) {
 
-        name = name.toLowerCase();
         for (int i = 0; i < nextHeader; i++) {
-            if (headerPool[i].equals(name))
-                return new String(headerPool[i].value, 0,
-                                  headerPool[i].valueEnd);
+            if (headerPool[i].equalsIgnoreCase(name))
+                return headerPool[i].getValue();
         }
         return null;
 
@@ -323,12 +321,10 @@ final class HttpRequestImpl
      */
     public Enumeration getHeaders(String name) {
 
-        name = name.toLowerCase();
         ArrayList tempArrayList = new ArrayList();
         for (int i = 0; i < nextHeader; i++) {
-            if (headerPool[i].equals(name))
-                tempArrayList.add(new String(headerPool[i].value, 0,
-                                             headerPool[i].valueEnd));
+            if (headerPool[i].equalsIgnoreCase(name))
+                tempArrayList.add(headerPool[i].getValue());
         }
         return (Enumeration) new Enumerator(tempArrayList);
 
@@ -2,6 +2,8 @@ package org.apache.catalina.connector.http;
 
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
@@ -43,6 +45,16 @@ final class HttpResponseImpl
     protected HttpResponseStream responseStream;
 
 
+    /**
+     * True while <code>flushBuffer()</code> must not push the output to the
+     * client: while the response is being finished by the processor (which
+     * decides when the connection output is sent, to coalesce pipelined
+     * responses), or while a write overflows the response buffer (so that
+     * the flushed bytes and the written data can be sent together).
+     */
+    protected boolean deferFlush;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -98,6 +110,7 @@ final class HttpResponseImpl
         super.recycle();
         responseStream = null;
         allowChunking = false;
+        deferFlush = false;
 
     }
 
@@ -219,11 +232,164 @@ final class HttpResponseImpl
         } else {
             setHeader("Connection", "close");
         }
+        deferFlush = true;
         super.finishResponse();
 
     }
 
 
+    // ------------------------------------------------ ServletResponse Methods
+
+
+    /**
+     * Flush the buffer and commit this response.  Unless the flush is being
+     * deferred, the data is pushed to the client right away.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void flushBuffer() throws IOException {
+
+        super.flushBuffer();
+        if (!deferFlush && (output != null))
+            output.flush();
+
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Write the specified byte to our output stream, flushing if necessary.
+     *
+     * @param b The byte to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void write(int b) throws IOException {
+
+        boolean defer = deferFlush;
+        deferFlush = true;
+        try {
+            super.write(b);
+        } finally {
+            deferFlush = defer;
+        }
+
+    }
+
+
+    /**
+     * Write <code>len</code> bytes from the specified byte array, starting
+     * at the specified offset, to our output stream.
+     *
+     * @param b The byte array containing the bytes to be written
+     * @param off Zero-relative starting offset of the bytes to be written
+     * @param len The number of bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void write(byte b[], int off, int len) throws IOException {
+
+        boolean defer = deferFlush;
+        deferFlush = true;
+        try {
+            super.write(b, off, len);
+        } finally {
+            deferFlush = defer;
+        }
+
+    }
+
+
+    /**
+     * Write the remaining bytes of the specified buffer to our output
+     * stream.
+     *
+     * @param src The buffer containing the bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void write(ByteBuffer src) throws IOException {
+
+        boolean defer = deferFlush;
+        deferFlush = true;
+        try {
+            super.write(src);
+        } finally {
+            deferFlush = defer;
+        }
+
+    }
+
+
+    /**
+     * Write <code>len</code> bytes of the specified file, starting at the
+     * specified position, to our output stream.
+     *
+     * @param src The channel of the file to be written
+     * @param position Position in the file of the first byte to be written
+     * @param len The number of bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void write(FileChannel src, long position, long len)
+        throws IOException {
+
+        boolean defer = deferFlush;
+        deferFlush = true;
+        try {
+            super.write(src, position, len);
+        } finally {
+            deferFlush = defer;
+        }
+
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    /**
+     * Hand the specified buffer to the connection output stream, which
+     * sends it along with the bytes flushed from the response buffer.
+     *
+     * @param src The buffer containing the bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected void writeOutput(ByteBuffer src) throws IOException {
+
+        if (output instanceof SocketOutputStream)
+            ((SocketOutputStream) output).write(src);
+        else
+            super.writeOutput(src);
+
+    }
+
+
+    /**
+     * Hand the specified file to the connection output stream, which may
+     * transfer it directly to the socket after the bytes flushed from the
+     * response buffer.
+     *
+     * @param src The channel of the file to be written
+     * @param position Position in the file of the first byte to be written
+     * @param len The number of bytes to be written
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected void writeOutput(FileChannel src, long position, long len)
+        throws IOException {
+
+        if (output instanceof SocketOutputStream)
+            ((SocketOutputStream) output).transferFrom(src, position, len);
+        else
+            super.writeOutput(src, position, len);
+
+    }
+
+
     // -------------------------------------------- HttpServletResponse Methods
 
 
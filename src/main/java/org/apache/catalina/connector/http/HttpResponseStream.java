@@ -65,6 +65,8 @@
 package org.apache.catalina.connector.http;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.catalina.connector.ResponseStream;
@@ -86,7 +88,22 @@ public final class HttpResponseStream extends ResponseStream {
     private static final int MAX_CHUNK_SIZE = 4096;
 
 
-    private static final String CRLF = "\r\n";
+    private static final byte[] CRLF = { (byte) '\r', (byte) '\n' };
+
+
+    private static final byte[] ONE_BYTE_CHUNK =
+        { (byte) '1', (byte) '\r', (byte) '\n' };
+
+
+    private static final byte[] LAST_CHUNK =
+        { (byte) '0', (byte) '\r', (byte) '\n', (byte) '\r', (byte) '\n' };
+
+
+    private static final byte[] HEX =
+        { (byte) '0', (byte) '1', (byte) '2', (byte) '3', (byte) '4',
+          (byte) '5', (byte) '6', (byte) '7', (byte) '8', (byte) '9',
+          (byte) 'a', (byte) 'b', (byte) 'c', (byte) 'd', (byte) 'e',
+          (byte) 'f' };
 
 
     // ----------------------------------------------------------- Constructors
@@ -127,6 +144,12 @@ public final class HttpResponseStream extends ResponseStream {
     private boolean writeContent;
 
 
+    /**
+     * Chunk header buffer (up to 8 hex digits followed by CRLF).
+     */
+    private byte[] chunkHeader = new byte[10];
+
+
     // -------------------------------------------- ServletOutputStream Methods
 
 
@@ -149,9 +172,9 @@ public final class HttpResponseStream extends ResponseStream {
         if (useChunking && !writingChunk) {
             writingChunk = true;
             try {
-                print("1\r\n");
+                super.write(ONE_BYTE_CHUNK, 0, ONE_BYTE_CHUNK.length);
                 super.write(b);
-                println();
+                super.write(CRLF, 0, CRLF.length);
             } finally {
                 writingChunk = false;
             }
@@ -178,9 +201,9 @@ public final class HttpResponseStream extends ResponseStream {
             if (len > 0) {
                 writingChunk = true;
                 try {
-                    println(Integer.toHexString(len));
+                    writeChunkHeader(len);
                     super.write(b, off, len);
-                    println();
+                    super.write(CRLF, 0, CRLF.length);
                 } finally {
                     writingChunk = false;
                 }
@@ -192,6 +215,70 @@ public final class HttpResponseStream extends ResponseStream {
     }
 
 
+    /**
+     * Write the remaining bytes of the specified buffer.
+     */
+    public void write(ByteBuffer src)
+        throws IOException {
+
+        if (suspended)
+            return;
+
+        if (!writeContent)
+            return;
+
+        if (useChunking && !writingChunk) {
+            if (src.hasRemaining()) {
+                writingChunk = true;
+                try {
+                    writeChunkHeader(src.remaining());
+                    super.write(src);
+                    super.write(CRLF, 0, CRLF.length);
+                } finally {
+                    writingChunk = false;
+                }
+            }
+        } else {
+            super.write(src);
+        }
+
+    }
+
+
+    /**
+     * Write <code>len</code> bytes of the specified file, starting at the
+     * specified position.
+     */
+    public void write(FileChannel src, long position, long len)
+        throws IOException {
+
+        if (suspended)
+            return;
+
+        if (!writeContent)
+            return;
+
+        if (useChunking && !writingChunk) {
+            writingChunk = true;
+            try {
+                while (len > 0) {
+                    int n = (int) Math.min(len, Integer.MAX_VALUE);
+                    writeChunkHeader(n);
+                    super.write(src, position, n);
+                    super.write(CRLF, 0, CRLF.length);
+                    position += n;
+                    len -= n;
+                }
+            } finally {
+                writingChunk = false;
+            }
+        } else {
+            super.write(src, position, len);
+        }
+
+    }
+
+
     /**
      * Close this output stream, causing any buffered data to be flushed and
      * any further output data to throw an IOException.
@@ -209,7 +296,7 @@ public final class HttpResponseStream extends ResponseStream {
             // Write the final chunk.
             writingChunk = true;
             try {
-                print("0\r\n\r\n");
+                super.write(LAST_CHUNK, 0, LAST_CHUNK.length);
             } finally {
                 writingChunk = false;
             }
@@ -219,6 +306,30 @@ public final class HttpResponseStream extends ResponseStream {
     }
 
 
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Write the header of a chunk of the specified length, generated in
+     * place without creating a String.
+     *
+     * @param len The length of the chunk
+     */
+    private void writeChunkHeader(int len)
+        throws IOException {
+
+        int pos = chunkHeader.length - 2;
+        chunkHeader[pos] = (byte) '\r';
+        chunkHeader[pos + 1] = (byte) '\n';
+        do {
+            chunkHeader[--pos] = HEX[len & 0xf];
+            len >>>= 4;
+        } while (len != 0);
+        super.write(chunkHeader, pos, chunkHeader.length - pos);
+
+    }
+
+
     // -------------------------------------------------------- Package Methods
 
 
@@ -0,0 +1,377 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * A client connection multiplexed by an <code>NioHttpConnector</code>.  The
+ * connection owns the <code>SocketInputStream</code> used to parse its
+ * requests, so that bytes read ahead of the current request survive while
+ * the connection is parked on the poller between two requests.
+ * <p>
+ * The underlying channel always stays in non-blocking mode.  While a worker
+ * thread processes the connection, the streams returned by
+ * <code>getInput()</code> and <code>getOutput()</code> emulate blocking
+ * I/O by waiting on the worker's private selector whenever the channel is
+ * not ready.
+ *
+ * @deprecated
+ */
+
+final class NioHttpConnection {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new connection for the specified channel.
+     *
+     * @param channel The connected, non-blocking socket channel
+     * @param bufferSize Size of the input buffer
+     * @param timeout Read and write timeout in milliseconds, or 0 for none
+     */
+    NioHttpConnection(SocketChannel channel, int bufferSize, int timeout) {
+
+        this.channel = channel;
+        this.timeout = timeout;
+        this.input = new SocketInputStream(new ChannelInputStream(),
+                                           bufferSize);
+        this.output = new ChannelSocketOutputStream(bufferSize);
+        this.lastAccess = System.currentTimeMillis();
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The socket channel of this connection.
+     */
+    private SocketChannel channel = null;
+
+
+    /**
+     * The input stream from which requests are parsed.
+     */
+    private SocketInputStream input = null;
+
+
+    /**
+     * The key of this connection with the poller's selector, or
+     * <code>null</code> if the connection has not been registered yet.
+     */
+    private SelectionKey key = null;
+
+
+    /**
+     * The time at which this connection was last handed back to the poller.
+     */
+    private long lastAccess = 0L;
+
+
+    /**
+     * The output stream to which responses are written.
+     */
+    private OutputStream output = null;
+
+
+    /**
+     * The selector used to wait for readiness while a worker thread is
+     * processing this connection.
+     */
+    private Selector selector = null;
+
+
+    /**
+     * Read and write timeout in milliseconds, or 0 for none.
+     */
+    private int timeout = 0;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the socket channel of this connection.
+     */
+    SocketChannel getChannel() {
+
+        return (this.channel);
+
+    }
+
+
+    /**
+     * Return the input stream from which requests are parsed.
+     */
+    SocketInputStream getInput() {
+
+        return (this.input);
+
+    }
+
+
+    /**
+     * Return the key of this connection with the poller's selector.
+     */
+    SelectionKey getKey() {
+
+        return (this.key);
+
+    }
+
+
+    /**
+     * Set the key of this connection with the poller's selector.
+     *
+     * @param key The new selection key
+     */
+    void setKey(SelectionKey key) {
+
+        this.key = key;
+
+    }
+
+
+    /**
+     * Return the time at which this connection was last parked.
+     */
+    long getLastAccess() {
+
+        return (this.lastAccess);
+
+    }
+
+
+    /**
+     * Set the time at which this connection was last parked.
+     *
+     * @param lastAccess The new last access time
+     */
+    void setLastAccess(long lastAccess) {
+
+        this.lastAccess = lastAccess;
+
+    }
+
+
+    /**
+     * Return the output stream to which responses are written.
+     */
+    OutputStream getOutput() {
+
+        return (this.output);
+
+    }
+
+
+    /**
+     * Set the selector used to emulate blocking I/O.  This must be a
+     * selector private to the thread that is about to process this
+     * connection.
+     *
+     * @param selector The worker's selector
+     */
+    void setSelector(Selector selector) {
+
+        this.selector = selector;
+
+    }
+
+
+    /**
+     * Return the socket associated with the channel of this connection.
+     */
+    Socket getSocket() {
+
+        return (channel.socket());
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Close this connection, cancelling its registration with the poller.
+     */
+    void close() {
+
+        if (key != null)
+            key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ;
+        }
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Wait until the channel is ready for the specified operation.
+     *
+     * @param ops The interest set to wait for
+     *
+     * @exception SocketTimeoutException if the timeout expires first
+     * @exception IOException if an input/output error occurs
+     */
+    private void await(int ops) throws IOException {
+
+        SelectionKey key = channel.register(selector, ops);
+        try {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (true) {
+                int n = selector.select(timeout);
+                if (n > 0)
+                    break;
+                if ((timeout > 0)
+                    && (System.currentTimeMillis() >= deadline))
+                    throw new SocketTimeoutException();
+            }
+            selector.selectedKeys().clear();
+        } finally {
+            key.cancel();
+            // Flush the cancelled key so the channel can be registered again
+            selector.selectNow();
+        }
+
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * Input stream reading from the non-blocking channel.
+     */
+    private final class ChannelInputStream extends InputStream {
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return ((n < 0) ? -1 : (b[0] & 0xff));
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return (0);
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (true) {
+                int n = channel.read(buffer);
+                if (n != 0)
+                    return (n);
+                await(SelectionKey.OP_READ);
+            }
+        }
+
+        public int available() {
+            return (0);
+        }
+
+        public void close() {
+            ;   // The connector closes the channel
+        }
+
+    }
+
+
+    /**
+     * Output stream writing to the non-blocking channel.
+     */
+    private final class ChannelOutputStream extends OutputStream {
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) == 0)
+                    await(SelectionKey.OP_WRITE);
+            }
+        }
+
+        public void close() {
+            ;   // The connector closes the channel
+        }
+
+    }
+
+
+    /**
+     * Buffered output stream sending the buffered bytes and the bytes
+     * written through with a single gathering write on the channel, and
+     * transferring file content to the channel without copying it.
+     */
+    private final class ChannelSocketOutputStream extends SocketOutputStream {
+
+        ChannelSocketOutputStream(int bufferSize) {
+            super(new ChannelOutputStream(), bufferSize);
+        }
+
+        public void write(ByteBuffer src) throws IOException {
+            if (!src.hasRemaining())
+                return;
+            ByteBuffer[] buffers = new ByteBuffer[] {
+                ByteBuffer.wrap(buf, 0, count), src
+            };
+            try {
+                while (src.hasRemaining()) {
+                    if (channel.write(buffers) == 0)
+                        await(SelectionKey.OP_WRITE);
+                }
+            } finally {
+                count = 0;
+            }
+        }
+
+        public void transferFrom(FileChannel src, long position, long len)
+            throws IOException {
+            flushBuffer();
+            while (len > 0) {
+                long n = src.transferTo(position, len, channel);
+                if (n == 0) {
+                    if (position >= src.size())
+                        throw new EOFException();
+                    await(SelectionKey.OP_WRITE);
+                }
+                position += n;
+                len -= n;
+            }
+        }
+
+        protected void writeThrough(byte head[], int headLen,
+                                    byte b[], int off, int len)
+            throws IOException {
+            ByteBuffer[] buffers = new ByteBuffer[] {
+                ByteBuffer.wrap(head, 0, headLen),
+                ByteBuffer.wrap(b, off, len)
+            };
+            while (buffers[1].hasRemaining()) {
+                if (channel.write(buffers) == 0)
+                    await(SelectionKey.OP_WRITE);
+            }
+        }
+
+    }
+
+
+}
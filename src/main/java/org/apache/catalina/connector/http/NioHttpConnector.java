@@ -0,0 +1,1252 @@
+package org.apache.catalina.connector.http;
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Vector;
+import org.apache.catalina.Connector;
+import org.apache.catalina.Container;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.Logger;
+import org.apache.catalina.Request;
+import org.apache.catalina.Response;
+import org.apache.catalina.Service;
+import org.apache.catalina.net.DefaultServerSocketFactory;
+import org.apache.catalina.net.ServerSocketFactory;
+import org.apache.catalina.util.LifecycleSupport;
+import org.apache.catalina.util.StringManager;
+
+
+/**
+ * Implementation of an HTTP/1.1 connector based on a
+ * <code>java.nio.channels.Selector</code>.  Unlike <code>HttpConnector</code>,
+ * a processor thread is only tied to a connection while a request is being
+ * processed: idle keep-alive connections are parked on a single poller
+ * thread, and handed to one of a fixed set of workers when bytes arrive.
+ * A few dozen workers can therefore serve many thousands of mostly idle
+ * connections.
+ * <p>
+ * Requests are parsed and processed by the same <code>HttpProcessor</code>,
+ * <code>HttpRequestImpl</code> and <code>HttpResponseImpl</code> objects as
+ * in the blocking connector.  This connector does not support SSL; the
+ * server socket factory property is only kept for <code>Connector</code>
+ * compatibility.
+ *
+ * @deprecated
+ */
+
+
+public final class NioHttpConnector
+    implements Connector, Lifecycle, Runnable {
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The <code>Service</code> we are associated with (if any).
+     */
+    private Service service = null;
+
+
+    /**
+     * The accept count for this Connector.
+     */
+    private int acceptCount = 100;
+
+
+    /**
+     * The IP address on which to bind, if any.  If <code>null</code>, all
+     * addresses on the server will be bound.
+     */
+    private String address = null;
+
+
+    /**
+     * The input buffer size we should create on input streams.
+     */
+    private int bufferSize = 2048;
+
+
+    /**
+     * The Container used for processing requests received by this Connector.
+     */
+    protected Container container = null;
+
+
+    /**
+     * The set of worker threads that have been created.
+     */
+    private Vector workers = new Vector();
+
+
+    /**
+     * The debugging detail level for this component.
+     */
+    private int debug = 0;
+
+
+    /**
+     * The "enable DNS lookups" flag for this Connector.
+     */
+    private boolean enableLookups = false;
+
+
+    /**
+     * The server socket factory for this component.
+     */
+    private ServerSocketFactory factory = null;
+
+
+    /**
+     * Descriptive information about this Connector implementation.
+     */
+    private static final String info =
+        "org.apache.catalina.connector.http.NioHttpConnector/1.0";
+
+
+    /**
+     * The lifecycle event support for this component.
+     */
+    protected LifecycleSupport lifecycle = new LifecycleSupport(this);
+
+
+    /**
+     * The number of worker threads (each with its own processor).
+     */
+    private int maxProcessors = 20;
+
+
+    /**
+     * Timeout value on the incoming connection, which also bounds how long
+     * an idle keep-alive connection stays parked on the poller.
+     * Note : a value of 0 means no timeout.
+     */
+    private int connectionTimeout = Constants.DEFAULT_CONNECTION_TIMEOUT;
+
+
+    /**
+     * The connections that must be (re)registered with the poller.
+     */
+    private LinkedList events = new LinkedList();
+
+
+    /**
+     * The connections that have input available and wait for a worker.
+     */
+    private LinkedList pending = new LinkedList();
+
+
+    /**
+     * The port number on which we listen for HTTP requests.
+     */
+    private int port = 8080;
+
+
+    /**
+     * The server name to which we should pretend requests to this Connector
+     * were directed.  This is useful when operating Tomcat behind a proxy
+     * server, so that redirects get constructed accurately.  If not specified,
+     * the server name included in the <code>Host</code> header is used.
+     */
+    private String proxyName = null;
+
+
+    /**
+     * The server port to which we should pretent requests to this Connector
+     * were directed.  This is useful when operating Tomcat behind a proxy
+     * server, so that redirects get constructed accurately.  If not specified,
+     * the port number specified by the <code>port</code> property is used.
+     */
+    private int proxyPort = 0;
+
+
+    /**
+     * The redirect port for non-SSL to SSL redirects.
+     */
+    private int redirectPort = 443;
+
+
+    /**
+     * The request scheme that will be set on all requests received
+     * through this connector.
+     */
+    private String scheme = "http";
+
+
+    /**
+     * The secure connection flag that will be set on all requests received
+     * through this connector.
+     */
+    private boolean secure = false;
+
+
+    /**
+     * The selector on which idle connections are parked.
+     */
+    private Selector selector = null;
+
+
+    /**
+     * The server socket channel through which we listen for incoming TCP
+     * connections.
+     */
+    private ServerSocketChannel serverChannel = null;
+
+
+    /**
+     * The string manager for this package.
+     */
+    private StringManager sm =
+        StringManager.getManager(Constants.Package);
+
+
+    /**
+     * Has this component been initialized yet?
+     */
+    private boolean initialized = false;
+
+
+    /**
+     * Has this component been started yet?
+     */
+    private boolean started = false;
+
+
+    /**
+     * The shutdown signal to our background threads.
+     */
+    private volatile boolean stopped = false;
+
+
+    /**
+     * The background thread accepting connections.
+     */
+    private Thread thread = null;
+
+
+    /**
+     * The background thread polling idle connections.
+     */
+    private Thread pollerThread = null;
+
+
+    /**
+     * The name to register for the background thread.
+     */
+    private String threadName = null;
+
+
+    /**
+     * Is chunking allowed ?
+     */
+    private boolean allowChunking = true;
+
+
+    /**
+     * Use TCP no delay ?
+     */
+    private boolean tcpNoDelay = true;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the <code>Service</code> with which we are associated (if any).
+     */
+    public Service getService() {
+
+        return (this.service);
+
+    }
+
+
+    /**
+     * Set the <code>Service</code> with which we are associated (if any).
+     *
+     * @param service The service that owns this Engine
+     */
+    public void setService(Service service) {
+
+        this.service = service;
+
+    }
+
+
+    /**
+     * Return the connection timeout for this Connector.
+     */
+    public int getConnectionTimeout() {
+
+        return (connectionTimeout);
+
+    }
+
+
+    /**
+     * Set the connection timeout for this Connector.
+     *
+     * @param connectionTimeout The new connection timeout
+     */
+    public void setConnectionTimeout(int connectionTimeout) {
+
+        this.connectionTimeout = connectionTimeout;
+
+    }
+
+
+    /**
+     * Return the accept count for this Connector.
+     */
+    public int getAcceptCount() {
+
+        return (acceptCount);
+
+    }
+
+
+    /**
+     * Set the accept count for this Connector.
+     *
+     * @param count The new accept count
+     */
+    public void setAcceptCount(int count) {
+
+        this.acceptCount = count;
+
+    }
+
+
+    /**
+     * Get the allow chunking flag.
+     */
+    public boolean isChunkingAllowed() {
+
+        return (allowChunking);
+
+    }
+
+
+    /**
+     * Get the allow chunking flag.
+     */
+    public boolean getAllowChunking() {
+
+        return isChunkingAllowed();
+
+    }
+
+
+    /**
+     * Set the allow chunking flag.
+     *
+     * @param allowChunking Allow chunking flag
+     */
+    public void setAllowChunking(boolean allowChunking) {
+
+        this.allowChunking = allowChunking;
+
+    }
+
+
+    /**
+     * Return the bind IP address for this Connector.
+     */
+    public String getAddress() {
+
+        return (this.address);
+
+    }
+
+
+    /**
+     * Set the bind IP address for this Connector.
+     *
+     * @param address The bind IP address
+     */
+    public void setAddress(String address) {
+
+        this.address = address;
+
+    }
+
+
+    /**
+     * Is this connector available for processing requests?
+     */
+    public boolean isAvailable() {
+
+        return (started);
+
+    }
+
+
+    /**
+     * Return the input buffer size for this Connector.
+     */
+    public int getBufferSize() {
+
+        return (this.bufferSize);
+
+    }
+
+
+    /**
+     * Set the input buffer size for this Connector.
+     *
+     * @param bufferSize The new input buffer size.
+     */
+    public void setBufferSize(int bufferSize) {
+
+        this.bufferSize = bufferSize;
+
+    }
+
+
+    /**
+     * Return the Container used for processing requests received by this
+     * Connector.
+     */
+    public Container getContainer() {
+
+        return (container);
+
+    }
+
+
+    /**
+     * Set the Container used for processing requests received by this
+     * Connector.
+     *
+     * @param container The new Container to use
+     */
+    public void setContainer(Container container) {
+
+        this.container = container;
+
+    }
+
+
+    /**
+     * Return the debugging detail level for this component.
+     */
+    public int getDebug() {
+
+        return (debug);
+
+    }
+
+
+    /**
+     * Set the debugging detail level for this component.
+     *
+     * @param debug The new debugging detail level
+     */
+    public void setDebug(int debug) {
+
+        this.debug = debug;
+
+    }
+
+
+    /**
+     * Return the "enable DNS lookups" flag.
+     */
+    public boolean getEnableLookups() {
+
+        return (this.enableLookups);
+
+    }
+
+
+    /**
+     * Set the "enable DNS lookups" flag.
+     *
+     * @param enableLookups The new "enable DNS lookups" flag value
+     */
+    public void setEnableLookups(boolean enableLookups) {
+
+        this.enableLookups = enableLookups;
+
+    }
+
+
+    /**
+     * Return the server socket factory used by this Container.
+     */
+    public ServerSocketFactory getFactory() {
+
+        if (this.factory == null) {
+            synchronized (this) {
+                this.factory = new DefaultServerSocketFactory();
+            }
+        }
+        return (this.factory);
+
+    }
+
+
+    /**
+     * Set the server socket factory used by this Container.  The factory is
+     * not used by this connector, which always opens a plain server socket
+     * channel.
+     *
+     * @param factory The new server socket factory
+     */
+    public void setFactory(ServerSocketFactory factory) {
+
+        this.factory = factory;
+
+    }
+
+
+    /**
+     * Return descriptive information about this Connector implementation.
+     */
+    public String getInfo() {
+
+        return (info);
+
+    }
+
+
+    /**
+     * Return the number of worker threads.
+     */
+    public int getMaxProcessors() {
+
+        return (maxProcessors);
+
+    }
+
+
+    /**
+     * Set the number of worker threads.
+     *
+     * @param maxProcessors The new number of worker threads
+     */
+    public void setMaxProcessors(int maxProcessors) {
+
+        this.maxProcessors = maxProcessors;
+
+    }
+
+
+    /**
+     * Return the port number on which we listen for HTTP requests.
+     */
+    public int getPort() {
+
+        return (this.port);
+
+    }
+
+
+    /**
+     * Set the port number on which we listen for HTTP requests.
+     *
+     * @param port The new port number
+     */
+    public void setPort(int port) {
+
+        this.port = port;
+
+    }
+
+
+    /**
+     * Return the proxy server name for this Connector.
+     */
+    public String getProxyName() {
+
+        return (this.proxyName);
+
+    }
+
+
+    /**
+     * Set the proxy server name for this Connector.
+     *
+     * @param proxyName The new proxy server name
+     */
+    public void setProxyName(String proxyName) {
+
+        this.proxyName = proxyName;
+
+    }
+
+
+    /**
+     * Return the proxy server port for this Connector.
+     */
+    public int getProxyPort() {
+
+        return (this.proxyPort);
+
+    }
+
+
+    /**
+     * Set the proxy server port for this Connector.
+     *
+     * @param proxyPort The new proxy server port
+     */
+    public void setProxyPort(int proxyPort) {
+
+        this.proxyPort = proxyPort;
+
+    }
+
+
+    /**
+     * Return the port number to which a request should be redirected if
+     * it comes in on a non-SSL port and is subject to a security constraint
+     * with a transport guarantee that requires SSL.
+     */
+    public int getRedirectPort() {
+
+        return (this.redirectPort);
+
+    }
+
+
+    /**
+     * Set the redirect port number.
+     *
+     * @param redirectPort The redirect port number (non-SSL to SSL)
+     */
+    public void setRedirectPort(int redirectPort) {
+
+        this.redirectPort = redirectPort;
+
+    }
+
+
+    /**
+     * Return the scheme that will be assigned to requests received
+     * through this connector.  Default value is "http".
+     */
+    public String getScheme() {
+
+        return (this.scheme);
+
+    }
+
+
+    /**
+     * Set the scheme that will be assigned to requests received through
+     * this connector.
+     *
+     * @param scheme The new scheme
+     */
+    public void setScheme(String scheme) {
+
+        this.scheme = scheme;
+
+    }
+
+
+    /**
+     * Return the secure connection flag that will be assigned to requests
+     * received through this connector.  Default value is "false".
+     */
+    public boolean getSecure() {
+
+        return (this.secure);
+
+    }
+
+
+    /**
+     * Set the secure connection flag that will be assigned to requests
+     * received through this connector.
+     *
+     * @param secure The new secure connection flag
+     */
+    public void setSecure(boolean secure) {
+
+        this.secure = secure;
+
+    }
+
+
+    /**
+     * Return the TCP no delay flag value.
+     */
+    public boolean getTcpNoDelay() {
+
+        return (this.tcpNoDelay);
+
+    }
+
+
+    /**
+     * Set the TCP no delay flag which will be set on the socket after
+     * accepting a connection.
+     *
+     * @param tcpNoDelay The new TCP no delay flag
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+
+        this.tcpNoDelay = tcpNoDelay;
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Create (or allocate) and return a Request object suitable for
+     * specifying the contents of a Request to the responsible Container.
+     */
+    public Request createRequest() {
+
+        HttpRequestImpl request = new HttpRequestImpl();
+        request.setConnector(this);
+        return (request);
+
+    }
+
+
+    /**
+     * Create (or allocate) and return a Response object suitable for
+     * receiving the contents of a Response from the responsible Container.
+     */
+    public Response createResponse() {
+
+        HttpResponseImpl response = new HttpResponseImpl();
+        response.setConnector(this);
+        return (response);
+
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Park the specified connection on the poller until more input is
+     * available.
+     *
+     * @param connection The connection to be parked
+     */
+    void park(NioHttpConnection connection) {
+
+        connection.setLastAccess(System.currentTimeMillis());
+        synchronized (events) {
+            events.addLast(connection);
+        }
+        selector.wakeup();
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Hand the specified connection, which has input available, to the
+     * next idle worker.
+     *
+     * @param connection The connection to be processed
+     */
+    private void dispatch(NioHttpConnection connection) {
+
+        synchronized (pending) {
+            pending.addLast(connection);
+            pending.notify();
+        }
+
+    }
+
+
+    /**
+     * Await the next connection that has input available, or
+     * <code>null</code> if we are supposed to shut down.
+     */
+    private NioHttpConnection await() {
+
+        synchronized (pending) {
+            while (!stopped && pending.isEmpty()) {
+                try {
+                    pending.wait();
+                } catch (InterruptedException e) {
+                    ;
+                }
+            }
+            if (stopped)
+                return (null);
+            return ((NioHttpConnection) pending.removeFirst());
+        }
+
+    }
+
+
+    /**
+     * Register the connections that have been parked since the last
+     * poll with our selector.
+     */
+    private void registerEvents() {
+
+        synchronized (events) {
+            while (!events.isEmpty()) {
+                NioHttpConnection connection =
+                    (NioHttpConnection) events.removeFirst();
+                try {
+                    SelectionKey key = connection.getKey();
+                    if (key == null) {
+                        key = connection.getChannel().register
+                            (selector, SelectionKey.OP_READ, connection);
+                        connection.setKey(key);
+                    } else {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                } catch (Exception e) {
+                    // The channel has been closed in the meantime
+                    connection.close();
+                }
+            }
+        }
+
+    }
+
+
+    /**
+     * Close the parked connections that have been idle for longer than the
+     * connection timeout.
+     */
+    private void expireIdle() {
+
+        if (connectionTimeout <= 0)
+            return;
+        long expired = System.currentTimeMillis() - connectionTimeout;
+        Iterator keys = selector.keys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = (SelectionKey) keys.next();
+            NioHttpConnection connection =
+                (NioHttpConnection) key.attachment();
+            try {
+                if ((connection != null) && key.isValid()
+                    && (key.interestOps() == SelectionKey.OP_READ)
+                    && (connection.getLastAccess() < expired)) {
+                    if (debug >= 2)
+                        log(" Closing idle connection " +
+                            connection.getSocket());
+                    connection.close();
+                }
+            } catch (Exception e) {
+                ;       // Key cancelled concurrently
+            }
+        }
+
+    }
+
+
+    /**
+     * Log a message on the Logger associated with our Container (if any).
+     *
+     * @param message Message to be logged
+     */
+    private void log(String message) {
+        Logger logger = container.getLogger();
+        String localName = threadName;
+        if (localName == null)
+            localName = "NioHttpConnector";
+        if (logger != null)
+            logger.log(localName + " " + message);
+        else
+            System.out.println(localName + " " + message);
+
+    }
+
+
+    /**
+     * Log a message on the Logger associated with our Container (if any).
+     *
+     * @param message Message to be logged
+     * @param throwable Associated exception
+     */
+    private void log(String message, Throwable throwable) {
+
+        Logger logger = container.getLogger();
+        String localName = threadName;
+        if (localName == null)
+            localName = "NioHttpConnector";
+        if (logger != null)
+            logger.log(localName + " " + message, throwable);
+        else {
+            System.out.println(localName + " " + message);
+            throwable.printStackTrace(System.out);
+        }
+
+    }
+
+
+    /**
+     * Open and return the server socket channel for this Connector.  If an
+     * IP address has been specified, the socket will be opened only on that
+     * address; otherwise it will be opened on all addresses.
+     *
+     * @exception IOException input/output or network error
+     */
+    private ServerSocketChannel open() throws IOException {
+
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        InetSocketAddress endpoint = null;
+
+        // If no address is specified, open a connection on all addresses
+        if (address == null) {
+            log(sm.getString("httpConnector.allAddresses"));
+            endpoint = new InetSocketAddress(port);
+        } else {
+            try {
+                InetAddress is = InetAddress.getByName(address);
+                log(sm.getString("httpConnector.anAddress", address));
+                endpoint = new InetSocketAddress(is, port);
+            } catch (Exception e) {
+                log(sm.getString("httpConnector.noAddress", address));
+                endpoint = new InetSocketAddress(port);
+            }
+        }
+
+        try {
+            channel.socket().bind(endpoint, acceptCount);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return (channel);
+
+    }
+
+
+    // ---------------------------------------------- Background Thread Methods
+
+
+    /**
+     * The background thread that listens for incoming TCP/IP connections and
+     * hands them off to the poller.
+     */
+    public void run() {
+
+        // Loop until we receive a shutdown command
+        while (!stopped) {
+            // Accept the next incoming connection from the server socket
+            SocketChannel channel = null;
+            try {
+                channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(tcpNoDelay);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (!stopped)
+                    log("accept error: ", e);
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException f) {
+                        ;
+                    }
+                }
+                continue;
+            }
+
+            // The connection will be handed to a worker when the request
+            // line arrives
+            park(new NioHttpConnection(channel, bufferSize,
+                                       connectionTimeout));
+
+        }
+
+    }
+
+
+    /**
+     * Start the background processing threads.
+     */
+    private void threadStart() {
+
+        log(sm.getString("httpConnector.starting"));
+
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+
+        pollerThread = new Thread(new Poller(), threadName + "[Poller]");
+        pollerThread.setDaemon(true);
+        pollerThread.start();
+
+    }
+
+
+    /**
+     * Stop the background processing threads.
+     */
+    private void threadStop() {
+
+        log(sm.getString("httpConnector.stopping"));
+
+        stopped = true;
+        selector.wakeup();
+        synchronized (pending) {
+            pending.notifyAll();
+        }
+        try {
+            thread.join(5000);
+            pollerThread.join(5000);
+        } catch (InterruptedException e) {
+            ;
+        }
+        thread = null;
+        pollerThread = null;
+
+    }
+
+
+    // ------------------------------------------------------ Lifecycle Methods
+
+
+    /**
+     * Add a lifecycle event listener to this component.
+     *
+     * @param listener The listener to add
+     */
+    public void addLifecycleListener(LifecycleListener listener) {
+
+        lifecycle.addLifecycleListener(listener);
+
+    }
+
+
+    /**
+     * Get the lifecycle listeners associated with this lifecycle. If this
+     * Lifecycle has no listeners registered, a zero-length array is returned.
+     */
+    public LifecycleListener[] findLifecycleListeners() {
+
+        return lifecycle.findLifecycleListeners();
+
+    }
+
+
+    /**
+     * Remove a lifecycle event listener from this component.
+     *
+     * @param listener The listener to add
+     */
+    public void removeLifecycleListener(LifecycleListener listener) {
+
+        lifecycle.removeLifecycleListener(listener);
+
+    }
+
+
+    /**
+     * Initialize this connector (create the server socket channel and the
+     * selector here!)
+     */
+    public void initialize()
+    throws LifecycleException {
+        if (initialized)
+            throw new LifecycleException (
+                sm.getString("httpConnector.alreadyInitialized"));
+
+        this.initialized=true;
+
+        // Establish a server socket on the specified port
+        try {
+            serverChannel = open();
+            selector = Selector.open();
+        } catch (IOException ioe) {
+            log("httpConnector, io problem: ", ioe);
+            throw new LifecycleException(threadName + ".open", ioe);
+        }
+
+    }
+
+
+    /**
+     * Begin processing requests via this Connector.
+     *
+     * @exception LifecycleException if a fatal startup error occurs
+     */
+    public void start() throws LifecycleException {
+
+        // Validate and update our current state
+        if (started)
+            throw new LifecycleException
+                (sm.getString("httpConnector.alreadyStarted"));
+        threadName = "NioHttpConnector[" + port + "]";
+        lifecycle.fireLifecycleEvent(START_EVENT, null);
+        started = true;
+        stopped = false;
+
+        // Create the worker threads
+        for (int i = 0; i < maxProcessors; i++) {
+            Worker worker = null;
+            try {
+                worker = new Worker(i);
+            } catch (IOException e) {
+                throw new LifecycleException(threadName + ".worker", e);
+            }
+            Thread workerThread =
+                new Thread(worker, threadName + "[" + i + "]");
+            workerThread.setDaemon(true);
+            workerThread.start();
+            workers.addElement(worker);
+        }
+
+        // Start our background threads
+        threadStart();
+
+    }
+
+
+    /**
+     * Terminate processing requests via this Connector.
+     *
+     * @exception LifecycleException if a fatal shutdown error occurs
+     */
+    public void stop() throws LifecycleException {
+
+        // Validate and update our current state
+        if (!started)
+            throw new LifecycleException
+                (sm.getString("httpConnector.notStarted"));
+        lifecycle.fireLifecycleEvent(STOP_EVENT, null);
+        started = false;
+
+        // Close the server socket we were using
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            ;
+        }
+
+        // Stop our background threads
+        threadStop();
+        workers.removeAllElements();
+        serverChannel = null;
+
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * The background thread that waits for input on idle connections and
+     * dispatches them to the workers.
+     */
+    private final class Poller implements Runnable {
+
+        public void run() {
+
+            while (!stopped) {
+                registerEvents();
+                try {
+                    selector.select(1000L);
+                } catch (IOException e) {
+                    log("poller error: ", e);
+                    continue;
+                }
+                Iterator keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = (SelectionKey) keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    // The connection belongs to a worker until it is parked
+                    // again
+                    key.interestOps(0);
+                    dispatch((NioHttpConnection) key.attachment());
+                }
+                expireIdle();
+            }
+
+            // Close all the connections that are still open
+            Iterator keys = selector.keys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = (SelectionKey) keys.next();
+                NioHttpConnection connection =
+                    (NioHttpConnection) key.attachment();
+                if (connection != null)
+                    connection.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                ;
+            }
+
+        }
+
+    }
+
+
+    /**
+     * A worker thread processing the requests of one connection at a time
+     * with its own <code>HttpProcessor</code>.
+     */
+    private final class Worker implements Runnable {
+
+        private HttpProcessor processor = null;
+
+        private Selector workerSelector = null;
+
+        Worker(int id) throws IOException {
+            processor = new HttpProcessor(NioHttpConnector.this, id);
+            workerSelector = Selector.open();
+        }
+
+        public void run() {
+
+            while (!stopped) {
+
+                // Wait for the next connection with input available
+                NioHttpConnection connection = await();
+                if (connection == null)
+                    continue;
+
+                // Process the requests available on this connection
+                connection.setSelector(workerSelector);
+                boolean keepAlive = false;
+                try {
+                    keepAlive = processor.process(connection);
+                } catch (Throwable t) {
+                    log("process.invoke", t);
+                }
+                connection.setSelector(null);
+
+                if (keepAlive && !stopped)
+                    park(connection);
+                else
+                    connection.close();
+
+            }
+
+            try {
+                workerSelector.close();
+            } catch (IOException e) {
+                ;
+            }
+
+        }
+
+    }
+
+
+}
@@ -3,6 +3,7 @@ package org.apache.catalina.connector.http;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.EOFException;
+import java.io.OutputStream;
 import org.apache.catalina.util.StringManager;
 
 /**
@@ -78,6 +79,13 @@ public class SocketInputStream extends InputStream {
     protected InputStream is;
 
 
+    /**
+     * Output stream of the connection, flushed before blocking on the
+     * underlying input stream, or <code>null</code>.
+     */
+    protected OutputStream output;
+
+
     // ----------------------------------------------------------- Constructors
 
 
@@ -112,6 +120,21 @@ public class SocketInputStream extends InputStream {
     // --------------------------------------------------------- Public Methods
 
 
+    /**
+     * Set the output stream of the connection.  A response held back
+     * because more input was available is flushed before waiting for more
+     * input, so that the client never waits for it while the next request
+     * is incomplete.
+     *
+     * @param output The output stream, or <code>null</code>
+     */
+    public void setOutput(OutputStream output) {
+
+        this.output = output;
+
+    }
+
+
     /**
      * Read the request line, and copies it to the given buffer. This
      * function is meant to be used during the HTTP request header parsing.
@@ -292,9 +315,8 @@ public class SocketInputStream extends InputStream {
     public void readHeader(HttpHeader header)
         throws IOException {
 
-        // Recycling check
-        if (header.nameEnd != 0)
-            header.recycle();
+        // Recycling check (also clears any value cached by a previous use)
+        header.recycle();
 
         // Checking for a blank line
         int chr = read();
@@ -313,6 +335,7 @@ public class SocketInputStream extends InputStream {
         int maxRead = header.name.length;
         int readStart = pos;
         int readCount = 0;
+        int hash = 0;
 
         boolean colon = false;
 
@@ -347,11 +370,15 @@ public class SocketInputStream extends InputStream {
                 val = (char) (val - LC_OFFSET);
             }
             header.name[readCount] = val;
+            if (!colon)
+                hash = 31 * hash + val;
             readCount++;
             pos++;
         }
 
         header.nameEnd = readCount - 1;
+        // Same as HttpHeader.hashCode(), computed while lower casing
+        header.hashCode = hash;
 
         // Reading the header value (which can be spanned over multiple lines)
 
@@ -527,6 +554,8 @@ public class SocketInputStream extends InputStream {
         throws IOException {
         pos = 0;
         count = 0;
+        if ((output != null) && (is.available() == 0))
+            output.flush();
         int nRead = is.read(buf, 0, buf.length);
         if (nRead > 0) {
             count = nRead;
@@ -0,0 +1,198 @@
+package org.apache.catalina.connector.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Extends OutputStream to coalesce the writes made for the responses sent
+ * on a connection.  The status line, headers and body of a response, and
+ * the responses to several pipelined requests, are sent to the socket with
+ * a single write when the stream is flushed.  Data that does not fit in the
+ * internal buffer is written through, together with the buffered bytes.
+ *
+ * @deprecated
+ */
+public class SocketOutputStream extends OutputStream {
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * Internal buffer.
+     */
+    protected byte buf[];
+
+
+    /**
+     * Number of valid bytes in the buffer.
+     */
+    protected int count;
+
+
+    /**
+     * Underlying output stream.
+     */
+    protected OutputStream os;
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct an output stream associated with the specified socket
+     * output.
+     *
+     * @param os socket output stream
+     * @param bufferSize size of the internal buffer
+     */
+    public SocketOutputStream(OutputStream os, int bufferSize) {
+
+        this.os = os;
+        buf = new byte[bufferSize];
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Write byte.
+     */
+    public void write(int b)
+        throws IOException {
+        if (count >= buf.length)
+            flushBuffer();
+        buf[count++] = (byte) b;
+    }
+
+
+    /**
+     * Write the specified bytes, writing through to the socket when they do
+     * not fit in the internal buffer.
+     */
+    public void write(byte b[], int off, int len)
+        throws IOException {
+        if (len > (buf.length - count)) {
+            if (len >= buf.length) {
+                try {
+                    writeThrough(buf, count, b, off, len);
+                } finally {
+                    count = 0;
+                }
+                return;
+            }
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+
+    /**
+     * Write the remaining bytes of the specified buffer.  This implementation
+     * copies them through the internal buffer; subclasses attached to a
+     * channel may send them directly, without copying them to the heap.
+     */
+    public void write(ByteBuffer src)
+        throws IOException {
+        while (src.hasRemaining()) {
+            if (count >= buf.length)
+                flushBuffer();
+            int n = Math.min(src.remaining(), buf.length - count);
+            src.get(buf, count, n);
+            count += n;
+        }
+    }
+
+
+    /**
+     * Write <code>len</code> bytes of the specified file, starting at the
+     * specified position.  This implementation reads them into the internal
+     * buffer; subclasses attached to a channel may transfer them directly
+     * from the file to the socket.
+     */
+    public void transferFrom(FileChannel src, long position, long len)
+        throws IOException {
+        while (len > 0) {
+            if (count >= buf.length)
+                flushBuffer();
+            int n = (int) Math.min(len, buf.length - count);
+            n = src.read(ByteBuffer.wrap(buf, count, n), position);
+            if (n < 0)
+                throw new EOFException();
+            count += n;
+            position += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Write all buffered bytes to the socket.
+     */
+    public void flush()
+        throws IOException {
+        flushBuffer();
+        os.flush();
+    }
+
+
+    /**
+     * Close the output stream.
+     */
+    public void close()
+        throws IOException {
+        if (os == null)
+            return;
+        flush();
+        os.close();
+        os = null;
+        buf = null;
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    /**
+     * Write the bytes held in the internal buffer, followed by the specified
+     * bytes, to the underlying output stream.  This implementation uses two
+     * separate writes; subclasses attached to a channel may send both with a
+     * single gathering write.
+     *
+     * @param head The internal buffer
+     * @param headLen The number of valid bytes in the internal buffer
+     * @param b The bytes written through
+     * @param off Offset of the bytes written through
+     * @param len Number of bytes written through
+     */
+    protected void writeThrough(byte head[], int headLen,
+                                byte b[], int off, int len)
+        throws IOException {
+        if (headLen > 0)
+            os.write(head, 0, headLen);
+        os.write(b, off, len);
+    }
+
+
+    /**
+     * Write the internal buffer to the underlying output stream.
+     */
+    protected void flushBuffer()
+        throws IOException {
+        if (count > 0) {
+            try {
+                os.write(buf, 0, count);
+            } finally {
+                count = 0;
+            }
+        }
+    }
+
+
+}
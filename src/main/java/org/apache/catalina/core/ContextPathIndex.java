@@ -0,0 +1,239 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+
+package org.apache.catalina.core;
+
+
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+
+
+/**
+ * Immutable index of the Contexts of a <code>Host</code> by context path,
+ * used to find the Context with the longest path that prefixes a request
+ * URI in a single pass over the URI, without allocating objects or taking
+ * locks.  The paths are held in a radix tree, whose edges are labelled
+ * with the longest runs of characters shared by the paths below them.
+ * <p>
+ * A Host replaces its index with a new one, built from its current
+ * children, whenever a Context is added or removed.
+ */
+
+final class ContextPathIndex {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Build an index of the specified Contexts, keyed by their names.
+     *
+     * @param children The Contexts to be indexed
+     */
+    ContextPathIndex(Container children[]) {
+
+        for (int i = 0; i < children.length; i++) {
+            String name = children[i].getName();
+            if (name != null)
+                root.add(name, 0, (Context) children[i]);
+        }
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The root of the tree, which holds the default Context, if any.
+     */
+    private Node root = new Node("");
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Return the Context whose path is the longest prefix of the specified
+     * URI, or the default Context if there is no such Context.  A path is
+     * a prefix of the URI if it is followed by a "/" in the URI, or if it
+     * is the whole URI.
+     *
+     * @param uri The host relative request URI
+     */
+    Context map(String uri) {
+
+        Context context = root.context;
+        Node node = root;
+        int length = uri.length();
+        int pos = 0;
+        while (pos < length) {
+            node = node.child(uri.charAt(pos));
+            if ((node == null) ||
+                !uri.regionMatches(pos, node.label, 0, node.label.length()))
+                break;
+            pos += node.label.length();
+            if ((node.context != null) &&
+                ((pos == length) || (uri.charAt(pos) == '/')))
+                context = node.context;
+        }
+        return (context);
+
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A node of the tree.
+     */
+    private static final class Node {
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        /**
+         * The Context whose path ends at this node, if any.
+         */
+        Context context = null;
+
+        /**
+         * The characters of the edge leading to this node.
+         */
+        String label = null;
+
+        /**
+         * The first characters of the labels of the children.
+         */
+        private char firsts[] = new char[0];
+
+        /**
+         * The children of this node, in the same order.
+         */
+        private Node children[] = new Node[0];
+
+        /**
+         * Add the specified Context for the part of its path beginning at
+         * the specified position, which follows this node.
+         */
+        void add(String path, int pos, Context context) {
+            if (pos == path.length()) {
+                this.context = context;
+                return;
+            }
+            int i = indexOf(path.charAt(pos));
+            if (i < 0) {
+                Node node = new Node(path.substring(pos));
+                node.context = context;
+                append(node);
+                return;
+            }
+            Node child = children[i];
+            int common = 0;
+            int max = Math.min(child.label.length(), path.length() - pos);
+            while ((common < max) &&
+                   (child.label.charAt(common) == path.charAt(pos + common)))
+                common++;
+            if (common < child.label.length()) {
+                // Split the edge where the paths diverge
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.append(child);
+                children[i] = middle;
+                child = middle;
+            }
+            child.add(path, pos + common, context);
+        }
+
+        /**
+         * Return the child whose label begins with the specified
+         * character, or <code>null</code>.
+         */
+        Node child(char c) {
+            int i = indexOf(c);
+            return ((i < 0) ? null : children[i]);
+        }
+
+        private void append(Node node) {
+            int n = children.length;
+            char newFirsts[] = new char[n + 1];
+            Node newChildren[] = new Node[n + 1];
+            System.arraycopy(firsts, 0, newFirsts, 0, n);
+            System.arraycopy(children, 0, newChildren, 0, n);
+            newFirsts[n] = node.label.charAt(0);
+            newChildren[n] = node;
+            firsts = newFirsts;
+            children = newChildren;
+        }
+
+        private int indexOf(char c) {
+            for (int i = 0; i < firsts.length; i++) {
+                if (firsts[i] == c)
+                    return (i);
+            }
+            return (-1);
+        }
+
+    }
+
+
+}
@@ -65,14 +65,7 @@
 package org.apache.catalina.core;
 
 
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
-import java.util.ArrayList;
-import java.util.Iterator;
 import org.apache.catalina.Container;
-import org.apache.catalina.ContainerEvent;
-import org.apache.catalina.ContainerListener;
-import org.apache.catalina.Engine;
 import org.apache.catalina.Host;
 import org.apache.catalina.Lifecycle;
 import org.apache.catalina.LifecycleException;
@@ -96,24 +89,12 @@ import org.apache.catalina.util.StringManager;
  */
 
 public final class FastEngineMapper
-    implements ContainerListener, Lifecycle, Mapper, PropertyChangeListener {
+    implements Lifecycle, Mapper {
 
 
     // ----------------------------------------------------- Instance Variables
 
 
-    /**
-     * Cache of hostname -> Host mappings.  FIXME - use FastHashMap.
-     */
-    private java.util.HashMap cache = new java.util.HashMap();
-
-
-    /**
-     * The default host used for unknown host names.
-     */
-    private Host defaultHost = null;
-
-
     /**
      * The debugging detail level for this component.
      */
@@ -231,18 +212,11 @@ public final class FastEngineMapper
         if (debug >= 1)
             engine.log("Mapping server name '" + server + "'");
 
-        // Find the specified host in our cache
+        // Find the matching child Host by name, alias or wildcard, falling
+        // back to the default host if any
         if (debug >= 2)
-            engine.log(" Trying a cache match");
-        Host host = (Host) cache.get(server);
-
-        // Map to the default host if any
-        if ((host == null) && (defaultHost != null)) {
-            if (debug >= 2)
-                engine.log(" Mapping to default host");
-            host = defaultHost;
-            addAlias(server, host);
-        }
+            engine.log(" Trying the host name index");
+        Host host = engine.getHostIndex().map(server);
 
         // Update the Request if requested, and return the selected Host
         ;       // No update to the Request is required
@@ -251,33 +225,6 @@ public final class FastEngineMapper
     }
 
 
-    // ---------------------------------------------- ContainerListener Methods
-
-
-    /**
-     * Acknowledge the occurrence of the specified event.
-     *
-     * @param event ContainerEvent that has occurred
-     */
-    public void containerEvent(ContainerEvent event) {
-
-        Container source = (Container) event.getSource();
-        String type = event.getType();
-        if (source == engine) {
-            if (Container.ADD_CHILD_EVENT.equals(type))
-                addHost((Host) event.getData());
-            else if (Container.REMOVE_CHILD_EVENT.equals(type))
-                removeHost((Host) event.getData());
-        } else if (source instanceof Host) {
-            if (Host.ADD_ALIAS_EVENT.equals(type))
-                addAlias((String) event.getData(), (Host) source);
-            else if (Host.REMOVE_ALIAS_EVENT.equals(type))
-                removeAlias((String) event.getData());
-        }
-
-    }
-
-
     // ------------------------------------------------------ Lifecycle Methods
 
 
@@ -331,17 +278,6 @@ public final class FastEngineMapper
                               engine.getName()));
         started = true;
 
-        // Configure based on our associated Engine properties
-        engine.addContainerListener(this);
-        engine.addPropertyChangeListener(this);
-        setDefaultHost(engine.getDefaultHost());
-
-        // Cache mappings for our child hosts
-        Container children[] = engine.findChildren();
-        for (int i = 0; i < children.length; i++) {
-            addHost((Host) children[i]);
-        }
-
         // Notify our interested LifecycleListeners
         lifecycle.fireLifecycleEvent(START_EVENT, null);
 
@@ -366,148 +302,6 @@ public final class FastEngineMapper
         lifecycle.fireLifecycleEvent(STOP_EVENT, null);
         started = false;
 
-        // Deconfigure based on our associated Engine properties
-        engine.removePropertyChangeListener(this);
-        setDefaultHost(null);
-        engine.removeContainerListener(this);
-
-        // Clear our mapping cache
-        cache.clear();
-
-    }
-
-
-    // ----------------------------------------- PropertyChangeListener Methods
-
-
-    /**
-     * Process a property change event.
-     */
-    public void propertyChange(PropertyChangeEvent event) {
-
-        Object source = event.getSource();
-        if (source instanceof Engine) {
-            if ("defaultHost".equals(event.getPropertyName()))
-                setDefaultHost((String) event.getNewValue());
-        }
-
-    }
-
-
-    // -------------------------------------------------------- Private Methods
-
-
-    /**
-     * Add an alias for the specified host.
-     *
-     * @param alias New alias name
-     * @param host Host to resolve to
-     */
-    private void addAlias(String alias, Host host) {
-
-        if (debug >= 3)
-            engine.log("Adding alias '" + alias + "' for host '" +
-                       host.getName() + "'");
-        cache.put(alias.toLowerCase(), host);
-
-    }
-
-
-    /**
-     * Add a new child Host to our associated Engine.
-     *
-     * @param host Child host to add
-     */
-    private void addHost(Host host) {
-
-        if (debug >= 3)
-            engine.log("Adding host '" + host.getName() + "'");
-
-        host.addContainerListener(this);
-
-        // Register the host name
-        addAlias(host.getName(), host);
-
-        // Register all associated aliases
-        String aliases[] = host.findAliases();
-        for (int i = 0; i < aliases.length; i++)
-            addAlias(aliases[i], host);
-
-    }
-
-
-    /**
-     * Return the Host that matches the specified name (or alias), if any;
-     * otherwise, return <code>null</code>.
-     *
-     * @param name Name or alias of the desired Host
-     */
-    private Host findHost(String name) {
-
-        return ((Host) cache.get(name.toLowerCase()));
-
-    }
-
-
-    /**
-     * Remove the specified alias from our cache.
-     *
-     * @param alias Alias to remove
-     */
-    private void removeAlias(String alias) {
-
-        if (debug >= 3)
-            engine.log("Removing alias '" + alias + "'");
-        cache.remove(alias.toLowerCase());
-
-    }
-
-
-    /**
-     * Remove an existing child Host from our associated Engine.
-     *
-     * @param host Host to be removed
-     */
-    private void removeHost(Host host) {
-
-        if (debug >= 3)
-            engine.log("Removing host '" + host.getName() + "'");
-
-        host.removeContainerListener(this);
-
-        // Identify all names mapped to this host
-        ArrayList removes = new ArrayList();
-        Iterator keys = cache.keySet().iterator();
-        while (keys.hasNext()) {
-            String key = (String) keys.next();
-            if (host.equals((Host) cache.get(key)))
-                removes.add(key);
-        }
-
-        // Remove the associated names
-        keys = removes.iterator();
-        while (keys.hasNext()) {
-            removeAlias((String) keys.next());
-        }
-
-    }
-
-
-    /**
-     * Set the default Host used for resolving unknown host names.
-     *
-     * @param name Name of the default host
-     */
-    private void setDefaultHost(String name) {
-
-        if (debug >= 3)
-            engine.log("Setting default host '" + name + "'");
-
-        if (name == null)
-            defaultHost = null;
-        else
-            defaultHost = (Host) engine.findChild(name);
-
     }
 
 
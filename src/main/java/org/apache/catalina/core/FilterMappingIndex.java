@@ -0,0 +1,469 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+package org.apache.catalina.core;
+
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.catalina.deploy.FilterMap;
+
+
+/**
+ * Immutable index of the filter mappings of a <code>Context</code>, used by
+ * <code>StandardWrapperValve</code> to select the filters of a request
+ * without walking every mapping.  The URL patterns are held in three hash
+ * tables (exact paths, path prefixes and extensions) probed in place along
+ * the request path, which reduces the path to a class: the exact pattern,
+ * the longest prefix pattern and the extension pattern it matches.  The
+ * filters for a class and a servlet name are computed once and cached.
+ * <p>
+ * The index is built from a snapshot of the mappings and the filter
+ * configurations, and replaced as a whole whenever either changes.
+ */
+
+final class FilterMappingIndex {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Build an index of the specified filter mappings.
+     *
+     * @param filterMaps The filter mappings, in declaration order
+     * @param filterConfigs The filter configurations keyed by filter name
+     */
+    FilterMappingIndex(FilterMap filterMaps[], Map filterConfigs) {
+
+        int n = filterMaps.length;
+        this.filterMaps = filterMaps;
+        this.configs = new ApplicationFilterConfig[n];
+        this.exact = new Table(n);
+        this.prefix = new Table(n);
+        this.extension = new Table(n);
+        for (int i = 0; i < n; i++) {
+            configs[i] = (ApplicationFilterConfig)
+                filterConfigs.get(filterMaps[i].getFilterName());
+            String pattern = filterMaps[i].getURLPattern();
+            if ((configs[i] == null) || (pattern == null))
+                continue;
+            exact.add(pattern, i);
+            if (pattern.endsWith("/*"))
+                prefix.add(pattern.substring(0, pattern.length() - 2), i);
+            else if (pattern.startsWith("*."))
+                extension.add(pattern.substring(2), i);
+        }
+
+        // A prefix pattern also selects the filters of the prefix patterns
+        // above it, and "/*" matches every path
+        rootPrefix = prefix.find("", 0, 0);
+        int inherited[][] = new int[prefix.size][];
+        for (int id = 0; id < prefix.size; id++) {
+            String key = prefix.keys[id];
+            int maps[] = prefix.maps[id];
+            int pos = key.length();
+            while ((pos = key.lastIndexOf('/', pos - 1)) > 0) {
+                int parent = prefix.find(key, 0, pos);
+                if (parent >= 0)
+                    maps = merge(maps, prefix.maps[parent]);
+            }
+            if ((rootPrefix >= 0) && (id != rootPrefix))
+                maps = merge(maps, prefix.maps[rootPrefix]);
+            inherited[id] = maps;
+        }
+        prefix.maps = inherited;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The filters selected for each servlet name, keyed by servlet name.
+     */
+    private ConcurrentHashMap caches = new ConcurrentHashMap();
+
+
+    /**
+     * The filter configurations of the mappings, or <code>null</code> for
+     * mappings naming a filter that has not been started.
+     */
+    private ApplicationFilterConfig configs[] = null;
+
+
+    /**
+     * Zero length array of filters.
+     */
+    private static final ApplicationFilterConfig EMPTY[] =
+        new ApplicationFilterConfig[0];
+
+
+    /**
+     * The patterns matched exactly against the request path.
+     */
+    private Table exact = null;
+
+
+    /**
+     * The extensions of the extension patterns, without the leading "*.".
+     */
+    private Table extension = null;
+
+
+    /**
+     * The filter mappings, in declaration order.
+     */
+    private FilterMap filterMaps[] = null;
+
+
+    /**
+     * The path prefixes of the prefix patterns, without the trailing "/*".
+     */
+    private Table prefix = null;
+
+
+    /**
+     * The identifier of the "/*" pattern, or -1 if there is none.
+     */
+    private int rootPrefix = -1;
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Return the filters to apply, in order, to a request for the specified
+     * servlet.  The context relative request path is the part of the
+     * request URI that begins at the specified position.
+     *
+     * @param uri The decoded request URI, or <code>null</code> if the
+     *  request has no path
+     * @param off The length of the context path in the URI
+     * @param servletName The name of the servlet being invoked
+     */
+    ApplicationFilterConfig[] findFilters(String uri, int off,
+                                          String servletName) {
+
+        if (filterMaps.length == 0)
+            return (EMPTY);
+        long key = classify(uri, off);
+        if (servletName == null)
+            return (filters(key, servletName));
+        Cache cache = (Cache) caches.get(servletName);
+        if (cache != null) {
+            ApplicationFilterConfig filters[] = cache.get(key);
+            if (filters != null)
+                return (filters);
+        }
+        ApplicationFilterConfig filters[] = filters(key, servletName);
+        synchronized (caches) {
+            cache = (Cache) caches.get(servletName);
+            caches.put(servletName, new Cache(cache, key, filters));
+        }
+        return (filters);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return the class of the request path that begins at the specified
+     * position of the URI, packing the identifiers of the exact, prefix and
+     * extension patterns it matches.
+     */
+    private long classify(String uri, int off) {
+
+        if (uri == null)
+            return (0L);
+        int end = uri.length();
+
+        int e = exact.find(uri, off, end);
+
+        int p = -1;
+        int pos = end;
+        while ((p < 0) && (pos > off)) {
+            p = prefix.find(uri, off, pos);
+            pos = uri.lastIndexOf('/', pos - 1);
+        }
+        if (p < 0)
+            p = rootPrefix;
+
+        int x = -1;
+        int slash = uri.lastIndexOf('/');
+        int period = uri.lastIndexOf('.');
+        if ((slash >= off) && (period > slash))
+            x = extension.find(uri, period + 1, end);
+
+        return ((((long) (e + 1)) << 42) | (((long) (p + 1)) << 21) |
+                (x + 1));
+
+    }
+
+
+    /**
+     * Compute the filters for the specified class of request paths and
+     * servlet name: the filters mapped by URL pattern first, then those
+     * mapped by servlet name, each in declaration order.
+     */
+    private ApplicationFilterConfig[] filters(long key, String servletName) {
+
+        int e = (int) (key >>> 42) - 1;
+        int p = (int) ((key >>> 21) & 0x1fffff) - 1;
+        int x = (int) (key & 0x1fffff) - 1;
+        int maps[] = new int[0];
+        if (e >= 0)
+            maps = merge(maps, exact.maps[e]);
+        if (p >= 0)
+            maps = merge(maps, prefix.maps[p]);
+        if (x >= 0)
+            maps = merge(maps, extension.maps[x]);
+
+        int count = maps.length;
+        ApplicationFilterConfig results[] =
+            new ApplicationFilterConfig[filterMaps.length + count];
+        for (int i = 0; i < maps.length; i++)
+            results[i] = configs[maps[i]];
+        if (servletName != null) {
+            for (int i = 0; i < filterMaps.length; i++) {
+                if ((configs[i] != null) &&
+                    servletName.equals(filterMaps[i].getServletName()))
+                    results[count++] = configs[i];
+            }
+        }
+        if (count == 0)
+            return (EMPTY);
+        ApplicationFilterConfig filters[] = new ApplicationFilterConfig[count];
+        System.arraycopy(results, 0, filters, 0, count);
+        return (filters);
+
+    }
+
+
+    /**
+     * Return the sorted union of two sorted lists of mapping indexes.
+     */
+    private static int[] merge(int a[], int b[]) {
+
+        int results[] = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while ((i < a.length) || (j < b.length)) {
+            if ((j == b.length) || ((i < a.length) && (a[i] < b[j])))
+                results[n++] = a[i++];
+            else if ((i == a.length) || (b[j] < a[i]))
+                results[n++] = b[j++];
+            else {
+                results[n++] = a[i++];
+                j++;
+            }
+        }
+        if (n == results.length)
+            return (results);
+        int merged[] = new int[n];
+        System.arraycopy(results, 0, merged, 0, n);
+        return (merged);
+
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * An immutable open addressing table of the filters selected for each
+     * class of request paths, replaced by a larger copy to add an entry.
+     */
+    private static final class Cache {
+
+        Cache(Cache cache, long key, ApplicationFilterConfig filters[]) {
+            int count = (cache == null) ? 1 : cache.count + 1;
+            int size = 8;
+            while (size < count * 2)
+                size <<= 1;
+            keys = new long[size];
+            values = new ApplicationFilterConfig[size][];
+            if (cache != null) {
+                for (int i = 0; i < cache.keys.length; i++) {
+                    if (cache.values[i] != null)
+                        put(cache.keys[i], cache.values[i]);
+                }
+            }
+            put(key, filters);
+            this.count = count;
+        }
+
+        private final int count;
+
+        private final long keys[];
+
+        private final ApplicationFilterConfig values[][];
+
+        ApplicationFilterConfig[] get(long key) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (values[slot] != null) {
+                if (keys[slot] == key)
+                    return (values[slot]);
+                slot = (slot + 1) & mask;
+            }
+            return (null);
+        }
+
+        private void put(long key, ApplicationFilterConfig filters[]) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while ((values[slot] != null) && (keys[slot] != key))
+                slot = (slot + 1) & mask;
+            keys[slot] = key;
+            values[slot] = filters;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            return ((int) (h ^ (h >>> 32)));
+        }
+
+    }
+
+
+    /**
+     * An open addressing table of patterns, each with an identifier and the
+     * sorted indexes of the filter mappings that use it.  Keys are compared
+     * in place against a region of the request path.
+     */
+    private static final class Table {
+
+        Table(int capacity) {
+            int size = 8;
+            while (size < capacity * 2)
+                size <<= 1;
+            slots = new int[size];
+            Arrays.fill(slots, -1);
+            keys = new String[capacity];
+            maps = new int[capacity][];
+        }
+
+        /**
+         * The mapping indexes of each key, by identifier.
+         */
+        int maps[][];
+
+        /**
+         * The keys, by identifier.
+         */
+        final String keys[];
+
+        /**
+         * The number of keys.
+         */
+        int size = 0;
+
+        /**
+         * The identifiers of the keys, by slot.
+         */
+        private final int slots[];
+
+        void add(String key, int map) {
+            int id = find(key, 0, key.length());
+            if (id < 0) {
+                id = size++;
+                keys[id] = key;
+                maps[id] = new int[0];
+                int mask = slots.length - 1;
+                int slot = hash(key, 0, key.length()) & mask;
+                while (slots[slot] >= 0)
+                    slot = (slot + 1) & mask;
+                slots[slot] = id;
+            }
+            maps[id] = merge(maps[id], new int[] { map });
+        }
+
+        int find(String s, int start, int end) {
+            int length = end - start;
+            int mask = slots.length - 1;
+            int slot = hash(s, start, end) & mask;
+            while (true) {
+                int id = slots[slot];
+                if (id < 0)
+                    return (-1);
+                String key = keys[id];
+                if ((key.length() == length) &&
+                    s.regionMatches(start, key, 0, length))
+                    return (id);
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private static int hash(String s, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++)
+                h = 31 * h + s.charAt(i);
+            return (h ^ (h >>> 16));
+        }
+
+    }
+
+
+}
@@ -0,0 +1,265 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+package org.apache.catalina.core;
+
+
+import org.apache.catalina.Container;
+import org.apache.catalina.Host;
+
+
+/**
+ * Immutable index of the Hosts of an <code>Engine</code> by name and alias,
+ * used to resolve the server name of a request without allocating objects
+ * or taking locks.  Names are held in an open addressing hash table and are
+ * compared with the server name one character at a time, ignoring case, so
+ * that the server name does not need to be converted to lower case first.
+ * <p>
+ * A name or alias of the form <code>*.example.com</code> matches any server
+ * name with a single label in place of the <code>*</code>.  Exact names are
+ * preferred over wildcards, and names over aliases.  Server names that do
+ * not match are resolved to the default Host, if any.
+ * <p>
+ * An Engine replaces its index with a new one whenever a Host, an alias or
+ * the default host changes.
+ */
+
+final class HostNameIndex {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Build an index of the specified Hosts.
+     *
+     * @param children The Hosts to be indexed
+     * @param defaultHost Name of the Host used for unknown server names
+     */
+    HostNameIndex(Container children[], String defaultHost) {
+
+        // Keep the table at most half full, so that probing always ends on
+        // an empty slot
+        String aliases[][] = new String[children.length][];
+        int count = children.length;
+        for (int i = 0; i < children.length; i++) {
+            aliases[i] = ((Host) children[i]).findAliases();
+            count += aliases[i].length;
+        }
+        int size = 16;
+        while (size < count * 2)
+            size <<= 1;
+        names = new String[size];
+        hosts = new Host[size];
+        mask = size - 1;
+
+        for (int i = 0; i < children.length; i++) {
+            Host host = (Host) children[i];
+            if (host.getName() != null)
+                add(host.getName(), host);
+            if ((defaultHost != null) && defaultHost.equals(host.getName()))
+                this.defaultHost = host;
+        }
+        for (int i = 0; i < children.length; i++) {
+            for (int j = 0; j < aliases[i].length; j++)
+                add(aliases[i][j], (Host) children[i]);
+        }
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The Host used for unknown server names, if any.
+     */
+    private Host defaultHost = null;
+
+
+    /**
+     * The Hosts of the table, in the same slots as their names.
+     */
+    private Host hosts[] = null;
+
+
+    /**
+     * The mask applied to hash codes to select a slot of the table.
+     */
+    private int mask = 0;
+
+
+    /**
+     * The names of the table, in lower case.  Wildcard names are held
+     * without their leading <code>*</code>.
+     */
+    private String names[] = null;
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Return the default Host, or <code>null</code> if there is none.
+     */
+    Host getDefaultHost() {
+
+        return (defaultHost);
+
+    }
+
+
+    /**
+     * Return the Host with the specified name or alias, trying wildcard
+     * names if there is no exact match, or the default Host if nothing
+     * matches.
+     *
+     * @param server The server name, in any case
+     */
+    Host map(String server) {
+
+        Host host = find(server, 0);
+        if (host == null) {
+            int dot = server.indexOf('.');
+            if (dot > 0)
+                host = find(server, dot);
+        }
+        if (host == null)
+            host = defaultHost;
+        return (host);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Add the specified name for a Host, unless it is already present.
+     */
+    private void add(String name, Host host) {
+
+        if (name.startsWith("*."))
+            name = name.substring(1);
+        int slot = hash(name, 0) & mask;
+        while (names[slot] != null) {
+            if (names[slot].equals(name))
+                return;
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        hosts[slot] = host;
+
+    }
+
+
+    /**
+     * Return the Host whose name matches the part of the server name that
+     * begins at the specified position, or <code>null</code>.
+     */
+    private Host find(String server, int off) {
+
+        int length = server.length() - off;
+        int slot = hash(server, off) & mask;
+        while (true) {
+            String name = names[slot];
+            if (name == null)
+                return (null);
+            if (name.length() == length) {
+                int i = 0;
+                while ((i < length) &&
+                       (name.charAt(i) == lower(server.charAt(off + i))))
+                    i++;
+                if (i == length)
+                    return (hosts[slot]);
+            }
+            slot = (slot + 1) & mask;
+        }
+
+    }
+
+
+    /**
+     * Return the hash code of the part of a name that begins at the
+     * specified position, ignoring case.
+     */
+    private static int hash(String name, int off) {
+
+        int h = 0;
+        int length = name.length();
+        for (int i = off; i < length; i++)
+            h = 31 * h + lower(name.charAt(i));
+        return (h ^ (h >>> 16));
+
+    }
+
+
+    /**
+     * Return the lower case equivalent of the specified character.
+     */
+    private static char lower(char c) {
+
+        if (c < 0x80)
+            return (((c >= 'A') && (c <= 'Z')) ? (char) (c + 32) : c);
+        return (Character.toLowerCase(c));
+
+    }
+
+
+}
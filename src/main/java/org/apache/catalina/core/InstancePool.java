@@ -0,0 +1,302 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+package org.apache.catalina.core;
+
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import org.apache.catalina.util.StringManager;
+
+
+/**
+ * Pool of the instances of a <code>SingleThreadModel</code> servlet.  Idle
+ * instances are held in a lock-free queue, with a semaphore counting them,
+ * so that allocating and returning an instance does not contend on a
+ * monitor.  New instances are loaded on demand while fewer than the maximum
+ * number of instances exist; once the maximum has been reached, callers
+ * wait for an instance to be returned, up to a timeout.  Lowering the
+ * maximum shrinks the pool as surplus instances are returned.
+ */
+
+final class InstancePool {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new, empty pool for the specified Wrapper.
+     *
+     * @param wrapper The Wrapper that loads the instances
+     */
+    InstancePool(StandardWrapper wrapper) {
+
+        this.wrapper = wrapper;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The number of idle instances in the queue.
+     */
+    private Semaphore available = new Semaphore(0);
+
+
+    /**
+     * The number of instances loaded for this pool.
+     */
+    private AtomicInteger count = new AtomicInteger(0);
+
+
+    /**
+     * The idle instances.
+     */
+    private ConcurrentLinkedQueue idle = new ConcurrentLinkedQueue();
+
+
+    /**
+     * The number of allocations that timed out waiting for an instance.
+     */
+    private AtomicLong timeoutCount = new AtomicLong(0L);
+
+
+    /**
+     * The number of allocations that had to wait for an instance.
+     */
+    private AtomicLong waitCount = new AtomicLong(0L);
+
+
+    /**
+     * The string manager for this package.
+     */
+    private static final StringManager sm =
+        StringManager.getManager(Constants.Package);
+
+
+    /**
+     * The total time, in milliseconds, spent waiting for an instance.
+     */
+    private AtomicLong waitTime = new AtomicLong(0L);
+
+
+    /**
+     * The Wrapper that loads the instances.
+     */
+    private StandardWrapper wrapper = null;
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the number of instances loaded for this pool.
+     */
+    int getCount() {
+
+        return (count.get());
+
+    }
+
+
+    /**
+     * Return the number of allocations that timed out.
+     */
+    long getTimeoutCount() {
+
+        return (timeoutCount.get());
+
+    }
+
+
+    /**
+     * Return the number of allocations that had to wait for an instance.
+     */
+    long getWaitCount() {
+
+        return (waitCount.get());
+
+    }
+
+
+    /**
+     * Return the total time, in milliseconds, spent waiting for an instance.
+     */
+    long getWaitTime() {
+
+        return (waitTime.get());
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Allocate an idle instance, loading a new one if there is none and
+     * fewer than the specified number of instances exist, or else waiting
+     * for one to be returned.
+     *
+     * @param maxInstances The maximum number of instances
+     * @param timeout The maximum time to wait in milliseconds, or zero or
+     *  less to wait without limit
+     * @return The allocated instance, or <code>null</code> if none became
+     *  available before the timeout expired
+     *
+     * @exception ServletException if a new instance cannot be loaded
+     */
+    Servlet acquire(int maxInstances, long timeout) throws ServletException {
+
+        if (available.tryAcquire())
+            return ((Servlet) idle.poll());
+
+        // Load a new instance if we are below the limit
+        while (true) {
+            int n = count.get();
+            if (n >= maxInstances)
+                break;
+            if (count.compareAndSet(n, n + 1)) {
+                try {
+                    return (wrapper.loadServlet());
+                } catch (ServletException e) {
+                    count.decrementAndGet();
+                    throw e;
+                } catch (Throwable e) {
+                    count.decrementAndGet();
+                    throw new ServletException
+                        (sm.getString("standardWrapper.allocate"), e);
+                }
+            }
+        }
+
+        // Wait for an instance to be returned
+        waitCount.incrementAndGet();
+        long start = System.currentTimeMillis();
+        boolean acquired = false;
+        try {
+            if (timeout > 0L) {
+                acquired =
+                    available.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                available.acquire();
+                acquired = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        waitTime.addAndGet(System.currentTimeMillis() - start);
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            return (null);
+        }
+        return ((Servlet) idle.poll());
+
+    }
+
+
+    /**
+     * Remove and return all the idle instances of this pool.
+     */
+    Servlet[] drain() {
+
+        ArrayList instances = new ArrayList();
+        while (available.tryAcquire()) {
+            instances.add(idle.poll());
+            count.decrementAndGet();
+        }
+        return ((Servlet[]) instances.toArray(new Servlet[instances.size()]));
+
+    }
+
+
+    /**
+     * Return an allocated instance to this pool, unless more than the
+     * specified number of instances exist.
+     *
+     * @param servlet The instance to be returned
+     * @param maxInstances The maximum number of instances
+     * @return <code>true</code> if the instance was returned to the pool,
+     *  or <code>false</code> if it is surplus and should be destroyed
+     */
+    boolean release(Servlet servlet, int maxInstances) {
+
+        while (true) {
+            int n = count.get();
+            if (n <= maxInstances)
+                break;
+            if (count.compareAndSet(n, n - 1))
+                return (false);
+        }
+        idle.offer(servlet);
+        available.release();
+        return (true);
+
+    }
+
+
+}
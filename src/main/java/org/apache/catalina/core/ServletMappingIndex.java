@@ -0,0 +1,340 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+
+package org.apache.catalina.core;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+
+
+/**
+ * Immutable index of the servlet mappings of a <code>Context</code>, used by
+ * <code>StandardContextMapper</code> to map a request without allocating
+ * objects or taking locks.  Exact and path prefix mappings are held in a
+ * character trie walked along the request URI, and extension mappings in
+ * a small table compared in place against the end of the URI.  Mappings
+ * whose servlet is not a child of the context are left out, as they can
+ * never be selected.
+ * <p>
+ * The index is built from a snapshot of the mappings, and replaced as a
+ * whole whenever a mapping or a child of the context changes.
+ */
+
+final class ServletMappingIndex {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Build an index of the specified servlet mappings.
+     *
+     * @param mappings The servlet names keyed by URL pattern
+     * @param context The Context whose children are mapped
+     */
+    ServletMappingIndex(Map mappings, Context context) {
+
+        ArrayList extensions = new ArrayList();
+        ArrayList extensionWrappers = new ArrayList();
+        Iterator patterns = mappings.keySet().iterator();
+        while (patterns.hasNext()) {
+            String pattern = (String) patterns.next();
+            Wrapper wrapper = (Wrapper)
+                context.findChild((String) mappings.get(pattern));
+            if (wrapper == null)
+                continue;
+            if (pattern.equals("/")) {
+                defaultWrapper = wrapper;
+            } else if (pattern.startsWith("*.")) {
+                extensions.add(pattern.substring(2));
+                extensionWrappers.add(wrapper);
+            } else if (pattern.endsWith("/*")) {
+                root.add(pattern, 0, pattern.length() - 2).prefix = wrapper;
+            } else {
+                root.add(pattern, 0, pattern.length()).exact = wrapper;
+            }
+        }
+        root.freeze(0);
+        this.extensions =
+            (String[]) extensions.toArray(new String[extensions.size()]);
+        this.extensionWrappers = (Wrapper[])
+            extensionWrappers.toArray(new Wrapper[extensionWrappers.size()]);
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The Wrapper of the default servlet mapping, if any.
+     */
+    private Wrapper defaultWrapper = null;
+
+
+    /**
+     * The mapped extensions, without the leading "*.".
+     */
+    private String extensions[] = null;
+
+
+    /**
+     * The Wrappers of the mapped extensions, in the same order.
+     */
+    private Wrapper extensionWrappers[] = null;
+
+
+    /**
+     * The root of the trie of exact and prefix mappings.
+     */
+    private Node root = new Node();
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Return the Wrapper of the default servlet mapping, or
+     * <code>null</code>.
+     */
+    Wrapper findDefault() {
+
+        return (defaultWrapper);
+
+    }
+
+
+    /**
+     * Return the Wrapper mapped exactly to the part of the specified URI
+     * which begins at the specified index, or <code>null</code>.
+     *
+     * @param uri The request URI
+     * @param start The index at which the context relative URI begins
+     */
+    Wrapper findExact(String uri, int start) {
+
+        Node node = root;
+        int length = uri.length();
+        for (int i = start; (node != null) && (i < length); i++)
+            node = node.child(uri.charAt(i));
+        return ((node == null) ? null : node.exact);
+
+    }
+
+
+    /**
+     * Return the Wrapper mapped to the extension of the last segment of
+     * the part of the specified URI which begins at the specified index,
+     * or <code>null</code>.
+     *
+     * @param uri The request URI
+     * @param start The index at which the context relative URI begins
+     */
+    Wrapper findExtension(String uri, int start) {
+
+        if (extensions.length == 0)
+            return (null);
+        int slash = uri.lastIndexOf('/');
+        if (slash < start)
+            return (null);
+        int period = uri.lastIndexOf('.');
+        if (period < slash)
+            return (null);
+        int length = uri.length() - (period + 1);
+        for (int i = 0; i < extensions.length; i++) {
+            if ((extensions[i].length() == length) &&
+                uri.regionMatches(period + 1, extensions[i], 0, length))
+                return (extensionWrappers[i]);
+        }
+        return (null);
+
+    }
+
+
+    /**
+     * Return the node of the longest path prefix mapping which matches the
+     * part of the specified URI which begins at the specified index, or
+     * <code>null</code>.  A prefix matches if it is followed by a "/" in
+     * the URI or if it is the whole URI.
+     *
+     * @param uri The request URI
+     * @param start The index at which the context relative URI begins
+     */
+    Node findPrefix(String uri, int start) {
+
+        Node match = null;
+        Node node = root;
+        int length = uri.length();
+        for (int i = start; node != null; i++) {
+            if ((node.prefix != null) &&
+                ((i == length) || (uri.charAt(i) == '/')))
+                match = node;
+            if (i == length)
+                break;
+            node = node.child(uri.charAt(i));
+        }
+        return (match);
+
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A node of the trie, matching the characters of a URI up to a given
+     * depth.
+     */
+    static final class Node {
+
+        /**
+         * The number of characters matched by this node.
+         */
+        int depth = 0;
+
+        /**
+         * The Wrapper of the exact mapping ending at this node, if any.
+         */
+        Wrapper exact = null;
+
+        /**
+         * The Wrapper of the prefix mapping ending at this node, if any.
+         */
+        Wrapper prefix = null;
+
+        /**
+         * The characters leading to the children of this node, sorted.
+         */
+        private char labels[] = new char[0];
+
+        /**
+         * The children of this node, in the same order as the labels.
+         */
+        private Node children[] = new Node[0];
+
+        /**
+         * Return the node for the specified path, creating it if needed.
+         */
+        Node add(String path, int pos, int end) {
+            if (pos == end)
+                return (this);
+            char c = path.charAt(pos);
+            Node node = null;
+            for (int i = 0; (node == null) && (i < labels.length); i++) {
+                if (labels[i] == c)
+                    node = children[i];
+            }
+            if (node == null) {
+                int n = labels.length;
+                char newLabels[] = new char[n + 1];
+                Node newChildren[] = new Node[n + 1];
+                System.arraycopy(labels, 0, newLabels, 0, n);
+                System.arraycopy(children, 0, newChildren, 0, n);
+                newLabels[n] = c;
+                node = new Node();
+                newChildren[n] = node;
+                labels = newLabels;
+                children = newChildren;
+            }
+            return (node.add(path, pos + 1, end));
+        }
+
+        /**
+         * Return the child reached by the specified character, or
+         * <code>null</code>.
+         */
+        Node child(char c) {
+            if (labels.length < 8) {
+                for (int i = 0; i < labels.length; i++) {
+                    if (labels[i] == c)
+                        return (children[i]);
+                }
+                return (null);
+            }
+            int i = Arrays.binarySearch(labels, c);
+            return ((i < 0) ? null : children[i]);
+        }
+
+        /**
+         * Sort the children of this subtree and record their depth.
+         */
+        void freeze(int depth) {
+            this.depth = depth;
+            char sortedLabels[] = (char[]) labels.clone();
+            Arrays.sort(sortedLabels);
+            Node sortedChildren[] = new Node[children.length];
+            for (int i = 0; i < labels.length; i++) {
+                int j = Arrays.binarySearch(sortedLabels, labels[i]);
+                sortedChildren[j] = children[i];
+                children[i].freeze(depth + 1);
+            }
+            labels = sortedLabels;
+            children = sortedChildren;
+        }
+
+    }
+
+
+}
@@ -271,6 +271,13 @@ public class StandardContext
     private FilterMap filterMaps[] = new FilterMap[0];
 
 
+    /**
+     * The index of our filter mappings, or <code>null</code> if a filter
+     * mapping, definition or configuration has changed since it was built.
+     */
+    private volatile FilterMappingIndex filterMappingIndex = null;
+
+
     /**
      * The descriptive information string for this implementation.
      */
@@ -385,6 +392,14 @@ public class StandardContext
     private HashMap servletMappings = new HashMap();
 
 
+    /**
+     * The index of the servlet mappings used to map requests, or
+     * <code>null</code> if it must be rebuilt because a mapping or a
+     * child has changed since it was built.
+     */
+    private volatile ServletMappingIndex servletMappingIndex = null;
+
+
     /**
      * The session timeout (in minutes) for this web application.
      */
@@ -1299,6 +1314,9 @@ public class StandardContext
         }
 
         super.addChild(child);
+        synchronized (servletMappings) {
+            servletMappingIndex = null;
+        }
 
     }
 
@@ -1429,6 +1447,9 @@ public class StandardContext
         synchronized (filterDefs) {
             filterDefs.put(filterDef.getFilterName(), filterDef);
         }
+        synchronized (filterConfigs) {
+            filterMappingIndex = null;
+        }
         fireContainerEvent("addFilterDef", filterDef);
 
     }
@@ -1472,6 +1493,9 @@ public class StandardContext
             results[filterMaps.length] = filterMap;
             filterMaps = results;
         }
+        synchronized (filterConfigs) {
+            filterMappingIndex = null;
+        }
         fireContainerEvent("addFilterMap", filterMap);
 
     }
@@ -1655,6 +1679,7 @@ public class StandardContext
         // Add this mapping to our registered set
         synchronized (servletMappings) {
             servletMappings.put(pattern, name);
+            servletMappingIndex = null;
         }
         fireContainerEvent("addServletMapping", pattern);
 
@@ -2634,6 +2659,21 @@ public class StandardContext
     }
 
 
+    /**
+     * Remove an existing child Container from association with this Context.
+     *
+     * @param child Existing child Container to be removed
+     */
+    public void removeChild(Container child) {
+
+        super.removeChild(child);
+        synchronized (servletMappings) {
+            servletMappingIndex = null;
+        }
+
+    }
+
+
     /**
      * Remove the specified security constraint from this web application.
      *
@@ -2732,6 +2772,9 @@ public class StandardContext
         synchronized (filterDefs) {
             filterDefs.remove(filterDef.getFilterName());
         }
+        synchronized (filterConfigs) {
+            filterMappingIndex = null;
+        }
         fireContainerEvent("removeFilterDef", filterDef);
 
     }
@@ -2765,6 +2808,9 @@ public class StandardContext
             filterMaps = results;
 
         }
+        synchronized (filterConfigs) {
+            filterMappingIndex = null;
+        }
 
         // Inform interested listeners
         fireContainerEvent("removeFilterMap", filterMap);
@@ -2956,6 +3002,7 @@ public class StandardContext
 
         synchronized (servletMappings) {
             servletMappings.remove(pattern);
+            servletMappingIndex = null;
         }
         fireContainerEvent("removeServletMapping", pattern);
 
@@ -3110,6 +3157,7 @@ public class StandardContext
         boolean ok = true;
         synchronized (filterConfigs) {
             filterConfigs.clear();
+            filterMappingIndex = null;
             Iterator names = filterDefs.keySet().iterator();
             while (names.hasNext()) {
                 String name = (String) names.next();
@@ -3154,6 +3202,7 @@ public class StandardContext
                 filterConfig.release();
             }
             filterConfigs.clear();
+            filterMappingIndex = null;
         }
         return (true);
 
@@ -3741,6 +3790,53 @@ public class StandardContext
     }
 
 
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the index of our filter mappings, building it if a filter
+     * mapping, definition or configuration has changed since it was last
+     * built.
+     */
+    FilterMappingIndex getFilterMappingIndex() {
+
+        FilterMappingIndex index = filterMappingIndex;
+        if (index == null) {
+            synchronized (filterConfigs) {
+                index = filterMappingIndex;
+                if (index == null) {
+                    index = new FilterMappingIndex(findFilterMaps(),
+                                                   filterConfigs);
+                    filterMappingIndex = index;
+                }
+            }
+        }
+        return (index);
+
+    }
+
+
+    /**
+     * Return the index of our servlet mappings, building it if a mapping
+     * or a child has changed since it was last built.
+     */
+    ServletMappingIndex getServletMappingIndex() {
+
+        ServletMappingIndex index = servletMappingIndex;
+        if (index == null) {
+            synchronized (servletMappings) {
+                index = servletMappingIndex;
+                if (index == null) {
+                    index = new ServletMappingIndex(servletMappings, this);
+                    servletMappingIndex = index;
+                }
+            }
+        }
+        return (index);
+
+    }
+
+
     // -------------------------------------------------------- Private Methods
 
 
@@ -192,53 +192,37 @@ public final class StandardContextMapper
         String contextPath =
             ((HttpServletRequest) request.getRequest()).getContextPath();
         String requestURI = ((HttpRequest) request).getDecodedRequestURI();
-        String relativeURI = requestURI.substring(contextPath.length());
-
+        int start = contextPath.length();
+        int length = requestURI.length();
 
         if (debug >= 1)
             context.log("Mapping contextPath='" + contextPath +
                         "' with requestURI='" + requestURI +
-                        "' and relativeURI='" + relativeURI + "'");
+                        "' and relativeURI='" +
+                        requestURI.substring(start) + "'");
 
         // Apply the standard request URI mapping rules from the specification
+        ServletMappingIndex index = context.getServletMappingIndex();
         Wrapper wrapper = null;
-        String servletPath = relativeURI;
-        String pathInfo = null;
-        String name = null;
+        int servletPathEnd = length;
 
         // Rule 1 -- Exact Match
         if (wrapper == null) {
             if (debug >= 2)
                 context.log("  Trying exact match");
-            if (!(relativeURI.equals("/")))
-                name = context.findServletMapping(relativeURI);
-            if (name != null)
-                wrapper = (Wrapper) context.findChild(name);
-            if (wrapper != null) {
-                servletPath = relativeURI;
-                pathInfo = null;
-            }
+            if (!((length - start == 1) && (requestURI.charAt(start) == '/')))
+                wrapper = index.findExact(requestURI, start);
         }
 
         // Rule 2 -- Prefix Match
         if (wrapper == null) {
             if (debug >= 2)
                 context.log("  Trying prefix match");
-            servletPath = relativeURI;
-            while (true) {
-                name = context.findServletMapping(servletPath + "/*");
-                if (name != null)
-                    wrapper = (Wrapper) context.findChild(name);
-                if (wrapper != null) {
-                    pathInfo = relativeURI.substring(servletPath.length());
-                    if (pathInfo.length() == 0)
-                        pathInfo = null;
-                    break;
-                }
-                int slash = servletPath.lastIndexOf('/');
-                if (slash < 0)
-                    break;
-                servletPath = servletPath.substring(0, slash);
+            ServletMappingIndex.Node node =
+                index.findPrefix(requestURI, start);
+            if (node != null) {
+                wrapper = node.prefix;
+                servletPathEnd = start + node.depth;
             }
         }
 
@@ -246,34 +230,22 @@ public final class StandardContextMapper
         if (wrapper == null) {
             if (debug >= 2)
                 context.log("  Trying extension match");
-            int slash = relativeURI.lastIndexOf('/');
-            if (slash >= 0) {
-                String last = relativeURI.substring(slash);
-                int period = last.lastIndexOf('.');
-                if (period >= 0) {
-                    String pattern = "*" + last.substring(period);
-                    name = context.findServletMapping(pattern);
-                    if (name != null)
-                        wrapper = (Wrapper) context.findChild(name);
-                    if (wrapper != null) {
-                        servletPath = relativeURI;
-                        pathInfo = null;
-                    }
-                }
-            }
+            wrapper = index.findExtension(requestURI, start);
         }
 
         // Rule 4 -- Default Match
         if (wrapper == null) {
             if (debug >= 2)
                 context.log("  Trying default match");
-            name = context.findServletMapping("/");
-            if (name != null)
-                wrapper = (Wrapper) context.findChild(name);
-            if (wrapper != null) {
-                servletPath = relativeURI;
-                pathInfo = null;
-            }
+            wrapper = index.findDefault();
+        }
+
+        String servletPath = null;
+        String pathInfo = null;
+        if ((wrapper != null) && (update || (debug >= 1))) {
+            servletPath = requestURI.substring(start, servletPathEnd);
+            if (servletPathEnd < length)
+                pathInfo = requestURI.substring(servletPathEnd);
         }
 
         // Update the Request (if requested) and return this Wrapper
@@ -112,6 +112,20 @@ public class StandardEngine
     private String defaultHost = null;
 
 
+    /**
+     * The index of our child Hosts by name and alias, or <code>null</code>
+     * if a child, an alias or the default host has changed since it was
+     * built.
+     */
+    private volatile HostNameIndex hostIndex = null;
+
+
+    /**
+     * The lock guarding the construction of the host index.
+     */
+    private final Object hostIndexLock = new Object();
+
+
     /**
      * The descriptive information string for this implementation.
      */
@@ -171,6 +185,7 @@ public class StandardEngine
         } else {
             this.defaultHost = host.toLowerCase();
         }
+        invalidateHostIndex();
         support.firePropertyChange("defaultHost", oldDefaultHost,
                                    this.defaultHost);
 
@@ -297,6 +312,7 @@ public class StandardEngine
             throw new IllegalArgumentException
                 (sm.getString("standardEngine.notHost"));
         super.addChild(child);
+        invalidateHostIndex();
 
     }
 
@@ -313,6 +329,19 @@ public class StandardEngine
     }
 
 
+    /**
+     * Remove an existing child Host from association with this Engine.
+     *
+     * @param child Existing child Host to be removed
+     */
+    public void removeChild(Container child) {
+
+        super.removeChild(child);
+        invalidateHostIndex();
+
+    }
+
+
     /**
      * Disallow any attempt to set a parent for this Container, since an
      * Engine is supposed to be at the top of the Container hierarchy.
@@ -372,4 +401,42 @@ public class StandardEngine
     }
 
 
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the index of our child Hosts by name and alias, building it
+     * first if none has been built yet, or a child, an alias or the default
+     * host has changed since it was last built.
+     */
+    HostNameIndex getHostIndex() {
+
+        HostNameIndex index = hostIndex;
+        if (index == null) {
+            synchronized (hostIndexLock) {
+                index = hostIndex;
+                if (index == null) {
+                    index = new HostNameIndex(findChildren(), defaultHost);
+                    hostIndex = index;
+                }
+            }
+        }
+        return (index);
+
+    }
+
+
+    /**
+     * Discard the index of our child Hosts, so that it is rebuilt on the
+     * next request.
+     */
+    void invalidateHostIndex() {
+
+        synchronized (hostIndexLock) {
+            hostIndex = null;
+        }
+
+    }
+
+
 }
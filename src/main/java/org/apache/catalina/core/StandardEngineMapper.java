@@ -187,39 +187,14 @@ public class StandardEngineMapper
         }
         if (server == null)
             return (null);
-        server = server.toLowerCase();
         if (debug >= 1)
             engine.log("Mapping server name '" + server + "'");
 
-        // Find the matching child Host directly
+        // Find the matching child Host by name, alias or wildcard, falling
+        // back to the default host if any
         if (debug >= 2)
-            engine.log(" Trying a direct match");
-        Host host = (Host) engine.findChild(server);
-
-        // Find a matching Host by alias.  FIXME - Optimize this!
-        if (host == null) {
-            if (debug >= 2)
-                engine.log(" Trying an alias match");
-            Container children[] = engine.findChildren();
-            for (int i = 0; i < children.length; i++) {
-                String aliases[] = ((Host) children[i]).findAliases();
-                for (int j = 0; j < aliases.length; j++) {
-                    if (server.equals(aliases[j])) {
-                        host = (Host) children[i];
-                        break;
-                    }
-                }
-                if (host != null)
-                    break;
-            }
-        }
-
-        // Trying the "default" host if any
-        if (host == null) {
-            if (debug >= 2)
-                engine.log(" Trying the default host");
-            host = (Host) engine.findChild(engine.getDefaultHost());
-        }
+            engine.log(" Trying the host name index");
+        Host host = engine.getHostIndex().map(server);
 
         // Update the Request if requested, and return the selected Host
         ;       // No update to the Request is required
@@ -115,6 +115,14 @@ public class StandardHost
     private String[] aliases = new String[0];
 
 
+    /**
+     * The index of our child Contexts by context path, replaced whenever
+     * a child is added or removed.
+     */
+    private volatile ContextPathIndex contextIndex =
+        new ContextPathIndex(new Container[0]);
+
+
     /**
      * The application root for this Host.
      */
@@ -547,6 +555,8 @@ public class StandardHost
         newAliases[aliases.length] = alias;
 
         aliases = newAliases;
+        if (parent instanceof StandardEngine)
+            ((StandardEngine) parent).invalidateHostIndex();
 
         // Inform interested listeners
         fireContainerEvent(ADD_ALIAS_EVENT, alias);
@@ -567,6 +577,7 @@ public class StandardHost
                 (sm.getString("standardHost.notContext"));
         }
         super.addChild(child);
+        updateContextIndex();
 
     }
 
@@ -607,27 +618,11 @@ public class StandardHost
         if (uri == null)
             return (null);
 
-        // Match on the longest possible context path prefix
+        // Match on the longest possible context path prefix, falling back
+        // to the default Context
         if (debug > 1)
             log("  Trying the longest context path prefix");
-        Context context = null;
-        String mapuri = uri;
-        while (true) {
-            context = (Context) findChild(mapuri);
-            if (context != null)
-                break;
-            int slash = mapuri.lastIndexOf('/');
-            if (slash < 0)
-                break;
-            mapuri = mapuri.substring(0, slash);
-        }
-
-        // If no Context matches, select the default Context
-        if (context == null) {
-            if (debug > 1)
-                log("  Trying the default context");
-            context = (Context) findChild("");
-        }
+        Context context = contextIndex.map(uri);
 
         // Complain if no Context has been selected
         if (context == null) {
@@ -643,6 +638,19 @@ public class StandardHost
     }
 
 
+    /**
+     * Remove an existing child Context from association with this Host.
+     *
+     * @param child Existing child Context to be removed
+     */
+    public void removeChild(Container child) {
+
+        super.removeChild(child);
+        updateContextIndex();
+
+    }
+
+
     /**
      * Remove the specified alias name from the aliases for this Host.
      *
@@ -675,6 +683,8 @@ public class StandardHost
             aliases = results;
 
         }
+        if (parent instanceof StandardEngine)
+            ((StandardEngine) parent).invalidateHostIndex();
 
         // Inform interested listeners
         fireContainerEvent(REMOVE_ALIAS_EVENT, alias);
@@ -886,6 +896,17 @@ public class StandardHost
     // ------------------------------------------------------ Protected Methods
 
 
+    /**
+     * Replace the index of our child Contexts with one reflecting the
+     * current set of children.
+     */
+    protected synchronized void updateContextIndex() {
+
+        contextIndex = new ContextPathIndex(findChildren());
+
+    }
+
+
     /**
      * Add a default Mapper implementation if none have been configured
      * explicitly.
@@ -135,6 +135,15 @@ public class StandardPipeline
     protected Valve basic = null;
 
 
+    /**
+     * The first stage of the immutable chain of ValveContexts through which
+     * requests are processed, replaced whenever a Valve is added or removed
+     * or the basic Valve is changed.
+     */
+    protected volatile StandardPipelineValveContext chain =
+        new StandardPipelineValveContext(null, null);
+
+
     /**
      * The Container with which this Pipeline is associated.
      */
@@ -390,6 +399,7 @@ public class StandardPipeline
             }
         }
         this.basic = valve;
+        updateChain();
 
     }
 
@@ -435,6 +445,7 @@ public class StandardPipeline
             results[valves.length] = valve;
             valves = results;
         }
+        updateChain();
 
     }
 
@@ -476,7 +487,7 @@ public class StandardPipeline
         throws IOException, ServletException {
 
         // Invoke the first Valve in this pipeline for this request
-        (new StandardPipelineValveContext()).invokeNext(request, response);
+        chain.invokeNext(request, response);
 
     }
 
@@ -521,6 +532,7 @@ public class StandardPipeline
             }
 
         }
+        updateChain();
 
         // Stop this valve if necessary
         if (started && (valve instanceof Lifecycle)) {
@@ -580,17 +592,69 @@ public class StandardPipeline
     }
 
 
+    /**
+     * Replace the chain of ValveContexts with one reflecting the current
+     * Valves and basic Valve of this Pipeline.
+     */
+    protected synchronized void updateChain() {
+
+        StandardPipelineValveContext context =
+            new StandardPipelineValveContext(null, null);
+        if (basic != null)
+            context = new StandardPipelineValveContext(basic, context);
+        Valve current[] = valves;
+        for (int i = current.length - 1; i >= 0; i--)
+            context = new StandardPipelineValveContext(current[i], context);
+        chain = context;
+
+    }
+
+
     // ------------------------------- StandardPipelineValveContext Inner Class
 
 
+    /**
+     * A stage of the chain of Valves of this Pipeline.  Each stage invokes
+     * its Valve with the following stage as the ValveContext, so a request
+     * walks the chain without any per-request state, and a chain that has
+     * been published is never modified.
+     */
     protected class StandardPipelineValveContext
         implements ValveContext {
 
 
+        // ------------------------------------------------------- Constructors
+
+
+        /**
+         * Construct a stage that invokes the specified Valve.
+         *
+         * @param valve The Valve to invoke, or <code>null</code> for the
+         *  stage following the last Valve
+         * @param next The stage passed to the Valve
+         */
+        protected StandardPipelineValveContext
+            (Valve valve, StandardPipelineValveContext next) {
+
+            this.valve = valve;
+            this.next = next;
+
+        }
+
+
         // ------------------------------------------------- Instance Variables
 
 
-        protected int stage = 0;
+        /**
+         * The stage passed to our Valve as its ValveContext.
+         */
+        protected final StandardPipelineValveContext next;
+
+
+        /**
+         * The Valve invoked by this stage.
+         */
+        protected final Valve valve;
 
 
         // --------------------------------------------------------- Properties
@@ -612,7 +676,8 @@ public class StandardPipeline
          * Cause the <code>invoke()</code> method of the next Valve that is 
          * part of the Pipeline currently being processed (if any) to be 
          * executed, passing on the specified request and response objects 
-         * plus this <code>ValveContext</code> instance.  Exceptions thrown by
+         * plus the <code>ValveContext</code> of the following stage.
+         * Exceptions thrown by
          * a subsequently executed Valve (or a Filter or Servlet at the 
          * application level) will be passed on to our caller.
          *
@@ -632,18 +697,11 @@ public class StandardPipeline
         public void invokeNext(Request request, Response response)
             throws IOException, ServletException {
 
-            int subscript = stage;
-            stage = stage + 1;
-
-            // Invoke the requested Valve for the current request thread
-            if (subscript < valves.length) {
-                valves[subscript].invoke(request, response, this);
-            } else if ((subscript == valves.length) && (basic != null)) {
-                basic.invoke(request, response, this);
-            } else {
+            // Invoke the Valve of this stage for the current request thread
+            if (valve == null)
                 throw new ServletException
                     (sm.getString("standardPipeline.noValve"));
-            }
+            valve.invoke(request, response, next);
 
         }
 
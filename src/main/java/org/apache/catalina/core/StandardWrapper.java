@@ -68,7 +68,7 @@ package org.apache.catalina.core;
 import java.io.PrintStream;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -135,7 +135,7 @@ public final class StandardWrapper
      * The count of allocations that are currently active (even if they
      * are for the same instance, as will be true on a non-STM servlet).
      */
-    private int countAllocated = 0;
+    private AtomicInteger countAllocated = new AtomicInteger(0);
 
 
     /**
@@ -229,15 +229,16 @@ public final class StandardWrapper
 
 
     /**
-     * Number of instances currently loaded for a STM servlet.
+     * Pool of the STM instances.
      */
-    private int nInstances = 0;
+    private volatile InstancePool instancePool = null;
 
 
     /**
-     * Stack containing the STM instances.
+     * Maximum time, in milliseconds, to wait for an STM instance, or zero
+     * or less to wait without limit.
      */
-    private Stack instancePool = null;
+    private int instancePoolTimeout = 10000;
 
 
     // ------------------------------------------------------------- Properties
@@ -284,7 +285,7 @@ public final class StandardWrapper
      */
     public int getCountAllocated() {
 
-        return (this.countAllocated);
+        return (this.countAllocated.get());
 
     }
 
@@ -326,6 +327,83 @@ public final class StandardWrapper
     }
 
 
+    /**
+     * Return the number of STM instances currently loaded.
+     */
+    public int getInstanceCount() {
+
+        InstancePool pool = instancePool;
+        return ((pool == null) ? 0 : pool.getCount());
+
+    }
+
+
+    /**
+     * Return the maximum time, in milliseconds, to wait for an STM instance
+     * when the maximum number of instances are allocated.
+     */
+    public int getInstancePoolTimeout() {
+
+        return (this.instancePoolTimeout);
+
+    }
+
+
+    /**
+     * Set the maximum time, in milliseconds, to wait for an STM instance
+     * when the maximum number of instances are allocated.  Requests that
+     * time out are answered with an SC_SERVICE_UNAVAILABLE error.  A value
+     * of zero or less waits without limit.
+     *
+     * @param instancePoolTimeout The new timeout
+     */
+    public void setInstancePoolTimeout(int instancePoolTimeout) {
+
+        int oldInstancePoolTimeout = this.instancePoolTimeout;
+        this.instancePoolTimeout = instancePoolTimeout;
+        support.firePropertyChange("instancePoolTimeout",
+                                   new Integer(oldInstancePoolTimeout),
+                                   new Integer(this.instancePoolTimeout));
+
+    }
+
+
+    /**
+     * Return the number of STM allocations that timed out waiting for an
+     * instance.
+     */
+    public long getInstancePoolTimeoutCount() {
+
+        InstancePool pool = instancePool;
+        return ((pool == null) ? 0L : pool.getTimeoutCount());
+
+    }
+
+
+    /**
+     * Return the number of STM allocations that had to wait for an
+     * instance.
+     */
+    public long getInstancePoolWaitCount() {
+
+        InstancePool pool = instancePool;
+        return ((pool == null) ? 0L : pool.getWaitCount());
+
+    }
+
+
+    /**
+     * Return the total time, in milliseconds, spent by STM allocations
+     * waiting for an instance.
+     */
+    public long getInstancePoolWaitTime() {
+
+        InstancePool pool = instancePool;
+        return ((pool == null) ? 0L : pool.getWaitTime());
+
+    }
+
+
     /**
      * Return the InstanceSupport object for this Wrapper instance.
      */
@@ -660,40 +738,26 @@ public final class StandardWrapper
             if (!singleThreadModel) {
                 if (debug >= 2)
                     log("  Returning non-STM instance");
-                countAllocated++;
+                countAllocated.incrementAndGet();
                 return (instance);
             }
 
         }
 
-        synchronized (instancePool) {
-
-            while (countAllocated >= nInstances) {
-                // Allocate a new instance if possible, or else wait
-                if (nInstances < maxInstances) {
-                    try {
-                        instancePool.push(loadServlet());
-                        nInstances++;
-                    } catch (ServletException e) {
-                        throw e;
-                    } catch (Throwable e) {
-                        throw new ServletException
-                            (sm.getString("standardWrapper.allocate"), e);
-                    }
-                } else {
-                    try {
-                        instancePool.wait();
-                    } catch (InterruptedException e) {
-                        ;
-                    }
-                }
-            }
-            if (debug >= 2)
-                log("  Returning allocated STM instance");
-            countAllocated++;
-            return (Servlet) instancePool.pop();
-
-        }
+        // Allocate an idle instance, a new instance or wait for one
+        InstancePool pool = instancePool;
+        if (pool == null)
+            throw new ServletException
+              (sm.getString("standardWrapper.unloading", getName()));
+        Servlet servlet = pool.acquire(maxInstances, instancePoolTimeout);
+        if (servlet == null)
+            throw new UnavailableException
+                (sm.getString("standardWrapper.instancePoolTimeout",
+                              getName()), 0);
+        if (debug >= 2)
+            log("  Returning allocated STM instance");
+        countAllocated.incrementAndGet();
+        return (servlet);
 
     }
 
@@ -711,15 +775,27 @@ public final class StandardWrapper
 
         // If not SingleThreadModel, no action is required
         if (!singleThreadModel) {
-            countAllocated--;
+            countAllocated.decrementAndGet();
             return;
         }
 
-        // Unlock and free this instance
-        synchronized (instancePool) {
-            countAllocated--;
-            instancePool.push(servlet);
-            instancePool.notify();
+        // Return this instance to the pool, or destroy it if it is surplus
+        countAllocated.decrementAndGet();
+        InstancePool pool = instancePool;
+        if ((pool != null) && pool.release(servlet, maxInstances))
+            return;
+        ClassLoader oldCtxClassLoader =
+            Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader
+                (servlet.getClass().getClassLoader());
+            servlet.destroy();
+        } catch (Throwable t) {
+            throw new ServletException
+                (sm.getString("standardWrapper.destroyException", getName()),
+                 t);
+        } finally {
+            Thread.currentThread().setContextClassLoader(oldCtxClassLoader);
         }
 
     }
@@ -952,7 +1028,7 @@ System.out.println("after calling setWrapper");
             singleThreadModel = servlet instanceof SingleThreadModel;
             if (singleThreadModel) {
                 if (instancePool == null)
-                    instancePool = new Stack();
+                    instancePool = new InstancePool(this);
             }
             fireContainerEvent("load", this);
         } finally {
@@ -1073,11 +1149,11 @@ System.out.println("after calling setWrapper");
 
         // Loaf a while if the current instance is allocated
         // (possibly more than once if non-STM)
-        if (countAllocated > 0) {
+        if (countAllocated.get() > 0) {
             int nRetries = 0;
             while (nRetries < 10) {
                 if (nRetries == 0) {
-                    log("Waiting for " + countAllocated +
+                    log("Waiting for " + countAllocated.get() +
                         " instance(s) to be deallocated");
                 }
                 try {
@@ -1109,7 +1185,6 @@ System.out.println("after calling setWrapper");
               (InstanceEvent.AFTER_DESTROY_EVENT, instance, t);
             instance = null;
             instancePool = null;
-            nInstances = 0;
             fireContainerEvent("unload", this);
             unloading = false;
             throw new ServletException
@@ -1135,12 +1210,11 @@ System.out.println("after calling setWrapper");
         if (singleThreadModel && (instancePool != null)) {
             try {
                 Thread.currentThread().setContextClassLoader(classLoader);
-                while (!instancePool.isEmpty()) {
-                    ((Servlet) instancePool.pop()).destroy();
-                }
+                Servlet instances[] = instancePool.drain();
+                for (int i = 0; i < instances.length; i++)
+                    instances[i].destroy();
             } catch (Throwable t) {
                 instancePool = null;
-                nInstances = 0;
                 unloading = false;
                 fireContainerEvent("unload", this);
                 throw new ServletException
@@ -1152,7 +1226,6 @@ System.out.println("after calling setWrapper");
                     (oldCtxClassLoader);
             }
             instancePool = null;
-            nInstances = 0;
         }
 
         unloading = false;
@@ -17,7 +17,6 @@ import org.apache.catalina.Request;
 import org.apache.catalina.Response;
 import org.apache.catalina.ValveContext;
 import org.apache.catalina.deploy.FilterDef;
-import org.apache.catalina.deploy.FilterMap;
 import org.apache.catalina.util.StringManager;
 import org.apache.catalina.valves.ValveBase;
 
@@ -49,6 +48,13 @@ final class StandardWrapperValve
     private FilterDef filterDef = null;
 
 
+    /**
+     * The released filter chain of each request processing thread, reused
+     * for the next request processed by the thread.
+     */
+    private static final ThreadLocal filterChains = new ThreadLocal();
+
+
     /**
      * The descriptive information related to this implementation.
      */
@@ -136,6 +142,24 @@ final class StandardWrapperValve
             if (!unavailable) {
                 servlet = wrapper.allocate();
             }
+        } catch (UnavailableException e) {
+            // A Wrapper which is still available has timed out waiting for
+            // an instance, which is expected under overload and counted by
+            // the Wrapper, so it is not worth a stack trace
+            if (wrapper.isUnavailable())
+                log(sm.getString("standardWrapper.allocateException",
+                                 wrapper.getName()), e);
+            else if (debug >= 1)
+                log(e.getMessage());
+            if (hres != null) {
+                long available = wrapper.getAvailable();
+                if ((available > 0L) && (available < Long.MAX_VALUE))
+                    hres.setDateHeader("Retry-After", available);
+                hres.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                               sm.getString("standardWrapper.isUnavailable",
+                                            wrapper.getName()));
+            }
+            servlet = null;
         } catch (ServletException e) {
             log(sm.getString("standardWrapper.allocateException",
                              wrapper.getName()), e);
@@ -220,8 +244,10 @@ final class StandardWrapperValve
 
         // Release the filter chain (if any) for this request
         try {
-            if (filterChain != null)
+            if (filterChain != null) {
                 filterChain.release();
+                filterChains.set(filterChain);
+            }
         } catch (Throwable e) {
             log(sm.getString("standardWrapper.releaseFilters",
                              wrapper.getName()), e);
@@ -270,9 +296,9 @@ final class StandardWrapperValve
     /**
      * Construct and return a FilterChain implementation that will wrap the
      * execution of the specified servlet instance.  If we should not execute
-     * a filter chain at all, return <code>null</code>.
-     * <p>
-     * <strong>FIXME</strong> - Pool the chain instances!
+     * a filter chain at all, return <code>null</code>.  The chain released
+     * by the last request processed by this thread is reused if it is not
+     * in use by an enclosing request.
      *
      * @param request The servlet request we are processing
      * @param servlet The servlet instance to be wrapped
@@ -284,92 +310,37 @@ final class StandardWrapperValve
         if (servlet == null)
             return (null);
 
-        // Create and initialize a filter chain object
+        // Acquire and initialize a filter chain object
         ApplicationFilterChain filterChain =
-          new ApplicationFilterChain();
+            (ApplicationFilterChain) filterChains.get();
+        if (filterChain == null)
+            filterChain = new ApplicationFilterChain();
+        else
+            filterChains.set(null);
         filterChain.setServlet(servlet);
         StandardWrapper wrapper = (StandardWrapper) getContainer();
         filterChain.setSupport(wrapper.getInstanceSupport());
 
-        // Acquire the filter mappings for this Context
-        StandardContext context = (StandardContext) wrapper.getParent();
-        FilterMap filterMaps[] = context.findFilterMaps();
-
-        // If there are no filter mappings, we are done
-        if ((filterMaps == null) || (filterMaps.length == 0))
-            return (filterChain);
-//        if (debug >= 1)
-//            log("createFilterChain:  Processing " + filterMaps.length +
-//                " filter map entries");
-
         // Acquire the information we will need to match filter mappings
-        String requestPath = null;
+        String requestURI = null;
+        int off = 0;
         if (request instanceof HttpRequest) {
             HttpServletRequest hreq =
                 (HttpServletRequest) request.getRequest();
             String contextPath = hreq.getContextPath();
             if (contextPath == null)
                 contextPath = "";
-            String requestURI = ((HttpRequest) request).getDecodedRequestURI();
+            requestURI = ((HttpRequest) request).getDecodedRequestURI();
             if (requestURI.length() >= contextPath.length())
-                requestPath = requestURI.substring(contextPath.length());
-        }
-        String servletName = wrapper.getName();
-//        if (debug >= 1) {
-//            log(" requestPath=" + requestPath);
-//            log(" servletName=" + servletName);
-//        }
-        int n = 0;
-
-        // Add the relevant path-mapped filters to this filter chain
-        for (int i = 0; i < filterMaps.length; i++) {
-//            if (debug >= 2)
-//                log(" Checking path-mapped filter '" +
-//                    filterMaps[i] + "'");
-            if (!matchFiltersURL(filterMaps[i], requestPath))
-                continue;
-            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
-                context.findFilterConfig(filterMaps[i].getFilterName());
-            if (filterConfig == null) {
-//                if (debug >= 2)
-//                    log(" Missing path-mapped filter '" +
-//                        filterMaps[i] + "'");
-                ;       // FIXME - log configuration problem
-                continue;
-            }
-//            if (debug >= 2)
-//                log(" Adding path-mapped filter '" +
-//                    filterConfig.getFilterName() + "'");
-            filterChain.addFilter(filterConfig);
-            n++;
-        }
-
-        // Add filters that match on servlet name second
-        for (int i = 0; i < filterMaps.length; i++) {
-//            if (debug >= 2)
-//                log(" Checking servlet-mapped filter '" +
-//                    filterMaps[i] + "'");
-            if (!matchFiltersServlet(filterMaps[i], servletName))
-                continue;
-            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
-                context.findFilterConfig(filterMaps[i].getFilterName());
-            if (filterConfig == null) {
-//                if (debug >= 2)
-//                    log(" Missing servlet-mapped filter '" +
-//                        filterMaps[i] + "'");
-                ;       // FIXME - log configuration problem
-                continue;
-            }
-//            if (debug >= 2)
-//                log(" Adding servlet-mapped filter '" +
-//                     filterMaps[i] + "'");
-            filterChain.addFilter(filterConfig);
-            n++;
+                off = contextPath.length();
+            else
+                requestURI = null;
         }
 
-        // Return the completed filter chain
-//        if (debug >= 2)
-//            log(" Returning chain with " + n + " filters");
+        // Add the filters mapped to the request path and to the servlet
+        StandardContext context = (StandardContext) wrapper.getParent();
+        filterChain.setFilters(context.getFilterMappingIndex().findFilters
+                               (requestURI, off, wrapper.getName()));
         return (filterChain);
 
     }
@@ -451,85 +422,4 @@ final class StandardWrapperValve
     }
 
 
-    /**
-     * Return <code>true</code> if the specified servlet name matches
-     * the requirements of the specified filter mapping; otherwise
-     * return <code>false</code>.
-     *
-     * @param filterMap Filter mapping being checked
-     * @param servletName Servlet name being checked
-     */
-    private boolean matchFiltersServlet(FilterMap filterMap,
-                                        String servletName) {
-
-//      if (debug >= 3)
-//          log("  Matching servlet name '" + servletName +
-//              "' against mapping " + filterMap);
-
-        if (servletName == null)
-            return (false);
-        else
-            return (servletName.equals(filterMap.getServletName()));
-
-    }
-
-
-    /**
-     * Return <code>true</code> if the context-relative request path
-     * matches the requirements of the specified filter mapping;
-     * otherwise, return <code>null</code>.
-     *
-     * @param filterMap Filter mapping being checked
-     * @param requestPath Context-relative request path of this request
-     */
-    private boolean matchFiltersURL(FilterMap filterMap,
-                                    String requestPath) {
-
-//      if (debug >= 3)
-//          log("  Matching request path '" + requestPath +
-//              "' against mapping " + filterMap);
-
-        if (requestPath == null)
-            return (false);
-
-        // Match on context relative request path
-        String testPath = filterMap.getURLPattern();
-        if (testPath == null)
-            return (false);
-
-        // Case 1 - Exact Match
-        if (testPath.equals(requestPath))
-            return (true);
-
-        // Case 2 - Path Match ("/.../*")
-        if (testPath.equals("/*"))
-            return (true);      // Optimize a common case
-        if (testPath.endsWith("/*")) {
-            String comparePath = requestPath;
-            while (true) {
-                if (testPath.equals(comparePath + "/*"))
-                    return (true);
-                int slash = comparePath.lastIndexOf('/');
-                if (slash < 0)
-                    break;
-                comparePath = comparePath.substring(0, slash);
-            }
-            return (false);
-        }
-
-        // Case 3 - Extension Match
-        if (testPath.startsWith("*.")) {
-            int slash = requestPath.lastIndexOf('/');
-            int period = requestPath.lastIndexOf('.');
-            if ((slash >= 0) && (period > slash))
-                return (testPath.equals("*." +
-                                        requestPath.substring(period + 1)));
-        }
-
-        // Case 4 - "Default" Match
-        return (false); // NOTE - Not relevant for selecting filters
-
-    }
-
-
 }
@@ -0,0 +1,243 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+
+package org.apache.catalina.loader;
+
+
+import java.util.HashMap;
+
+
+/**
+ * Index of the directories of the sources (repositories or JAR files) of a
+ * <code>WebappClassLoader</code>, used to probe only the sources which may
+ * contain a given resource instead of each source in turn.  Every entry of
+ * a source is recorded under the directory holding it, so the sources which
+ * may contain a path are those which have an entry in its directory.  All
+ * the sources are returned for a path which is not in normal form, as a
+ * repository backed by a file system may still resolve it.
+ * <p>
+ * The index is built while the sources are added to the class loader,
+ * before it is started, and only read afterwards.
+ */
+
+final class PackageIndex {
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * All the sources, in the order they were added.
+     */
+    private int sources[] = new int[0];
+
+
+    /**
+     * The sources having entries in each directory, in the order they were
+     * added, keyed by directory.
+     */
+    private HashMap directories = new HashMap();
+
+
+    /**
+     * The sources which could not be indexed, and may contain any path.
+     */
+    private int unindexed[] = new int[0];
+
+
+    // --------------------------------------------------------- Package Methods
+
+
+    /**
+     * Record an entry of a source.  The entries of a source must be added
+     * after those of the sources added before it.
+     *
+     * @param name The name of the entry, relative to the source
+     * @param source The index of the source
+     */
+    void add(String name, int source) {
+
+        if ((sources.length == 0) || (sources[sources.length - 1] != source))
+            sources = append(sources, source);
+
+        String directory = directory(name);
+        int current[] = (int[]) directories.get(directory);
+        if (current == null) {
+            directories.put(directory, new int[] { source });
+        } else if (current[current.length - 1] != source) {
+            directories.put(directory, append(current, source));
+        }
+
+    }
+
+
+    /**
+     * Record a source whose entries could not be listed, which must then be
+     * probed for any path.
+     *
+     * @param source The index of the source
+     */
+    void addUnindexed(int source) {
+
+        sources = append(sources, source);
+        unindexed = append(unindexed, source);
+
+    }
+
+
+    /**
+     * Remove all the sources.
+     */
+    void clear() {
+
+        directories.clear();
+        sources = new int[0];
+        unindexed = new int[0];
+
+    }
+
+
+    /**
+     * Return the sources which may contain the specified path, in the order
+     * they were added.  The returned array must not be modified.
+     *
+     * @param path The path, relative to the sources
+     */
+    int[] find(String path) {
+
+        if (!isNormal(path))
+            return (sources);
+        int indexed[] = (int[]) directories.get(directory(path));
+        if (unindexed.length == 0)
+            return ((indexed == null) ? unindexed : indexed);
+        if (indexed == null)
+            return (unindexed);
+
+        // Merge the two sorted lists
+        int results[] = new int[indexed.length + unindexed.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while ((i < indexed.length) || (j < unindexed.length)) {
+            if ((j == unindexed.length)
+                || ((i < indexed.length) && (indexed[i] < unindexed[j])))
+                results[k++] = indexed[i++];
+            else
+                results[k++] = unindexed[j++];
+        }
+        return (results);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return a copy of the specified array with a value appended.
+     */
+    private static int[] append(int values[], int value) {
+
+        int results[] = new int[values.length + 1];
+        System.arraycopy(values, 0, results, 0, values.length);
+        results[values.length] = value;
+        return (results);
+
+    }
+
+
+    /**
+     * Return the directory holding the specified entry, including the
+     * trailing "/", or an empty string for the root.  A directory entry,
+     * which may end with a "/", is held by its parent directory, as a JAR
+     * file also finds it without the trailing "/".
+     *
+     * @param name The name of the entry
+     */
+    private static String directory(String name) {
+
+        int end = name.length();
+        if ((end > 0) && (name.charAt(end - 1) == '/'))
+            end--;
+        int slash = name.lastIndexOf('/', end - 1);
+        return ((slash < 0) ? "" : name.substring(0, slash + 1));
+
+    }
+
+
+    /**
+     * Is the specified path in normal form, that is non empty, relative,
+     * without empty, "." or ".." segments, and without backslashes?
+     *
+     * @param path The path
+     */
+    private static boolean isNormal(String path) {
+
+        if ((path.length() == 0) || path.startsWith("/")
+            || (path.indexOf('\\') >= 0) || (path.indexOf("//") >= 0))
+            return (false);
+        String segments = "/" + path + "/";
+        return ((segments.indexOf("/./") < 0)
+                && (segments.indexOf("/../") < 0));
+
+    }
+
+
+}
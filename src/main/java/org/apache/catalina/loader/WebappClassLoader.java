@@ -84,12 +84,15 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.jar.JarFile;
 import java.util.jar.JarEntry;
 import java.util.jar.Manifest;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 
+import javax.naming.Binding;
 import javax.naming.directory.DirContext;
 import javax.naming.NamingException;
 import javax.naming.NamingEnumeration;
@@ -131,7 +134,10 @@ import org.apache.naming.resources.Resource;
  * <p>
  * <strong>IMPLEMENTATION NOTE</strong> - Local repositories are searched in
  * the order they are added via the initial constructor and/or any subsequent
- * calls to <code>addRepository()</code> or <code>addJar()</code>.
+ * calls to <code>addRepository()</code> or <code>addJar()</code>.  The
+ * directories of each local repository and JAR are indexed as it is added,
+ * so that a resource is only looked up in the repositories and JARs having
+ * entries in its directory.
  * <p>
  * <strong>IMPLEMENTATION NOTE</strong> - No check for sealing violations or
  * security is made unless a security manager is present.
@@ -162,6 +168,22 @@ public class WebappClassLoader
     }
 
 
+    /**
+     * A resource checked for modifications, with its last modified date.
+     */
+    private static final class TrackedResource {
+
+        private String path;
+        private long lastModified;
+
+        TrackedResource(String path, long lastModified) {
+            this.path = path;
+            this.lastModified = lastModified;
+        }
+
+    }
+
+
     // ------------------------------------------------------- Static Variables
 
 
@@ -253,13 +275,13 @@ public class WebappClassLoader
      * The cache of ResourceEntry for classes and resources we have loaded,
      * keyed by resource name.
      */
-    protected HashMap resourceEntries = new HashMap();
+    protected ConcurrentHashMap resourceEntries = new ConcurrentHashMap();
 
 
     /**
      * The list of not found resources.
      */
-    protected HashMap notFoundResources = new HashMap();
+    protected ConcurrentHashMap notFoundResources = new ConcurrentHashMap();
 
 
     /**
@@ -322,17 +344,26 @@ public class WebappClassLoader
 
 
     /**
-     * The list of JARs last modified dates, in the order they should be
-     * searched for locally loaded classes or resources.
+     * The resources which should be checked when checking for
+     * modifications, with their last modified dates.  Resources are only
+     * ever appended, so that loading a class does not copy the list.
+     */
+    private ConcurrentLinkedQueue trackedResources =
+        new ConcurrentLinkedQueue();
+
+
+    /**
+     * The index of the directories of the local repositories, giving the
+     * repositories which may contain a resource.
      */
-    protected long[] lastModifiedDates = new long[0];
+    private PackageIndex repositoryIndex = new PackageIndex();
 
 
     /**
-     * The list of resources which should be checked when checking for
-     * modifications.
+     * The index of the directories of the JARs, giving the JARs which may
+     * contain a resource.
      */
-    protected String[] paths = new String[0];
+    private PackageIndex jarIndex = new PackageIndex();
 
 
     /**
@@ -377,9 +408,10 @@ public class WebappClassLoader
 
 
     /**
-     * Has this component been started?
+     * Has this component been started?  The indexes of the repositories
+     * and JARs are built before the class loader is started.
      */
-    protected boolean started = false;
+    protected volatile boolean started = false;
 
 
     /**
@@ -595,6 +627,14 @@ public class WebappClassLoader
         result2[files.length] = file;
         files = result2;
 
+        // Index the directories of the repository
+        try {
+            indexRepository(repository, "", repositories.length - 1);
+        } catch (Exception e) {
+            // Probe the repository for every resource
+            repositoryIndex.addUnindexed(repositories.length - 1);
+        }
+
     }
 
 
@@ -635,20 +675,7 @@ public class WebappClassLoader
             long lastModified =
                 ((ResourceAttributes) resources.getAttributes(jar))
                 .getLastModified();
-
-            String[] result = new String[paths.length + 1];
-            for (i = 0; i < paths.length; i++) {
-                result[i] = paths[i];
-            }
-            result[paths.length] = jar;
-            paths = result;
-
-            long[] result3 = new long[lastModifiedDates.length + 1];
-            for (i = 0; i < lastModifiedDates.length; i++) {
-                result3[i] = lastModifiedDates[i];
-            }
-            result3[lastModifiedDates.length] = lastModified;
-            lastModifiedDates = result3;
+            trackedResources.add(new TrackedResource(jar, lastModified));
 
         } catch (NamingException e) {
             // Ignore
@@ -659,6 +686,13 @@ public class WebappClassLoader
         if (!validateJarFile(file))
             return;
 
+        // Index the directories of the JAR
+        Enumeration entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry jarEntry = (JarEntry) entries.nextElement();
+            jarIndex.add(jarEntry.getName(), jarFiles.length);
+        }
+
         JarFile[] result2 = new JarFile[jarFiles.length + 1];
         for (i = 0; i < jarFiles.length; i++) {
             result2[i] = jarFiles[i];
@@ -782,34 +816,29 @@ public class WebappClassLoader
             log("modified()");
 
         // Checking for modified loaded resources
-        int length = paths.length;
-
-        // A rare race condition can occur in the updates of the two arrays
-        // It's totally ok if the latest class added is not checked (it will
-        // be checked the next time
-        int length2 = lastModifiedDates.length;
-        if (length > length2)
-            length = length2;
-
-        for (int i = 0; i < length; i++) {
+        // It's totally ok if a class added while iterating is not checked
+        // (it will be checked the next time)
+        Iterator tracked = trackedResources.iterator();
+        while (tracked.hasNext()) {
+            TrackedResource resource = (TrackedResource) tracked.next();
             try {
                 long lastModified =
-                    ((ResourceAttributes) resources.getAttributes(paths[i]))
-                    .getLastModified();
-                if (lastModified != lastModifiedDates[i]) {
-                    log("  Resource '" + paths[i]
+                    ((ResourceAttributes) resources.getAttributes
+                     (resource.path)).getLastModified();
+                if (lastModified != resource.lastModified) {
+                    log("  Resource '" + resource.path
                         + "' was modified; Date is now: "
                         + new java.util.Date(lastModified) + " Was: "
-                        + new java.util.Date(lastModifiedDates[i]));
+                        + new java.util.Date(resource.lastModified));
                     return (true);
                 }
             } catch (NamingException e) {
-                log("    Resource '" + paths[i] + "' is missing");
+                log("    Resource '" + resource.path + "' is missing");
                 return (true);
             }
         }
 
-        length = jarNames.length;
+        int length = jarNames.length;
 
         // Check if JARs have been added or removed
         if (getJarPath() != null) {
@@ -1046,13 +1075,13 @@ public class WebappClassLoader
 
         Vector result = new Vector();
 
-        int jarFilesLength = jarFiles.length;
-        int repositoriesLength = repositories.length;
+        int[] candidates = repositoryIndex.find(name);
 
         int i;
 
         // Looking at the repositories
-        for (i = 0; i < repositoriesLength; i++) {
+        for (int k = 0; k < candidates.length; k++) {
+            i = candidates[k];
             try {
                 String fullPath = repositories[i] + name;
                 resources.lookup(fullPath);
@@ -1067,8 +1096,11 @@ public class WebappClassLoader
             }
         }
 
+        candidates = jarIndex.find(name);
+
         // Looking at the JAR files
-        for (i = 0; i < jarFilesLength; i++) {
+        for (int k = 0; k < candidates.length; k++) {
+            i = candidates[k];
             JarEntry jarEntry = jarFiles[i].getJarEntry(name);
             if (jarEntry != null) {
                 try {
@@ -1552,14 +1584,15 @@ public class WebappClassLoader
 
         notFoundResources.clear();
         resourceEntries.clear();
+        repositoryIndex.clear();
+        jarIndex.clear();
         repositories = new String[0];
         files = new File[0];
         jarFiles = new JarFile[0];
         jarRealFiles = new File[0];
         jarPath = null;
         jarNames = new String[0];
-        lastModifiedDates = new long[0];
-        paths = new String[0];
+        trackedResources.clear();
         hasExternalRepositories = false;
 
         required.clear();
@@ -1692,14 +1725,14 @@ public class WebappClassLoader
         int contentLength = -1;
         InputStream binaryStream = null;
 
-        int jarFilesLength = jarFiles.length;
-        int repositoriesLength = repositories.length;
+        int[] candidates = repositoryIndex.find(path);
 
         int i;
 
         Resource resource = null;
 
-        for (i = 0; (entry == null) && (i < repositoriesLength); i++) {
+        for (int k = 0; (entry == null) && (k < candidates.length); k++) {
+            i = candidates[k];
             try {
 
                 String fullPath = repositories[i] + path;
@@ -1733,27 +1766,8 @@ public class WebappClassLoader
                     }
 
                     // Register the full path for modification checking
-                    // Note: Only syncing on a 'constant' object is needed
-                    synchronized (allPermission) {
-
-                        int j;
-
-                        long[] result2 =
-                            new long[lastModifiedDates.length + 1];
-                        for (j = 0; j < lastModifiedDates.length; j++) {
-                            result2[j] = lastModifiedDates[j];
-                        }
-                        result2[lastModifiedDates.length] = entry.lastModified;
-                        lastModifiedDates = result2;
-
-                        String[] result = new String[paths.length + 1];
-                        for (j = 0; j < paths.length; j++) {
-                            result[j] = paths[j];
-                        }
-                        result[paths.length] = fullPath;
-                        paths = result;
-
-                    }
+                    trackedResources.add
+                        (new TrackedResource(fullPath, entry.lastModified));
 
                 }
 
@@ -1766,7 +1780,11 @@ public class WebappClassLoader
 
         JarEntry jarEntry = null;
 
-        for (i = 0; (entry == null) && (i < jarFilesLength); i++) {
+        candidates = jarIndex.find(path);
+
+        for (int k = 0; (entry == null) && (k < candidates.length); k++) {
+
+            i = candidates[k];
 
             jarEntry = jarFiles[i].getJarEntry(path);
 
@@ -1793,9 +1811,7 @@ public class WebappClassLoader
         }
 
         if (entry == null) {
-            synchronized (notFoundResources) {
-                notFoundResources.put(name, name);
-            }
+            notFoundResources.put(name, name);
             return null;
         }
 
@@ -1832,17 +1848,13 @@ public class WebappClassLoader
         }
 
         // Add the entry in the local resource repository
-        synchronized (resourceEntries) {
-            // Ensures that all the threads which may be in a race to load
-            // a particular class all end up with the same ResourceEntry
-            // instance
-            ResourceEntry entry2 = (ResourceEntry) resourceEntries.get(name);
-            if (entry2 == null) {
-                resourceEntries.put(name, entry);
-            } else {
-                entry = entry2;
-            }
-        }
+        // Ensures that all the threads which may be in a race to load
+        // a particular class all end up with the same ResourceEntry
+        // instance
+        ResourceEntry entry2 =
+            (ResourceEntry) resourceEntries.putIfAbsent(name, entry);
+        if (entry2 != null)
+            entry = entry2;
 
         return entry;
 
@@ -1979,6 +1991,34 @@ public class WebappClassLoader
     }
 
 
+    /**
+     * Record the entries of the specified directory of a repository, and of
+     * its subdirectories, in the repository index.  Directories created in
+     * the repository afterwards are only seen once the class loader has been
+     * restarted.
+     *
+     * @param repository The path of the repository
+     * @param prefix The path of the directory, relative to the repository
+     * @param index The index of the repository
+     *
+     * @exception NamingException if the directory cannot be listed
+     */
+    private void indexRepository(String repository, String prefix,
+                                 int index)
+        throws NamingException {
+
+        NamingEnumeration enum1 = resources.listBindings(repository + prefix);
+        while (enum1.hasMoreElements()) {
+            Binding binding = (Binding) enum1.nextElement();
+            String name = prefix + binding.getName();
+            repositoryIndex.add(name, index);
+            if (binding.getObject() instanceof DirContext)
+                indexRepository(repository, name + "/", index);
+        }
+
+    }
+
+
     /**
      * Check the specified JAR file, and return <code>true</code> if it does
      * not contain any of the trigger classes.
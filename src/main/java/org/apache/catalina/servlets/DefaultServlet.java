@@ -77,6 +77,8 @@ import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.sql.Timestamp;
 import java.util.Date;
 import java.util.Enumeration;
@@ -84,6 +86,7 @@ import java.util.Vector;
 import java.util.StringTokenizer;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.security.MessageDigest;
@@ -99,9 +102,11 @@ import javax.naming.NamingEnumeration;
 import javax.naming.NameClassPair;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.Attributes;
+import org.apache.naming.resources.ProxyDirContext;
 import org.apache.naming.resources.Resource;
 import org.apache.naming.resources.ResourceAttributes;
 import org.apache.catalina.Globals;
+import org.apache.catalina.connector.ResponseStream;
 import org.apache.catalina.util.FastHttpDateFormat;
 import org.apache.catalina.util.MD5Encoder;
 import org.apache.catalina.util.ServerInfo;
@@ -149,6 +154,28 @@ public class DefaultServlet
     protected boolean readOnly = true;
 
 
+    /**
+     * Should the content of file backed resources be transferred directly
+     * from the file to the socket, when the connector supports it?
+     */
+    protected boolean sendfile = true;
+
+
+    /**
+     * Should the precompressed siblings of the resources (with a ".br" or
+     * ".gz" extension) be served to the clients which accept their
+     * encoding?
+     */
+    protected boolean precompressed = false;
+
+
+    /**
+     * Should the content of the resources cached in memory be compressed
+     * with gzip, once, for the clients which accept it?
+     */
+    protected boolean gzip = false;
+
+
     /**
      * The output buffer size to use when serving resources.
      */
@@ -215,6 +242,27 @@ public class DefaultServlet
     protected static final String mimeSeparation = "CATALINA_MIME_BOUNDARY";
 
 
+    /**
+     * The content codings of the precompressed siblings of a resource, in
+     * order of preference, along with the extension of each sibling.
+     */
+    protected static final String precompressedEncodings[][] = {
+        { "br", ".br" },
+        { "gzip", ".gz" }
+    };
+
+
+    /**
+     * The content types, besides text, of the resources which are served
+     * compressed.
+     */
+    protected static final String compressibleTypes[] = {
+        "application/javascript", "application/x-javascript",
+        "application/json", "application/xml", "application/xhtml+xml",
+        "image/svg+xml"
+    };
+
+
     /**
      * JNDI resources name.
      */
@@ -285,6 +333,25 @@ public class DefaultServlet
         } catch (Throwable t) {
             ;
         }
+        try {
+            value = getServletConfig().getInitParameter("sendfile");
+            if (value != null)
+                sendfile = (new Boolean(value)).booleanValue();
+        } catch (Throwable t) {
+            ;
+        }
+        try {
+            value = getServletConfig().getInitParameter("precompressed");
+            precompressed = (new Boolean(value)).booleanValue();
+        } catch (Throwable t) {
+            ;
+        }
+        try {
+            value = getServletConfig().getInitParameter("gzip");
+            gzip = (new Boolean(value)).booleanValue();
+        } catch (Throwable t) {
+            ;
+        }
 
         // Sanity check on the specified buffer sizes
         if (input < 256)
@@ -781,6 +848,83 @@ public class DefaultServlet
     }
 
 
+    /**
+     * Select the variant of a resource to serve, according to the content
+     * codings accepted by the client: a precompressed sibling of the
+     * resource, the content of the resource compressed once and cached next
+     * to it, or the resource itself.  A Vary header is added if the
+     * resource has a compressed variant.
+     * <p>
+     * The siblings which do not exist are remembered next to the resource
+     * while it stays cached, so a sibling added later may not be noticed
+     * until the resource itself is modified or evicted from the cache.
+     *
+     * @param request The servlet request we are processing
+     * @param response The servlet response we are creating
+     * @param resourceInfo File object
+     * @return the variant to serve, whose encoding is set if it is not the
+     * resource itself
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected ResourceInfo selectVariant(HttpServletRequest request,
+                                         HttpServletResponse response,
+                                         ResourceInfo resourceInfo)
+        throws IOException {
+
+        if ((!precompressed && !gzip) || (resourceInfo.file == null))
+            return (resourceInfo);
+        if (!isCompressible
+            (getServletContext().getMimeType(resourceInfo.path)))
+            return (resourceInfo);
+
+        Resource file = resourceInfo.file;
+        ResourceInfo variant = null;
+        boolean varies = false;
+
+        // Look for a precompressed sibling of the resource
+        for (int i = 0; precompressed && (variant == null)
+                 && (i < precompressedEncodings.length); i++) {
+            String siblingPath =
+                resourceInfo.path + precompressedEncodings[i][1];
+            if (Boolean.FALSE.equals(file.getVariant(siblingPath)))
+                continue;
+            ResourceInfo sibling =
+                new ResourceInfo(siblingPath, resourceInfo.resources);
+            if (!sibling.exists || sibling.collection) {
+                cacheVariant(resourceInfo, siblingPath, Boolean.FALSE);
+                continue;
+            }
+            varies = true;
+            if (isAccepted(request, precompressedEncodings[i][0])) {
+                sibling.encoding = precompressedEncodings[i][0];
+                variant = sibling;
+            }
+        }
+
+        // Compress the content cached in memory, once
+        byte[] content = file.getContent();
+        if (gzip && (variant == null) && (content != null)) {
+            varies = true;
+            if (isAccepted(request, "gzip")) {
+                byte[] compressed = (byte[]) file.getVariant("gzip");
+                if (compressed == null) {
+                    compressed = compress(content);
+                    cacheVariant(resourceInfo, "gzip", compressed);
+                }
+                if (compressed.length < content.length)
+                    variant = new ResourceInfo(resourceInfo, "gzip",
+                                               compressed);
+            }
+        }
+
+        if (varies)
+            response.addHeader("Vary", "Accept-Encoding");
+        return ((variant == null) ? resourceInfo : variant);
+
+    }
+
+
     /**
      * Return a context-relative path, beginning with a "/", that represents
      * the canonical version of the specified path after ".." and "." elements
@@ -958,19 +1102,26 @@ public class DefaultServlet
 
         } else {
 
-            // Checking If headers
+            // Select the encoding of the content, unless included (the
+            // headers of an included response cannot be set)
             boolean included =
                 (request.getAttribute(Globals.CONTEXT_PATH_ATTR) != null);
+            if (!included)
+                resourceInfo = selectVariant(request, response, resourceInfo);
+
+            // Checking If headers
             if (!included 
                 && !checkIfHeaders(request, response, resourceInfo)) {
                 return;
             }
 
+            if (resourceInfo.encoding != null)
+                response.setHeader("Content-Encoding", resourceInfo.encoding);
+
         }
 
         // Find content type.
-        String contentType =
-            getServletContext().getMimeType(resourceInfo.path);
+        String contentType = getServletContext().getMimeType(path);
 
         Vector ranges = null;
 
@@ -1013,9 +1164,10 @@ public class DefaultServlet
                 ostream = response.getOutputStream();
             } catch (IllegalStateException e) {
                 // If it fails, we try to get a Writer instead if we're
-                // trying to serve a text file
-                if ( (contentType == null)
-                     || (contentType.startsWith("text")) ) {
+                // trying to serve a text file, which is not compressed
+                if ( (resourceInfo.encoding == null)
+                     && ((contentType == null)
+                         || (contentType.startsWith("text"))) ) {
                     writer = response.getWriter();
                 } else {
                     throw e;
@@ -1712,6 +1864,132 @@ public class DefaultServlet
     }
 
 
+    /**
+     * Is the content of the specified type worth compressing?
+     *
+     * @param contentType The content type, or <code>null</code>
+     */
+    private boolean isCompressible(String contentType) {
+
+        if (contentType == null)
+            return (false);
+        int semicolon = contentType.indexOf(';');
+        if (semicolon >= 0)
+            contentType = contentType.substring(0, semicolon).trim();
+        if (contentType.startsWith("text/"))
+            return (true);
+        for (int i = 0; i < compressibleTypes.length; i++) {
+            if (compressibleTypes[i].equals(contentType))
+                return (true);
+        }
+        return (false);
+
+    }
+
+
+    /**
+     * Does the client accept the specified content coding?  An explicit
+     * quality value of zero refuses the coding, and a coding which is not
+     * listed is accepted if "*" is.
+     *
+     * @param request The servlet request we are processing
+     * @param coding The content coding
+     */
+    private boolean isAccepted(HttpServletRequest request, String coding) {
+
+        boolean accepted = false;
+        Enumeration values = request.getHeaders("Accept-Encoding");
+        while ((values != null) && values.hasMoreElements()) {
+            StringTokenizer tokens =
+                new StringTokenizer((String) values.nextElement(), ",");
+            while (tokens.hasMoreTokens()) {
+                String token = tokens.nextToken().trim();
+                double quality = 1.0;
+                int semicolon = token.indexOf(';');
+                if (semicolon >= 0) {
+                    String parameter = token.substring(semicolon + 1).trim();
+                    token = token.substring(0, semicolon).trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            quality = Double.parseDouble
+                                (parameter.substring(2).trim());
+                        } catch (NumberFormatException e) {
+                            quality = 0.0;
+                        }
+                    }
+                }
+                if (token.equalsIgnoreCase(coding))
+                    return (quality > 0.0);
+                if (token.equals("*"))
+                    accepted = (quality > 0.0);
+            }
+        }
+        return (accepted);
+
+    }
+
+
+    /**
+     * Compress the specified content with gzip.
+     *
+     * @param content The content to compress
+     * @return the compressed content
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    private byte[] compress(byte[] content)
+        throws IOException {
+
+        ByteArrayOutputStream buffer =
+            new ByteArrayOutputStream(content.length / 2 + 32);
+        GZIPOutputStream out = new GZIPOutputStream(buffer);
+        out.write(content);
+        out.close();
+        return (buffer.toByteArray());
+
+    }
+
+
+    /**
+     * Cache a variant next to the specified resource, if the resources of
+     * the web application are cached.
+     *
+     * @param resourceInfo The ResourceInfo object
+     * @param name The name of the variant
+     * @param variant The variant
+     */
+    private void cacheVariant(ResourceInfo resourceInfo, String name,
+                              Object variant) {
+
+        if (resourceInfo.resources instanceof ProxyDirContext)
+            ((ProxyDirContext) resourceInfo.resources).cacheVariant
+                (resourceInfo.path, resourceInfo.file, name, variant);
+
+    }
+
+
+    /**
+     * Open a channel on the file backing the specified resource, if its
+     * content can be transferred directly to the socket through the
+     * specified output stream.
+     *
+     * @param resourceInfo The ResourceInfo object
+     * @param ostream The output stream to write to
+     * @return the channel, which the caller must close, or
+     *  <code>null</code> if the content must be copied
+     * @exception IOException if an input/output error occurs
+     */
+    private FileChannel openChannel(ResourceInfo resourceInfo,
+                                    ServletOutputStream ostream)
+        throws IOException {
+
+        if (!sendfile || !(ostream instanceof ResponseStream))
+            return (null);
+        return (resourceInfo.openChannel());
+
+    }
+
+
     /**
      * Copy the contents of the specified input stream to the specified
      * output stream, and ensure that both streams are closed before returning
@@ -1725,6 +2003,28 @@ public class DefaultServlet
     private void copy(ResourceInfo resourceInfo, ServletOutputStream ostream)
         throws IOException {
 
+        // Send content held outside of the heap without copying it
+        ByteBuffer content = resourceInfo.getMappedContent();
+        if ((content != null) && (ostream instanceof ResponseStream)) {
+            ((ResponseStream) ostream).write(content);
+            return;
+        }
+
+        // Transfer the content of a file directly to the socket
+        FileChannel channel = openChannel(resourceInfo, ostream);
+        if (channel != null) {
+            try {
+                ((ResponseStream) ostream).write(channel, 0, channel.size());
+            } finally {
+                try {
+                    channel.close();
+                } catch (Throwable t) {
+                    ;
+                }
+            }
+            return;
+        }
+
         IOException exception = null;
 
         // FIXME : i18n ?
@@ -1799,6 +2099,32 @@ public class DefaultServlet
                       Range range)
         throws IOException {
 
+        // Send content held outside of the heap without copying it
+        ByteBuffer content = resourceInfo.getMappedContent();
+        if ((content != null) && (ostream instanceof ResponseStream)
+            && (range.end < content.limit())) {
+            content.position((int) range.start);
+            content.limit((int) range.end + 1);
+            ((ResponseStream) ostream).write(content);
+            return;
+        }
+
+        // Transfer the content of a file directly to the socket
+        FileChannel channel = openChannel(resourceInfo, ostream);
+        if (channel != null) {
+            try {
+                ((ResponseStream) ostream).write
+                    (channel, range.start, range.end - range.start + 1);
+            } finally {
+                try {
+                    channel.close();
+                } catch (Throwable t) {
+                    ;
+                }
+            }
+            return;
+        }
+
         IOException exception = null;
 
         InputStream resourceInputStream = resourceInfo.getStream();
@@ -1871,11 +2197,10 @@ public class DefaultServlet
 
         IOException exception = null;
 
-        while ( (exception == null) && (ranges.hasMoreElements()) ) {
+        // Transfer the content of a file directly to the socket
+        FileChannel channel = openChannel(resourceInfo, ostream);
 
-            InputStream resourceInputStream = resourceInfo.getStream();
-            InputStream istream =       // FIXME: internationalization???????
-                new BufferedInputStream(resourceInputStream, input);
+        while ( (exception == null) && (ranges.hasMoreElements()) ) {
 
             Range currentRange = (Range) ranges.nextElement();
 
@@ -1888,6 +2213,21 @@ public class DefaultServlet
                            + currentRange.length);
             ostream.println();
 
+            if (channel != null) {
+                try {
+                    ((ResponseStream) ostream).write
+                        (channel, currentRange.start,
+                         currentRange.end - currentRange.start + 1);
+                } catch (IOException e) {
+                    exception = e;
+                }
+                continue;
+            }
+
+            InputStream resourceInputStream = resourceInfo.getStream();
+            InputStream istream =       // FIXME: internationalization???????
+                new BufferedInputStream(resourceInputStream, input);
+
             // Printing content
             exception = copyRange(istream, ostream, currentRange.start,
                                   currentRange.end);
@@ -1900,6 +2240,14 @@ public class DefaultServlet
 
         }
 
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (Throwable t) {
+                ;
+            }
+        }
+
         ostream.print("--" + mimeSeparation + "--");
 
         // Rethrow any exception that has occurred
@@ -2211,6 +2559,39 @@ public class DefaultServlet
         }
 
 
+        /**
+         * Construct a variant of a resource, whose content is encoded with
+         * the specified content coding.
+         *
+         * @param resourceInfo The resource
+         * @param encoding The content coding
+         * @param content The encoded content
+         */
+        public ResourceInfo(ResourceInfo resourceInfo, String encoding,
+                            byte[] content) {
+            recycle();
+            file = new Resource(content);
+            object = file;
+            attributes = resourceInfo.attributes;
+            path = resourceInfo.path;
+            creationDate = resourceInfo.creationDate;
+            httpDate = resourceInfo.httpDate;
+            date = resourceInfo.date;
+            length = content.length;
+            collection = false;
+            exists = true;
+            resources = resourceInfo.resources;
+            this.encoding = encoding;
+            // The variant is a different entity than the resource
+            String eTag = getETag(resourceInfo);
+            if (eTag.endsWith("\""))
+                weakETag = eTag.substring(0, eTag.length() - 1) + "-"
+                    + encoding + "\"";
+            else
+                weakETag = eTag + "-" + encoding;
+        }
+
+
         public Object object;
         public DirContext directory;
         public Resource file;
@@ -2225,6 +2606,7 @@ public class DefaultServlet
         public String strongETag;
         public boolean exists;
         public DirContext resources;
+        public String encoding;
         protected InputStream is;
 
 
@@ -2243,6 +2625,7 @@ public class DefaultServlet
             strongETag = null;
             exists = false;
             resources = null;
+            encoding = null;
             is = null;
         }
 
@@ -2323,6 +2706,34 @@ public class DefaultServlet
         }
 
 
+        /**
+         * Get the content of the resource held outside of the heap, if any.
+         */
+        public ByteBuffer getMappedContent() {
+            if (is != null)
+                return null;
+            if (file != null)
+                return (file.getMappedContent());
+            else
+                return null;
+        }
+
+
+        /**
+         * Open a channel on the file backing the resource, if its content is
+         * neither cached nor already being read from a stream.
+         */
+        public FileChannel openChannel()
+            throws IOException {
+            if ((is != null) || (file == null))
+                return null;
+            if ((file.getContent() != null)
+                || (file.getMappedContent() != null))
+                return null;
+            return (file.openChannel());
+        }
+
+
         /**
          * Get IS from resource.
          */
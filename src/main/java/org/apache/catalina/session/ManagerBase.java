@@ -70,9 +70,11 @@ import java.beans.PropertyChangeSupport;
 import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.security.SecureRandom;
+import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.catalina.Container;
 import org.apache.catalina.DefaultContext;
 import org.apache.catalina.Engine;
@@ -112,9 +114,17 @@ public abstract class ManagerBase implements Manager {
 
 
     /**
-     * The message digest algorithm to be used when generating session
-     * identifiers.  This must be an algorithm supported by the
+     * The maximum number of recycled Sessions shared by the threads of
+     * this Manager.
+     */
+    protected static final int RECYCLED_SESSIONS = 1024;
+
+
+    /**
+     * The message digest algorithm returned by <code>getDigest()</code>.
+     * This must be an algorithm supported by the
      * <code>java.security.MessageDigest</code> class on your platform.
+     * Session identifiers are no longer digested.
      */
     protected String algorithm = DEFAULT_ALGORITHM;
 
@@ -159,6 +169,20 @@ public abstract class ManagerBase implements Manager {
     protected String entropy = null;
 
 
+    /**
+     * The index of the active sessions by expiration time.
+     */
+    private SessionExpiryIndex expiryIndex =
+        new SessionExpiryIndex(System.currentTimeMillis());
+
+
+    /**
+     * The generator of session identifiers, created when the first
+     * identifier is needed.
+     */
+    volatile SessionIdGenerator generator = null;
+
+
     /**
      * The descriptive information string for this implementation.
      */
@@ -191,17 +215,39 @@ public abstract class ManagerBase implements Manager {
     protected String randomClass = "java.security.SecureRandom";
 
 
+    /**
+     * The number of random number generators constructed so far, mixed into
+     * their seeds so that generators constructed in the same millisecond do
+     * not produce the same sequence.
+     */
+    private AtomicLong randomCount = new AtomicLong();
+
+
+    /**
+     * The encoding of session identifiers, <code>hex</code> or
+     * <code>base64</code>.
+     */
+    protected String sessionIdEncoding = SessionIdGenerator.HEX;
+
+
+    /**
+     * The number of random bytes in a session identifier.
+     */
+    protected int sessionIdLength = SESSION_ID_BYTES;
+
+
     /**
      * The set of previously recycled Sessions for this Manager.
      */
-    protected ArrayList recycled = new ArrayList();
+    SessionPool recycled = new SessionPool(RECYCLED_SESSIONS);
 
 
     /**
      * The set of currently active Sessions for this Manager, keyed by
-     * session identifier.
+     * session identifier.  This is a concurrent map, so lookups never
+     * block and iterating over it does not require a snapshot.
      */
-    protected HashMap sessions = new HashMap();
+    protected ConcurrentHashMap sessions = new ConcurrentHashMap();
 
 
     /**
@@ -463,26 +509,8 @@ public abstract class ManagerBase implements Manager {
         if (this.random == null) {
             synchronized (this) {
                 if (this.random == null) {
-                    // Calculate the new random number generator seed
                     log(sm.getString("managerBase.seeding", randomClass));
-                    long seed = System.currentTimeMillis();
-                    char entropy[] = getEntropy().toCharArray();
-                    for (int i = 0; i < entropy.length; i++) {
-                        long update = ((byte) entropy[i]) << ((i % 8) * 8);
-                        seed ^= update;
-                    }
-                    try {
-                        // Construct and seed a new random number generator
-                        Class clazz = Class.forName(randomClass);
-                        this.random = (Random) clazz.newInstance();
-                        this.random.setSeed(seed);
-                    } catch (Exception e) {
-                        // Fall back to the simple case
-                        log(sm.getString("managerBase.random", randomClass),
-                            e);
-                        this.random = new java.util.Random();
-                        this.random.setSeed(seed);
-                    }
+                    this.random = createRandom();
                     log(sm.getString("managerBase.complete", randomClass));
                 }
             }
@@ -512,25 +540,94 @@ public abstract class ManagerBase implements Manager {
 
         String oldRandomClass = this.randomClass;
         this.randomClass = randomClass;
+        this.generator = null;
         support.firePropertyChange("randomClass", oldRandomClass,
                                    this.randomClass);
 
     }
 
 
+    /**
+     * Return the encoding of session identifiers.
+     */
+    public String getSessionIdEncoding() {
+
+        return (this.sessionIdEncoding);
+
+    }
+
+
+    /**
+     * Set the encoding of session identifiers.  Supported values are
+     * <code>hex</code>, which renders each random byte as two hexadecimal
+     * digits, and <code>base64</code>, which renders each six random bits
+     * as one character that is safe in URLs and cookies.
+     *
+     * @param sessionIdEncoding The new session identifier encoding
+     */
+    public void setSessionIdEncoding(String sessionIdEncoding) {
+
+        if (!SessionIdGenerator.HEX.equals(sessionIdEncoding) &&
+            !SessionIdGenerator.BASE64.equals(sessionIdEncoding))
+            throw new IllegalArgumentException
+                (sm.getString("managerBase.sessionIdEncoding",
+                              sessionIdEncoding));
+        String oldSessionIdEncoding = this.sessionIdEncoding;
+        this.sessionIdEncoding = sessionIdEncoding;
+        this.generator = null;
+        support.firePropertyChange("sessionIdEncoding", oldSessionIdEncoding,
+                                   this.sessionIdEncoding);
+
+    }
+
+
+    /**
+     * Return the number of random bytes in a session identifier.
+     */
+    public int getSessionIdLength() {
+
+        return (this.sessionIdLength);
+
+    }
+
+
+    /**
+     * Set the number of random bytes in a session identifier.
+     *
+     * @param sessionIdLength The new number of random bytes
+     */
+    public void setSessionIdLength(int sessionIdLength) {
+
+        if (sessionIdLength <= 0)
+            throw new IllegalArgumentException
+                (sm.getString("managerBase.sessionIdLength",
+                              new Integer(sessionIdLength)));
+        int oldSessionIdLength = this.sessionIdLength;
+        this.sessionIdLength = sessionIdLength;
+        this.generator = null;
+        support.firePropertyChange("sessionIdLength",
+                                   new Integer(oldSessionIdLength),
+                                   new Integer(this.sessionIdLength));
+
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
     /**
-     * Add this Session to the set of active Sessions for this Manager.
+     * Add this Session to the set of active Sessions for this Manager,
+     * unless another Session is already registered with the same
+     * identifier.
      *
      * @param session Session to be added
      */
     public void add(Session session) {
 
-        synchronized (sessions) {
-            sessions.put(session.getId(), session);
-        }
+        if (sessions.putIfAbsent(session.getId(), session) != null)
+            return;
+        if (session instanceof StandardSession)
+            expiryIndex.schedule((StandardSession) session);
 
     }
 
@@ -560,14 +657,7 @@ public abstract class ManagerBase implements Manager {
     public Session createSession() {
 
         // Recycle or create a Session instance
-        Session session = null;
-        synchronized (recycled) {
-            int size = recycled.size();
-            if (size > 0) {
-                session = (Session) recycled.get(size - 1);
-                recycled.remove(size - 1);
-            }
-        }
+        Session session = recycled.get();
         if (session != null)
             session.setManager(this);
         else
@@ -578,19 +668,14 @@ public abstract class ManagerBase implements Manager {
         session.setValid(true);
         session.setCreationTime(System.currentTimeMillis());
         session.setMaxInactiveInterval(this.maxInactiveInterval);
-        String sessionId = generateSessionId();
         String jvmRoute = getJvmRoute();
-        // @todo Move appending of jvmRoute generateSessionId()???
-        if (jvmRoute != null) {
-            sessionId += '.' + jvmRoute;
-            session.setId(sessionId);
-        }
-        /*
-        synchronized (sessions) {
-            while (sessions.get(sessionId) != null)        // Guarantee uniqueness
-                sessionId = generateSessionId();
-        }
-        */
+        String sessionId = null;
+        do {
+            sessionId = generateSessionId();
+            // @todo Move appending of jvmRoute generateSessionId()???
+            if (jvmRoute != null)
+                sessionId += '.' + jvmRoute;
+        } while (sessions.containsKey(sessionId));      // Guarantee uniqueness
         session.setId(sessionId);
 
         return (session);
@@ -613,10 +698,7 @@ public abstract class ManagerBase implements Manager {
 
         if (id == null)
             return (null);
-        synchronized (sessions) {
-            Session session = (Session) sessions.get(id);
-            return (session);
-        }
+        return ((Session) sessions.get(id));
 
     }
 
@@ -627,12 +709,31 @@ public abstract class ManagerBase implements Manager {
      */
     public Session[] findSessions() {
 
-        Session results[] = null;
-        synchronized (sessions) {
-            results = new Session[sessions.size()];
-            results = (Session[]) sessions.values().toArray(results);
-        }
-        return (results);
+        return ((Session[]) sessions.values().toArray(new Session[0]));
+
+    }
+
+
+    /**
+     * Return the number of active Sessions associated with this Manager.
+     */
+    public int getActiveSessions() {
+
+        return (sessions.size());
+
+    }
+
+
+    /**
+     * Return an Iterator over the active Sessions associated with this
+     * Manager.  The Iterator reflects the state of the set of active
+     * Sessions at some point at or since its creation, and never throws
+     * <code>ConcurrentModificationException</code>, so Sessions may be
+     * added or removed while it is in use.
+     */
+    public Iterator sessions() {
+
+        return (sessions.values().iterator());
 
     }
 
@@ -644,9 +745,7 @@ public abstract class ManagerBase implements Manager {
      */
     public void remove(Session session) {
 
-        synchronized (sessions) {
-            sessions.remove(session.getId());
-        }
+        sessions.remove(session.getId(), session);
 
     }
 
@@ -666,32 +765,40 @@ public abstract class ManagerBase implements Manager {
     // ------------------------------------------------------ Protected Methods
 
 
+    /**
+     * Return the active Sessions which have been idle for longer than their
+     * maximum inactive interval.  Only the Sessions which are due are
+     * examined, so the cost of this method does not depend on the number of
+     * active Sessions.
+     *
+     * @param timeNow The current time in milliseconds
+     */
+    protected Session[] findExpiredSessions(long timeNow) {
+
+        return (expiryIndex.expire(timeNow));
+
+    }
+
+
     /**
      * Generate and return a new session identifier.
      */
-    protected synchronized String generateSessionId() {
-
-        // Generate a byte array containing a session identifier
-        Random random = getRandom();
-        byte bytes[] = new byte[SESSION_ID_BYTES];
-        getRandom().nextBytes(bytes);
-        bytes = getDigest().digest(bytes);
-
-        // Render the result as a String of hexadecimal digits
-        StringBuffer result = new StringBuffer();
-        for (int i = 0; i < bytes.length; i++) {
-            byte b1 = (byte) ((bytes[i] & 0xf0) >> 4);
-            byte b2 = (byte) (bytes[i] & 0x0f);
-            if (b1 < 10)
-                result.append((char) ('0' + b1));
-            else
-                result.append((char) ('A' + (b1 - 10)));
-            if (b2 < 10)
-                result.append((char) ('0' + b2));
-            else
-                result.append((char) ('A' + (b2 - 10)));
-        }
-        return (result.toString());
+    protected String generateSessionId() {
+
+        return (getGenerator().generate());
+
+    }
+
+
+    /**
+     * Construct and seed the random number generators used to generate
+     * session identifiers, so that they need not be constructed while
+     * a request is waiting for a new session.  This is meant to be called
+     * from the background thread of the manager.
+     */
+    protected void refillSessionIds() {
+
+        getGenerator().refill();
 
     }
 
@@ -728,6 +835,111 @@ public abstract class ManagerBase implements Manager {
     // -------------------------------------------------------- Package Methods
 
 
+    /**
+     * Construct and seed a new random number generator of the configured
+     * class.
+     */
+    Random createRandom() {
+
+        // Calculate the new random number generator seed
+        if (debug >= 1)
+            log(sm.getString("managerBase.seeding", randomClass));
+        long seed = System.currentTimeMillis() ^ System.identityHashCode(this)
+            ^ System.nanoTime()
+            ^ (randomCount.incrementAndGet() * 0x9E3779B97F4A7C15L);
+        char entropy[] = getEntropy().toCharArray();
+        for (int i = 0; i < entropy.length; i++) {
+            long update = ((byte) entropy[i]) << ((i % 8) * 8);
+            seed ^= update;
+        }
+        Random random = null;
+        try {
+            // Construct and seed a new random number generator
+            Class clazz = Class.forName(randomClass);
+            random = (Random) clazz.newInstance();
+            // A SecureRandom seeds itself on first use, unless it is given
+            // a seed beforehand, which would then replace its own seeding
+            if (!(random instanceof SecureRandom))
+                random.setSeed(seed);
+        } catch (Exception e) {
+            // Fall back to the simple case
+            log(sm.getString("managerBase.random", randomClass), e);
+            random = new java.util.Random();
+            random.setSeed(seed);
+        }
+        if (debug >= 1)
+            log(sm.getString("managerBase.complete", randomClass));
+        return (random);
+
+    }
+
+
+    /**
+     * Start scheduling the expiration of Sessions, including the Sessions
+     * which are already active.  Managers call this method when they are
+     * started, so that a manager which is never started does not retain the
+     * Sessions it creates.
+     */
+    void startExpiry() {
+
+        expiryIndex.start(System.currentTimeMillis());
+        Iterator sessions = sessions();
+        while (sessions.hasNext()) {
+            Object session = sessions.next();
+            if (session instanceof StandardSession)
+                expiryIndex.schedule((StandardSession) session);
+        }
+
+    }
+
+
+    /**
+     * Stop scheduling the expiration of Sessions, and release the Sessions
+     * held for that purpose.  Managers call this method when they are
+     * stopped.
+     */
+    void stopExpiry() {
+
+        expiryIndex.stop();
+
+    }
+
+
+    /**
+     * Schedule the expiration of the specified Session again, because its
+     * maximum inactive interval has changed.
+     *
+     * @param session The Session to be scheduled
+     */
+    void scheduleExpiry(StandardSession session) {
+
+        expiryIndex.schedule(session);
+
+    }
+
+
+    /**
+     * Return the generator of session identifiers, creating it if
+     * necessary.
+     */
+    SessionIdGenerator getGenerator() {
+
+        SessionIdGenerator generator = this.generator;
+        if (generator == null) {
+            synchronized (this) {
+                generator = this.generator;
+                if (generator == null) {
+                    generator = new SessionIdGenerator
+                        (this, sessionIdLength, sessionIdEncoding);
+                    this.generator = generator;
+                }
+            }
+        }
+        return (generator);
+
+    }
+
+
     /**
      * Log a message on the Logger associated with our Container (if any).
      *
@@ -785,9 +997,7 @@ public abstract class ManagerBase implements Manager {
      */
     void recycle(Session session) {
 
-        synchronized (recycled) {
-            recycled.add(session);
-        }
+        recycled.put(session);
 
     }
 
@@ -67,6 +67,7 @@ package org.apache.catalina.session;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
+import java.util.Iterator;
 import org.apache.catalina.Container;
 import org.apache.catalina.Context;
 import org.apache.catalina.Lifecycle;
@@ -840,6 +841,7 @@ public abstract class PersistentManagerBase
             ((Lifecycle)store).start();
 
         // Start the background reaper thread
+        startExpiry();
         threadStart();
 
     }
@@ -867,14 +869,15 @@ public abstract class PersistentManagerBase
 
         // Stop the background reaper thread
         threadStop();
+        stopExpiry();
 
         if (getStore() != null && saveOnRestart) {
             unload();
         } else {
             // Expire all active sessions
-            Session sessions[] = findSessions();
-            for (int i = 0; i < sessions.length; i++) {
-                StandardSession session = (StandardSession) sessions[i];
+            Iterator sessions = sessions();
+            while (sessions.hasNext()) {
+                StandardSession session = (StandardSession) sessions.next();
                 if (!session.isValid())
                     continue;
                 session.expire();
@@ -886,6 +889,7 @@ public abstract class PersistentManagerBase
 
         // Require a new random number generator if we are restarted
         this.random = null;
+        this.generator = null;
 
     }
 
@@ -952,14 +956,13 @@ public abstract class PersistentManagerBase
             return;
 
         long timeNow = System.currentTimeMillis();
-        Session sessions[] = findSessions();
+        Session sessions[] = findExpiredSessions(timeNow);
 
         for (int i = 0; i < sessions.length; i++) {
             StandardSession session = (StandardSession) sessions[i];
             if (!session.isValid())
                 continue;
-            if (isSessionStale(session, timeNow))
-                session.expire();
+            session.expire();
         }
 
     }
@@ -973,15 +976,15 @@ public abstract class PersistentManagerBase
         if (!isStarted() || maxIdleSwap < 0)
             return;
 
-        Session sessions[] = findSessions();
+        Iterator sessions = sessions();
         long timeNow = System.currentTimeMillis();
 
         // Swap out all sessions idle longer than maxIdleSwap
         // FIXME: What's preventing us from mangling a session during
         // a request?
         if (maxIdleSwap >= 0) {
-            for (int i = 0; i < sessions.length; i++) {
-                StandardSession session = (StandardSession) sessions[i];
+            while (sessions.hasNext()) {
+                StandardSession session = (StandardSession) sessions.next();
                 if (!session.isValid())
                     continue;
                 int timeIdle = // Truncate, do not round up
@@ -1011,30 +1014,32 @@ public abstract class PersistentManagerBase
         if (!isStarted() || getMaxActiveSessions() < 0)
             return;
 
-        Session sessions[] = findSessions();
+        int active = getActiveSessions();
 
         // FIXME: Smarter algorithm (LRU)
-        if (getMaxActiveSessions() >= sessions.length)
+        if (getMaxActiveSessions() >= active)
             return;
 
         if(debug > 0)
             log(sm.getString
                 ("persistentManager.tooManyActive",
-                 new Integer(sessions.length)));
+                 new Integer(active)));
 
-        int toswap = sessions.length - getMaxActiveSessions();
+        int toswap = active - getMaxActiveSessions();
         long timeNow = System.currentTimeMillis();
 
-        for (int i = 0; i < sessions.length && toswap > 0; i++) {
+        Iterator sessions = sessions();
+        while (sessions.hasNext() && toswap > 0) {
+            Session session = (Session) sessions.next();
             int timeIdle = // Truncate, do not round up
-                (int) ((timeNow - sessions[i].getLastAccessedTime()) / 1000L);
+                (int) ((timeNow - session.getLastAccessedTime()) / 1000L);
             if (timeIdle > minIdleSwap) {
                 if(debug > 1)
                     log(sm.getString
                         ("persistentManager.swapTooManyActive",
-                         sessions[i].getId(), new Integer(timeIdle)));
+                         session.getId(), new Integer(timeIdle)));
                 try {
-                    swapOut(sessions[i]);
+                    swapOut(session);
                 } catch (IOException e) {
                     ;   // This is logged in writeSession()
                 }
@@ -1053,13 +1058,13 @@ public abstract class PersistentManagerBase
         if (!isStarted() || maxIdleBackup < 0)
             return;
 
-        Session sessions[] = findSessions();
+        Iterator sessions = sessions();
         long timeNow = System.currentTimeMillis();
 
         // Back up all sessions idle longer than maxIdleBackup
         if (maxIdleBackup >= 0) {
-            for (int i = 0; i < sessions.length; i++) {
-                StandardSession session = (StandardSession) sessions[i];
+            while (sessions.hasNext()) {
+                StandardSession session = (StandardSession) sessions.next();
                 if (!session.isValid())
                     continue;
                 int timeIdle = // Truncate, do not round up
@@ -1147,6 +1152,7 @@ public abstract class PersistentManagerBase
 
         // Loop until the termination semaphore is set
         while (!threadDone) {
+            refillSessionIds();
             threadSleep();
             processExpires();
             processPersistenceChecks();
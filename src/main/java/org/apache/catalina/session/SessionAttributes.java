@@ -0,0 +1,249 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+
+package org.apache.catalina.session;
+
+import java.util.HashMap;
+
+
+/**
+ * Collection of the user data attributes of a <code>StandardSession</code>.
+ * Most sessions hold only a few attributes, so these are kept in a pair of
+ * small arrays searched linearly, and a <code>HashMap</code> is only created
+ * once a session holds more than <code>COMPACT</code> attributes.  Null
+ * values are not supported.
+ * <p>
+ * This class is not synchronized; callers synchronize on the instance.
+ */
+
+final class SessionAttributes {
+
+
+    // -------------------------------------------------------------- Constants
+
+
+    /**
+     * The number of attributes held without a <code>HashMap</code>.
+     */
+    private static final int COMPACT = 4;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The number of attributes held in the arrays.
+     */
+    private int count = 0;
+
+
+    /**
+     * The attributes, once there are too many to be held in the arrays.
+     */
+    private HashMap map = null;
+
+
+    /**
+     * The attribute names, or <code>null</code> before the first attribute
+     * is added.
+     */
+    private String names[] = null;
+
+
+    /**
+     * The attribute values, in the same order as the names.
+     */
+    private Object values[] = null;
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Remove all attributes.  The arrays are kept for reuse.
+     */
+    void clear() {
+
+        map = null;
+        for (int i = 0; i < count; i++) {
+            names[i] = null;
+            values[i] = null;
+        }
+        count = 0;
+
+    }
+
+
+    /**
+     * Return the value of the specified attribute, or <code>null</code>.
+     *
+     * @param name Name of the attribute
+     */
+    Object get(String name) {
+
+        if (map != null)
+            return (map.get(name));
+        int i = indexOf(name);
+        return ((i < 0) ? null : values[i]);
+
+    }
+
+
+    /**
+     * Return the names of all attributes.
+     */
+    String[] keys() {
+
+        if (map != null)
+            return ((String[]) map.keySet().toArray(new String[map.size()]));
+        String results[] = new String[count];
+        if (count > 0)
+            System.arraycopy(names, 0, results, 0, count);
+        return (results);
+
+    }
+
+
+    /**
+     * Set the value of the specified attribute, and return its previous
+     * value, or <code>null</code>.
+     *
+     * @param name Name of the attribute
+     * @param value New value of the attribute
+     */
+    Object put(String name, Object value) {
+
+        if (map != null)
+            return (map.put(name, value));
+        int i = indexOf(name);
+        if (i >= 0) {
+            Object old = values[i];
+            values[i] = value;
+            return (old);
+        }
+        if (names == null) {
+            names = new String[COMPACT];
+            values = new Object[COMPACT];
+        }
+        if (count < COMPACT) {
+            names[count] = name;
+            values[count] = value;
+            count++;
+            return (null);
+        }
+
+        // Too many attributes, move them to a map
+        map = new HashMap();
+        for (i = 0; i < count; i++) {
+            map.put(names[i], values[i]);
+            names[i] = null;
+            values[i] = null;
+        }
+        count = 0;
+        map.put(name, value);
+        return (null);
+
+    }
+
+
+    /**
+     * Remove the specified attribute, and return its value, or
+     * <code>null</code> if there was no such attribute.
+     *
+     * @param name Name of the attribute
+     */
+    Object remove(String name) {
+
+        if (map != null)
+            return (map.remove(name));
+        int i = indexOf(name);
+        if (i < 0)
+            return (null);
+        Object old = values[i];
+        count--;
+        names[i] = names[count];
+        values[i] = values[count];
+        names[count] = null;
+        values[count] = null;
+        return (old);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return the index of the specified attribute in the arrays, or -1.
+     *
+     * @param name Name of the attribute
+     */
+    private int indexOf(String name) {
+
+        for (int i = 0; i < count; i++) {
+            if (names[i].equals(name))
+                return (i);
+        }
+        return (-1);
+
+    }
+
+
+}
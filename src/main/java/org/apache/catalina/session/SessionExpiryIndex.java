@@ -0,0 +1,371 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.catalina.Session;
+
+
+/**
+ * Index of the active sessions of a <code>ManagerBase</code> by expiration
+ * time, so that looking for expired sessions costs time proportional to the
+ * number of sessions that are due, rather than to the number of sessions
+ * that are alive.
+ * <p>
+ * The index is a hierarchical timing wheel with a resolution of one second.
+ * Each of its <code>LEVELS</code> levels has 64 slots, and each slot of a
+ * level covers 64 times as many seconds as a slot of the level below.  When
+ * the time reaches a slot of an upper level, its sessions are distributed
+ * over the slots of the lower levels.
+ * <p>
+ * Sessions are scheduled lazily.  The expiration time of a session only
+ * moves forward when it is accessed, so <code>StandardSession.access()</code>
+ * does not touch the index at all.  Instead, a session whose slot comes due
+ * is checked against its current expiration time, and scheduled again if it
+ * has been accessed in the meantime.  A session that must be scheduled,
+ * because it is new or its maximum inactive interval has changed, is put
+ * on a lock-free queue which is drained by the thread looking for expired
+ * sessions, so only that thread ever modifies the wheel.
+ * <p>
+ * Sessions are only scheduled while the index is started, so that the
+ * index does not retain the sessions of a manager which is not looking for
+ * expired sessions.
+ */
+
+final class SessionExpiryIndex {
+
+
+    // -------------------------------------------------------------- Constants
+
+
+    /**
+     * The number of bits of the slot index of a level.
+     */
+    private static final int BITS = 6;
+
+
+    /**
+     * The number of levels of the wheel.  With 64 slots per level, sessions
+     * may be scheduled up to 194 days ahead before they are revisited.
+     */
+    private static final int LEVELS = 4;
+
+
+    /**
+     * The mask of the slot index of a level.
+     */
+    private static final int MASK = (1 << BITS) - 1;
+
+
+    /**
+     * The tick of the sessions which have already been found to be expired
+     * by the current call to <code>expire()</code>.
+     */
+    private static final long EXPIRED = Long.MIN_VALUE;
+
+
+    /**
+     * The duration of a tick of the wheel, in milliseconds.
+     */
+    private static final long TICK = 1000L;
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new, empty index.
+     *
+     * @param timeNow The current time in milliseconds
+     */
+    SessionExpiryIndex(long timeNow) {
+
+        this.current = timeNow / TICK;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The last tick which has been processed.
+     */
+    private long current = 0L;
+
+
+    /**
+     * Is the index started?
+     */
+    private volatile boolean started = false;
+
+
+    /**
+     * The sessions which are waiting to be scheduled.
+     */
+    private ConcurrentLinkedQueue pending = new ConcurrentLinkedQueue();
+
+
+    /**
+     * The slots of the wheel, indexed by level and slot, each holding a
+     * list of sessions or <code>null</code> if it is empty.
+     */
+    private ArrayList slots[][] = new ArrayList[LEVELS][1 << BITS];
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Request that the specified session be scheduled according to its
+     * current expiration time, if the index is started.  This method may be
+     * called by any thread.
+     *
+     * @param session The session to be scheduled
+     */
+    void schedule(StandardSession session) {
+
+        if (started)
+            pending.offer(session);
+
+    }
+
+
+    /**
+     * Start scheduling sessions.  The sessions which are already active
+     * must then be scheduled.
+     *
+     * @param timeNow The current time in milliseconds
+     */
+    synchronized void start(long timeNow) {
+
+        current = timeNow / TICK;
+        started = true;
+
+    }
+
+
+    /**
+     * Stop scheduling sessions, and release the sessions of the index.
+     */
+    synchronized void stop() {
+
+        started = false;
+        pending.clear();
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot <= MASK; slot++)
+                slots[level][slot] = null;
+        }
+
+    }
+
+
+    /**
+     * Advance the wheel up to the specified time, and return the sessions
+     * which have been idle for longer than their maximum inactive interval.
+     *
+     * @param timeNow The current time in milliseconds
+     */
+    synchronized Session[] expire(long timeNow) {
+
+        ArrayList results = new ArrayList();
+
+        // Schedule the sessions added since the last call
+        StandardSession session = null;
+        while ((session = (StandardSession) pending.poll()) != null)
+            reschedule(session, timeNow, results);
+
+        // Process each tick elapsed since the last call
+        long target = timeNow / TICK;
+        while (current < target) {
+            current++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                // Cascade the upper slot when the lower levels wrap around
+                if ((current & ((1L << (BITS * level)) - 1)) == 0)
+                    cascade(level, (int) (current >>> (BITS * level)) & MASK);
+            }
+            ArrayList due = detach(0, (int) current & MASK);
+            if (due == null)
+                continue;
+            for (int i = 0; i < due.size(); i++) {
+                session = (StandardSession) due.get(i);
+                if (session.expiryTick == current)
+                    reschedule(session, timeNow, results);
+            }
+        }
+
+        Session expired[] = new Session[results.size()];
+        for (int i = 0; i < expired.length; i++) {
+            session = (StandardSession) results.get(i);
+            session.expiryTick = -1L;
+            expired[i] = session;
+        }
+        return (expired);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Redistribute the sessions of the specified slot over the lower levels.
+     *
+     * @param level The level of the slot
+     * @param slot The index of the slot
+     */
+    private void cascade(int level, int slot) {
+
+        ArrayList list = detach(level, slot);
+        if (list == null)
+            return;
+        for (int i = 0; i < list.size(); i++) {
+            StandardSession session = (StandardSession) list.get(i);
+            long tick = session.expiryTick;
+            // Drop the stale entries of sessions scheduled again since
+            if ((tick < current) ||
+                (((tick >>> (BITS * level)) & MASK) != slot))
+                continue;
+            place(session, tick);
+        }
+
+    }
+
+
+    /**
+     * Remove and return the sessions held in the specified slot.
+     *
+     * @param level The level of the slot
+     * @param slot The index of the slot
+     */
+    private ArrayList detach(int level, int slot) {
+
+        ArrayList list = slots[level][slot];
+        slots[level][slot] = null;
+        return (list);
+
+    }
+
+
+    /**
+     * Put the specified session in the slot for the specified tick, which
+     * must not be before the current tick.
+     *
+     * @param session The session to be put in the wheel
+     * @param tick The tick at which the session is due
+     */
+    private void place(StandardSession session, long tick) {
+
+        // Use the lowest level on which the tick and the current tick
+        // only differ by their slot index
+        int level = 0;
+        while ((level < LEVELS - 1) &&
+               ((tick >>> (BITS * (level + 1))) !=
+                (current >>> (BITS * (level + 1)))))
+            level++;
+        int slot = (int) (tick >>> (BITS * level)) & MASK;
+        ArrayList list = slots[level][slot];
+        if (list == null) {
+            list = new ArrayList();
+            slots[level][slot] = list;
+        }
+        list.add(session);
+
+    }
+
+
+    /**
+     * Check the specified session against its current expiration time,
+     * and either add it to the expired sessions or put it in the wheel.
+     *
+     * @param session The session to be checked
+     * @param timeNow The current time in milliseconds
+     * @param results The expired sessions
+     */
+    private void reschedule(StandardSession session, long timeNow,
+                            ArrayList results) {
+
+        if (session.expiryTick == EXPIRED)
+            return;
+        session.expiryTick = -1L;
+        if (!session.isValid())
+            return;
+        int maxInactiveInterval = session.getMaxInactiveInterval();
+        if (maxInactiveInterval < 0)
+            return;
+        long expiry = session.getLastAccessedTime() +
+            (maxInactiveInterval * 1000L);
+        if (expiry <= timeNow) {
+            session.expiryTick = EXPIRED;
+            results.add(session);
+            return;
+        }
+        long tick = (expiry + TICK - 1) / TICK;
+        if (tick <= current)
+            tick = current + 1;
+        session.expiryTick = tick;
+        place(session, tick);
+
+    }
+
+
+}
@@ -0,0 +1,278 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+
+package org.apache.catalina.session;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Generator of session identifiers for a <code>ManagerBase</code>.  Random
+ * bytes are taken from a pool of random number generators, so that threads
+ * creating sessions at the same time do not wait on a single generator, and
+ * are encoded directly into the identifier, without being digested first.
+ * <p>
+ * Constructing and seeding a <code>SecureRandom</code> is expensive, so the
+ * pool is kept topped up by <code>refill()</code>, which managers call from
+ * their background thread.  A generator is only constructed on the request
+ * path if the pool has been exhausted.
+ */
+
+final class SessionIdGenerator {
+
+
+    // -------------------------------------------------------------- Constants
+
+
+    /**
+     * Encoding rendering each byte as two upper case hexadecimal digits.
+     */
+    static final String HEX = "hex";
+
+
+    /**
+     * Encoding rendering each six bits as one character of the URL and
+     * cookie safe Base64 alphabet, without padding.
+     */
+    static final String BASE64 = "base64";
+
+
+    /**
+     * The Base64 alphabet of RFC 3548 which is safe in URLs and cookies.
+     */
+    private static final char BASE64_DIGITS[] =
+        ("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_")
+        .toCharArray();
+
+
+    /**
+     * The hexadecimal digits.
+     */
+    private static final char HEX_DIGITS[] =
+        "0123456789ABCDEF".toCharArray();
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new generator for the specified manager.
+     *
+     * @param manager The manager providing the random number generators
+     * @param length The number of random bytes in an identifier
+     * @param encoding The encoding of the random bytes, <code>HEX</code>
+     *  or <code>BASE64</code>
+     */
+    SessionIdGenerator(ManagerBase manager, int length, String encoding) {
+
+        this.manager = manager;
+        this.length = length;
+        this.base64 = BASE64.equals(encoding);
+        this.poolSize = Runtime.getRuntime().availableProcessors();
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * Are identifiers encoded in Base64 rather than hexadecimal?
+     */
+    private boolean base64 = false;
+
+
+    /**
+     * The number of random bytes in an identifier.
+     */
+    private int length = 0;
+
+
+    /**
+     * The manager for which identifiers are generated.
+     */
+    private ManagerBase manager = null;
+
+
+    /**
+     * The random number generators which are not currently in use.
+     */
+    private ConcurrentLinkedQueue pool = new ConcurrentLinkedQueue();
+
+
+    /**
+     * The number of random number generators kept in the pool.
+     */
+    private int poolSize = 0;
+
+
+    /**
+     * The number of random number generators currently in the pool.
+     */
+    private AtomicInteger pooled = new AtomicInteger();
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Generate and return a new session identifier.
+     */
+    String generate() {
+
+        byte bytes[] = new byte[length];
+        Random random = (Random) pool.poll();
+        if (random == null)
+            random = manager.createRandom();
+        else
+            pooled.decrementAndGet();
+        try {
+            random.nextBytes(bytes);
+        } finally {
+            release(random);
+        }
+
+        if (base64)
+            return (encodeBase64(bytes));
+        else
+            return (encodeHex(bytes));
+
+    }
+
+
+    /**
+     * Construct and seed random number generators until the pool is full.
+     */
+    void refill() {
+
+        while (pooled.get() < poolSize) {
+            Random random = manager.createRandom();
+            // The first request for random bytes completes the seeding
+            random.nextBytes(new byte[1]);
+            release(random);
+        }
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return a random number generator to the pool, unless it is full.
+     *
+     * @param random The random number generator to be returned
+     */
+    private void release(Random random) {
+
+        if (pooled.incrementAndGet() <= poolSize)
+            pool.offer(random);
+        else
+            pooled.decrementAndGet();
+
+    }
+
+
+    /**
+     * Render the specified bytes as a String of Base64 digits.
+     *
+     * @param bytes The bytes to be rendered
+     */
+    private static String encodeBase64(byte bytes[]) {
+
+        char result[] = new char[(bytes.length * 8 + 5) / 6];
+        int bits = 0;
+        int buffer = 0;
+        int pos = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            buffer = (buffer << 8) | (bytes[i] & 0xff);
+            bits += 8;
+            while (bits >= 6) {
+                bits -= 6;
+                result[pos++] = BASE64_DIGITS[(buffer >> bits) & 0x3f];
+            }
+        }
+        if (bits > 0)
+            result[pos++] = BASE64_DIGITS[(buffer << (6 - bits)) & 0x3f];
+        return (new String(result));
+
+    }
+
+
+    /**
+     * Render the specified bytes as a String of hexadecimal digits.
+     *
+     * @param bytes The bytes to be rendered
+     */
+    private static String encodeHex(byte bytes[]) {
+
+        char result[] = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] & 0xf0) >> 4];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return (new String(result));
+
+    }
+
+
+}
@@ -0,0 +1,205 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+
+package org.apache.catalina.session;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.catalina.Session;
+
+
+/**
+ * Bounded pool of recycled sessions for a <code>ManagerBase</code>.  Each
+ * thread keeps a few sessions of its own, so that a thread which recycles
+ * sessions and then creates new ones does not touch shared state.  The
+ * remaining sessions are held in a lock-free queue, up to the capacity of
+ * the pool; sessions recycled beyond that are left to the garbage collector.
+ */
+
+final class SessionPool {
+
+
+    // -------------------------------------------------------------- Constants
+
+
+    /**
+     * The number of sessions kept by each thread.
+     */
+    private static final int LOCAL = 4;
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new, empty pool.
+     *
+     * @param capacity The maximum number of sessions in the shared queue
+     */
+    SessionPool(int capacity) {
+
+        this.capacity = capacity;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The maximum number of sessions in the shared queue.
+     */
+    private int capacity = 0;
+
+
+    /**
+     * The sessions kept by each thread.  This is replaced to discard them
+     * when the pool is cleared.
+     */
+    private volatile ThreadLocal local = new ThreadLocal();
+
+
+    /**
+     * The shared queue of sessions.
+     */
+    private ConcurrentLinkedQueue queue = new ConcurrentLinkedQueue();
+
+
+    /**
+     * The number of sessions in the shared queue.
+     */
+    private AtomicInteger size = new AtomicInteger();
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Discard all the sessions of this pool.
+     */
+    void clear() {
+
+        local = new ThreadLocal();
+        queue.clear();
+        size.set(0);
+
+    }
+
+
+    /**
+     * Return a recycled session, or <code>null</code> if there is none.
+     */
+    Session get() {
+
+        Cache cache = (Cache) local.get();
+        if ((cache != null) && (cache.count > 0)) {
+            Session session = cache.sessions[--cache.count];
+            cache.sessions[cache.count] = null;
+            return (session);
+        }
+        Session session = (Session) queue.poll();
+        if (session != null)
+            size.decrementAndGet();
+        return (session);
+
+    }
+
+
+    /**
+     * Add a recycled session to this pool, unless it is full.
+     *
+     * @param session The recycled session
+     */
+    void put(Session session) {
+
+        ThreadLocal local = this.local;
+        Cache cache = (Cache) local.get();
+        if (cache == null) {
+            cache = new Cache();
+            local.set(cache);
+        }
+        if (cache.count < LOCAL) {
+            cache.sessions[cache.count++] = session;
+            return;
+        }
+        if (size.incrementAndGet() <= capacity)
+            queue.offer(session);
+        else
+            size.decrementAndGet();
+
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * The sessions kept by one thread.
+     */
+    private static final class Cache {
+
+        int count = 0;
+
+        Session sessions[] = new Session[LOCAL];
+
+    }
+
+
+}
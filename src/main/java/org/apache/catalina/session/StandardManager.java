@@ -405,7 +405,7 @@ public class StandardManager
                     StandardSession session = new StandardSession(this);
                     session.readObjectData(ois);
                     session.setManager(this);
-                    sessions.put(session.getId(), session);
+                    add(session);
                     ((StandardSession) session).activate();
                 }
             } catch (ClassNotFoundException e) {
@@ -487,17 +487,20 @@ public class StandardManager
         }
 
         // Write the number of active sessions, followed by the details
+        // The active sessions may change while we iterate, so collect them
+        // first to write a count that matches the sessions that follow it
         ArrayList list = new ArrayList();
+        Iterator elements = sessions();
+        while (elements.hasNext())
+            list.add(elements.next());
         synchronized (sessions) {
             if (debug >= 1)
-                log("Unloading " + sessions.size() + " sessions");
+                log("Unloading " + list.size() + " sessions");
             try {
-                oos.writeObject(new Integer(sessions.size()));
-                Iterator elements = sessions.values().iterator();
-                while (elements.hasNext()) {
+                oos.writeObject(new Integer(list.size()));
+                for (int i = 0; i < list.size(); i++) {
                     StandardSession session =
-                        (StandardSession) elements.next();
-                    list.add(session);
+                        (StandardSession) list.get(i);
                     ((StandardSession) session).passivate();
                     session.writeObjectData(oos);
                 }
@@ -624,6 +627,7 @@ public class StandardManager
         }
 
         // Start the background reaper thread
+        startExpiry();
         threadStart();
 
     }
@@ -651,6 +655,7 @@ public class StandardManager
 
         // Stop the background reaper thread
         threadStop();
+        stopExpiry();
 
         // Write out sessions
         try {
@@ -660,9 +665,9 @@ public class StandardManager
         }
 
         // Expire all active sessions
-        Session sessions[] = findSessions();
-        for (int i = 0; i < sessions.length; i++) {
-            StandardSession session = (StandardSession) sessions[i];
+        Iterator sessions = sessions();
+        while (sessions.hasNext()) {
+            StandardSession session = (StandardSession) sessions.next();
             if (!session.isValid())
                 continue;
             try {
@@ -674,6 +679,7 @@ public class StandardManager
 
         // Require a new random number generator if we are restarted
         this.random = null;
+        this.generator = null;
 
     }
 
@@ -742,23 +748,16 @@ public class StandardManager
     private void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session sessions[] = findSessions();
+        Session sessions[] = findExpiredSessions(timeNow);
 
         for (int i = 0; i < sessions.length; i++) {
             StandardSession session = (StandardSession) sessions[i];
             if (!session.isValid())
                 continue;
-            int maxInactiveInterval = session.getMaxInactiveInterval();
-            if (maxInactiveInterval < 0)
-                continue;
-            int timeIdle = // Truncate, do not round up
-                (int) ((timeNow - session.getLastAccessedTime()) / 1000L);
-            if (timeIdle >= maxInactiveInterval) {
-                try {
-                    session.expire();
-                } catch (Throwable t) {
-                    log(sm.getString("standardManager.expireException"), t);
-                }
+            try {
+                session.expire();
+            } catch (Throwable t) {
+                log(sm.getString("standardManager.expireException"), t);
             }
         }
 
@@ -831,6 +830,7 @@ public class StandardManager
 
         // Loop until the termination semaphore is set
         while (!threadDone) {
+            refillSessionIds();
             threadSleep();
             processExpires();
         }
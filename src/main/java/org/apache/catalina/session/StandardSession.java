@@ -74,6 +74,7 @@ import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -152,7 +153,7 @@ class StandardSession
     /**
      * The collection of user data attributes associated with this Session.
      */
-    private HashMap attributes = new HashMap();
+    private SessionAttributes attributes = new SessionAttributes();
 
 
     /**
@@ -203,6 +204,14 @@ class StandardSession
     private transient boolean expiring = false;
 
 
+    /**
+     * The tick of the expiration index of our Manager at which this session
+     * is due, or -1 if it is not scheduled.  NOTE:  This value is not
+     * included in the serialized version of this object.
+     */
+    transient long expiryTick = -1L;
+
+
     /**
      * The facade associated with this session.  NOTE:  This value is not
      * included in the serialized version of this object.
@@ -481,6 +490,11 @@ class StandardSession
 
         this.maxInactiveInterval = interval;
 
+        // A shorter interval must be taken into account by the expiration
+        // index of our Manager
+        if (isValid && (id != null) && (manager instanceof ManagerBase))
+            ((ManagerBase) manager).scheduleExpiry(this);
+
     }
 
 
@@ -960,9 +974,7 @@ class StandardSession
             throw new IllegalStateException
                 (sm.getString("standardSession.getAttributeNames.ise"));
 
-        synchronized (attributes) {
-            return (new Enumerator(attributes.keySet()));
-        }
+        return (new Enumerator(Arrays.asList(keys())));
 
     }
 
@@ -1117,15 +1129,10 @@ class StandardSession
 
         // Remove this attribute from our collection
         Object value = null;
-        boolean found = false;
         synchronized (attributes) {
-            found = attributes.containsKey(name);
-            if (found) {
-                value = attributes.get(name);
-                attributes.remove(name);
-            } else {
+            value = attributes.remove(name);
+            if (value == null)
                 return;
-            }
         }
 
         // Do we need to do valueUnbound() and attributeRemoved() notification?
@@ -1346,7 +1353,7 @@ class StandardSession
 
         // Deserialize the attribute count and attribute values
         if (attributes == null)
-            attributes = new HashMap();
+            attributes = new SessionAttributes();
         int n = ((Integer) stream.readObject()).intValue();
         boolean isValidSave = isValid;
         isValid = true;
@@ -1505,9 +1512,8 @@ class StandardSession
      */
     private String[] keys() {
 
-        String results[] = new String[0];
         synchronized (attributes) {
-            return ((String[]) attributes.keySet().toArray(results));
+            return (attributes.keys());
         }
 
     }
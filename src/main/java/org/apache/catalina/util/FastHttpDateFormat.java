@@ -59,14 +59,22 @@
 
 package org.apache.catalina.util;
 
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.TimeZone;
-import java.text.SimpleDateFormat;
 
 /**
- * Utility class to generate HTTP dates.
+ * Utility class to generate and parse HTTP dates.
+ * <p>
+ * Dates are formatted to the RFC 1123 format without going through a
+ * <code>SimpleDateFormat</code>, directly into ASCII bytes.  The current
+ * date is regenerated at most once per second and published as a single
+ * immutable entry, and the dates formatted or parsed on behalf of callers
+ * are kept in fixed size, direct mapped caches of immutable entries, so
+ * that none of the methods of this class takes a lock.
  * 
  * @author Remy Maucherat
  */
@@ -77,39 +85,69 @@ public final class FastHttpDateFormat {
 
 
     /**
-     * HTTP date format.
+     * The number of entries of the format and parse caches, which must be
+     * a power of two.
+     */
+    private static final int CACHE_SIZE = 1024;
+
+
+    /**
+     * The abbreviated day names, starting with Sunday.
+     */
+    private static final String DAYS[] =
+    { "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" };
+
+
+    /**
+     * The abbreviated month names, starting with January.
      */
-    protected static SimpleDateFormat format = 
-        new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    private static final String MONTHS[] =
+    { "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+      "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
 
 
     protected final static TimeZone gmtZone = TimeZone.getTimeZone("GMT");
 
 
     /**
-     * GMT timezone - all HTTP dates are on GMT
+     * The current date, replaced once per second.
      */
-    static {
-        format.setTimeZone(gmtZone);
-    }
+    private static volatile FormattedDate currentDate =
+        new FormattedDate(Math.floorDiv(System.currentTimeMillis(), 1000L));
 
 
     /**
-     * Instant on which the currentDate object was generated.
+     * Cache of formatted dates, indexed by second.  A slot may be
+     * overwritten at any time by a concurrent caller; entries are immutable,
+     * so a stale or missing entry only costs a new formatting.
      */
-    protected static long currentDateGenerated = 0L;
+    private static final FormattedDate formatCache[] =
+        new FormattedDate[CACHE_SIZE];
 
 
     /**
-     * Current formatted date.
+     * Cache of parsed dates, indexed by the hash code of their text.
      */
-    protected static String currentDate = null;
+    private static final ParsedDate parseCache[] = new ParsedDate[CACHE_SIZE];
 
 
     /**
-     * Date cache.
+     * The formats accepted by <code>parseDate()</code>, one set per thread.
      */
-    protected static HashMap dateCache = new HashMap();
+    private static final ThreadLocal parsers = new ThreadLocal() {
+        protected Object initialValue() {
+            SimpleDateFormat formats[] = {
+                new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz",
+                                     Locale.US),
+                new SimpleDateFormat("EEEEEE, dd-MMM-yy HH:mm:ss zzz",
+                                     Locale.US),
+                new SimpleDateFormat("EEE MMMM d HH:mm:ss yyyy", Locale.US)
+            };
+            for (int i = 0; i < formats.length; i++)
+                formats[i].setTimeZone(gmtZone);
+            return (formats);
+        }
+    };
 
 
     // --------------------------------------------------------- Public Methods
@@ -120,16 +158,18 @@ public final class FastHttpDateFormat {
      */
     public static String getCurrentDate() {
 
-        long now = System.currentTimeMillis();
-        if ((now - currentDateGenerated) > 1000) {
-            synchronized (format) {
-                if ((now - currentDateGenerated) > 1000) {
-                    currentDateGenerated = now;
-                    currentDate = format.format(new Date(now));
-                }
-            }
-        }
-        return currentDate;
+        return (current().text);
+
+    }
+
+
+    /**
+     * Get the current date in HTTP format, as US-ASCII bytes.  The returned
+     * array is shared and must not be modified.
+     */
+    public static byte[] getCurrentDateBytes() {
+
+        return (current().bytes);
 
     }
 
@@ -139,16 +179,222 @@ public final class FastHttpDateFormat {
      */
     public static String getDate(Date date) {
 
-        String cachedDate = (String) dateCache.get(date);
-        if (cachedDate != null)
-            return cachedDate;
+        return (formatDate(date.getTime()));
+
+    }
+
+
+    /**
+     * Get the HTTP format of the specified time.
+     *
+     * @param time The time in milliseconds since the epoch
+     */
+    public static String formatDate(long time) {
+
+        return (formatted(time).text);
+
+    }
+
+
+    /**
+     * Get the HTTP format of the specified time, as US-ASCII bytes.  The
+     * returned array is shared and must not be modified.
+     *
+     * @param time The time in milliseconds since the epoch
+     */
+    public static byte[] formatDateBytes(long time) {
+
+        return (formatted(time).bytes);
+
+    }
+
+
+    /**
+     * Parse a date in one of the formats allowed by HTTP, and return the
+     * corresponding time in milliseconds since the epoch, or -1 if the
+     * value cannot be parsed.
+     *
+     * @param value The date to parse
+     */
+    public static long parseDate(String value) {
+
+        int slot = hash(value.hashCode());
+        ParsedDate entry = parseCache[slot];
+        if ((entry != null) && entry.text.equals(value))
+            return (entry.time);
+
+        long time = -1L;
+        SimpleDateFormat formats[] = (SimpleDateFormat[]) parsers.get();
+        for (int i = 0; i < formats.length; i++) {
+            try {
+                time = formats[i].parse(value).getTime();
+                break;
+            } catch (ParseException e) {
+                ;
+            }
+        }
+        parseCache[slot] = new ParsedDate(value, time);
+        return (time);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Return the entry of the current date, replacing it if the second has
+     * changed since it was generated.
+     */
+    private static FormattedDate current() {
+
+        long second = Math.floorDiv(System.currentTimeMillis(), 1000L);
+        FormattedDate entry = currentDate;
+        if (entry.second != second) {
+            entry = new FormattedDate(second);
+            currentDate = entry;
+        }
+        return (entry);
+
+    }
+
+
+    /**
+     * Return the cached entry of the specified time, formatting it if
+     * needed.
+     */
+    private static FormattedDate formatted(long time) {
+
+        long second = Math.floorDiv(time, 1000L);
+        int slot = hash((int) (second ^ (second >>> 32)));
+        FormattedDate entry = formatCache[slot];
+        if ((entry == null) || (entry.second != second)) {
+            entry = new FormattedDate(second);
+            formatCache[slot] = entry;
+        }
+        return (entry);
+
+    }
+
+
+    /**
+     * Spread the specified hash code over the slots of a cache.
+     */
+    private static int hash(int h) {
+
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return (h & (CACHE_SIZE - 1));
+
+    }
+
+
+    /**
+     * Format the specified second to the RFC 1123 format.
+     *
+     * @param second The time in seconds since the epoch
+     */
+    private static byte[] format(long second) {
+
+        long days = Math.floorDiv(second, 86400L);
+        int secs = (int) (second - (days * 86400L));
+
+        // Convert the day number to a civil date, with years starting in
+        // March so that the leap day is the last day of the year
+        long z = days + 719468L;
+        long era = Math.floorDiv(z, 146097L);
+        long doe = z - (era * 146097L);
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) ((mp < 10) ? mp + 3 : mp - 9);
+        long year = yoe + (era * 400) + ((month <= 2) ? 1 : 0);
+
+        String years = Long.toString(year);
+        byte buf[] = new byte[25 + Math.max(years.length(), 4)];
+        int pos = 0;
+        pos = append(buf, pos, DAYS[(int) Math.floorMod(days + 4, 7L)]);
+        buf[pos++] = (byte) ',';
+        buf[pos++] = (byte) ' ';
+        pos = append2(buf, pos, day);
+        buf[pos++] = (byte) ' ';
+        pos = append(buf, pos, MONTHS[month - 1]);
+        buf[pos++] = (byte) ' ';
+        for (int i = years.length(); i < 4; i++)
+            buf[pos++] = (byte) '0';
+        pos = append(buf, pos, years);
+        buf[pos++] = (byte) ' ';
+        pos = append2(buf, pos, secs / 3600);
+        buf[pos++] = (byte) ':';
+        pos = append2(buf, pos, (secs / 60) % 60);
+        buf[pos++] = (byte) ':';
+        pos = append2(buf, pos, secs % 60);
+        pos = append(buf, pos, " GMT");
+        return (buf);
+
+    }
+
+
+    /**
+     * Append the specified ASCII string to the buffer.
+     */
+    private static int append(byte buf[], int pos, String s) {
+
+        int n = s.length();
+        for (int i = 0; i < n; i++)
+            buf[pos++] = (byte) s.charAt(i);
+        return (pos);
+
+    }
+
+
+    /**
+     * Append the specified number as two digits to the buffer.
+     */
+    private static int append2(byte buf[], int pos, int n) {
+
+        buf[pos++] = (byte) ('0' + (n / 10));
+        buf[pos++] = (byte) ('0' + (n % 10));
+        return (pos);
+
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A second and its HTTP format.
+     */
+    private static final class FormattedDate {
+
+        final long second;
+        final String text;
+        final byte bytes[];
+
+        FormattedDate(long second) {
+            this.second = second;
+            this.bytes = format(second);
+            this.text = new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+    }
+
+
+    /**
+     * A date and the time it was parsed to.
+     */
+    private static final class ParsedDate {
+
+        final String text;
+        final long time;
 
-        String newDate = null;
-        synchronized (format) {
-            newDate = format.format(date);
-            dateCache.put(date, newDate);
+        ParsedDate(String text, long time) {
+            this.text = text;
+            this.time = time;
         }
-        return newDate;
 
     }
 
@@ -0,0 +1,373 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+package org.apache.catalina.util;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * Incremental parser of request parameters encoded in the
+ * <code>application/x-www-form-urlencoded</code> format, as found in query
+ * strings and in the bodies of form posts.  Data is fed to the parser in
+ * as many pieces as convenient, and only the name or value being decoded
+ * is buffered, so a request body can be parsed while it is read without
+ * holding all of it in memory.  Names and values are URL decoded
+ * individually, so that encoded "=" and "&amp;" characters are not taken
+ * as delimiters, and converted to Strings in the specified encoding.
+ * <p>
+ * The values of each name are collected as they are parsed, and appended
+ * to the <code>String[]</code> values of the target Map when the parser
+ * is finished.  It is presumed that the Map is not accessed from any other
+ * thread, so no synchronization is performed.
+ */
+
+public final class ParameterParser {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a parser that adds the parameters it parses to the
+     * specified Map.
+     *
+     * @param map Map that accumulates the resulting parameters
+     * @param encoding Character encoding of the parameters
+     *
+     * @exception UnsupportedEncodingException if the encoding is not
+     *  supported
+     */
+    public ParameterParser(Map map, String encoding)
+        throws UnsupportedEncodingException {
+
+        this.map = map;
+        try {
+            this.charset = Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(encoding);
+        }
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The character set of the parameters.
+     */
+    private Charset charset = null;
+
+
+    /**
+     * The number of bytes of the current name or value.
+     */
+    private int count = 0;
+
+
+    /**
+     * The value of the first hexadecimal digit of the escape sequence being
+     * decoded.
+     */
+    private int digit = 0;
+
+
+    /**
+     * The number of hexadecimal digits of the current escape sequence
+     * still expected.
+     */
+    private int escape = 0;
+
+
+    /**
+     * The decoded name of the current parameter, or <code>null</code> if no
+     * "=" has been found since the last delimiter.
+     */
+    private String name = null;
+
+
+    /**
+     * The Map that accumulates the resulting parameters.
+     */
+    private Map map = null;
+
+
+    /**
+     * The decoded bytes of the current name or value.
+     */
+    private byte token[] = new byte[64];
+
+
+    /**
+     * The values parsed so far, keyed by name.  A name with a single value
+     * maps to a String, and a name with several values to an ArrayList.
+     */
+    private HashMap values = new HashMap();
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Append the parameters remaining in the data parsed so far to the
+     * Map.  The parser may not be used once finished.
+     */
+    public void finish() {
+
+        if (name != null)
+            add(name, token());
+        name = null;
+
+        Iterator keys = values.keySet().iterator();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            Object value = values.get(key);
+            String oldValues[] = (String[]) map.get(key);
+            int n = (oldValues == null) ? 0 : oldValues.length;
+            String newValues[] = null;
+            if (value instanceof String) {
+                newValues = new String[n + 1];
+                newValues[n] = (String) value;
+            } else {
+                ArrayList list = (ArrayList) value;
+                newValues = new String[n + list.size()];
+                for (int i = 0; i < list.size(); i++)
+                    newValues[n + i] = (String) list.get(i);
+            }
+            if (n > 0)
+                System.arraycopy(oldValues, 0, newValues, 0, n);
+            map.put(key, newValues);
+        }
+        values.clear();
+
+    }
+
+
+    /**
+     * Parse the specified bytes.
+     *
+     * @param data The bytes to parse
+     * @param off Offset of the first byte
+     * @param len Number of bytes to parse
+     */
+    public void parse(byte data[], int off, int len) {
+
+        int end = off + len;
+        for (int i = off; i < end; i++)
+            update(data[i]);
+
+    }
+
+
+    /**
+     * Parse the specified String, in which each character stands for the
+     * byte of the same value.
+     *
+     * @param data The String to parse
+     */
+    public void parse(String data) {
+
+        int len = data.length();
+        for (int i = 0; i < len; i++)
+            update((byte) data.charAt(i));
+
+    }
+
+
+    /**
+     * Read and parse at most the specified number of bytes from an input
+     * stream.
+     *
+     * @param stream The stream to read
+     * @param length The number of bytes to read
+     * @return The number of bytes read, which is smaller than the length if
+     *  the stream ended first
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public int parse(InputStream stream, int length) throws IOException {
+
+        byte buffer[] = new byte[Math.min(length, 4096)];
+        int total = 0;
+        while (total < length) {
+            int n = stream.read(buffer, 0,
+                                Math.min(buffer.length, length - total));
+            if (n < 0)
+                break;
+            parse(buffer, 0, n);
+            total += n;
+        }
+        return (total);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Add a value for the specified name.
+     */
+    private void add(String name, String value) {
+
+        Object oldValue = values.get(name);
+        if (oldValue == null) {
+            values.put(name, value);
+        } else if (oldValue instanceof String) {
+            ArrayList list = new ArrayList(4);
+            list.add(oldValue);
+            list.add(value);
+            values.put(name, list);
+        } else {
+            ((ArrayList) oldValue).add(value);
+        }
+
+    }
+
+
+    /**
+     * Append a decoded byte to the current name or value.
+     */
+    private void append(int b) {
+
+        if (count == token.length) {
+            byte newToken[] = new byte[token.length * 2];
+            System.arraycopy(token, 0, newToken, 0, count);
+            token = newToken;
+        }
+        token[count++] = (byte) b;
+
+    }
+
+
+    /**
+     * Convert a hexadecimal digit to its value, or to zero if it is not a
+     * valid digit.
+     */
+    private static int convertHexDigit(byte b) {
+
+        if ((b >= '0') && (b <= '9')) return (b - '0');
+        if ((b >= 'a') && (b <= 'f')) return (b - 'a' + 10);
+        if ((b >= 'A') && (b <= 'F')) return (b - 'A' + 10);
+        return (0);
+
+    }
+
+
+    /**
+     * Return the current name or value as a String, and start a new one.
+     */
+    private String token() {
+
+        String s = new String(token, 0, count, charset);
+        count = 0;
+        return (s);
+
+    }
+
+
+    /**
+     * Parse the next byte of data.
+     */
+    private void update(byte b) {
+
+        if (escape > 0) {
+            if (escape == 2) {
+                digit = convertHexDigit(b);
+                escape = 1;
+            } else {
+                append((digit << 4) + convertHexDigit(b));
+                escape = 0;
+            }
+            return;
+        }
+        switch (b) {
+        case '&':
+            if (name != null) {
+                add(name, token());
+                name = null;
+            }
+            count = 0;
+            break;
+        case '=':
+            name = token();
+            break;
+        case '+':
+            append(' ');
+            break;
+        case '%':
+            escape = 2;
+            break;
+        default:
+            append(b);
+        }
+
+    }
+
+
+}
@@ -330,10 +330,9 @@ public final class RequestUtil {
         throws UnsupportedEncodingException {
 
         if ((data != null) && (data.length() > 0)) {
-            int len = data.length();
-            byte[] bytes = new byte[len];
-            data.getBytes(0, len, bytes, 0);
-            parseParameters(map, bytes, encoding);
+            ParameterParser parser = new ParameterParser(map, encoding);
+            parser.parse(data);
+            parser.finish();
         }
 
     }
@@ -442,29 +441,6 @@ public final class RequestUtil {
     }
 
 
-    /**
-     * Put name value pair in map.
-     *
-     * @param b the character value byte
-     *
-     * Put name and value pair in map.  When name already exist, add value
-     * to array of values.
-     */
-    private static void putMapEntry( Map map, String name, String value) {
-        String[] newValues = null;
-        String[] oldValues = (String[]) map.get(name);
-        if (oldValues == null) {
-            newValues = new String[1];
-            newValues[0] = value;
-        } else {
-            newValues = new String[oldValues.length + 1];
-            System.arraycopy(oldValues, 0, newValues, 0, oldValues.length);
-            newValues[oldValues.length] = value;
-        }
-        map.put(name, newValues);
-    }
-
-
     /**
      * Append request parameters from the specified String to the specified
      * Map.  It is presumed that the specified Map is not accessed from any
@@ -476,8 +452,6 @@ public final class RequestUtil {
      * where the name or value includes an encoded "=" or "&" character
      * that would otherwise be interpreted as a delimiter.
      *
-     * NOTE: byte array data is modified by this method.  Caller beware.
-     *
      * @param map Map that accumulates the resulting parameters
      * @param data Input string containing request parameters
      * @param encoding Encoding to use for converting hex
@@ -488,42 +462,9 @@ public final class RequestUtil {
         throws UnsupportedEncodingException {
 
         if (data != null && data.length > 0) {
-            int    pos = 0;
-            int    ix = 0;
-            int    ox = 0;
-            String key = null;
-            String value = null;
-            while (ix < data.length) {
-                byte c = data[ix++];
-                switch ((char) c) {
-                case '&':
-                    value = new String(data, 0, ox, encoding);
-                    if (key != null) {
-                        putMapEntry(map, key, value);
-                        key = null;
-                    }
-                    ox = 0;
-                    break;
-                case '=':
-                    key = new String(data, 0, ox, encoding);
-                    ox = 0;
-                    break;
-                case '+':
-                    data[ox++] = (byte)' ';
-                    break;
-                case '%':
-                    data[ox++] = (byte)((convertHexDigit(data[ix++]) << 4)
-                                    + convertHexDigit(data[ix++]));
-                    break;
-                default:
-                    data[ox++] = c;
-                }
-            }
-            //The last value does not end in '&'.  So save it now.
-            if (key != null) {
-                value = new String(data, 0, ox, encoding);
-                putMapEntry(map, key, value);
-            }
+            ParameterParser parser = new ParameterParser(map, encoding);
+            parser.parse(data, 0, data.length);
+            parser.finish();
         }
 
     }
@@ -65,8 +65,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.TimeZone;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -123,6 +124,13 @@ import org.apache.catalina.util.StringManager;
  *   <code>%h %l %u %t "%r" %s %b "%{Referer}i" "%{User-Agent}i"</code>
  * </ul>
  *
+ * <p>With the <code>asynchronous</code> property set, request threads only
+ * queue their formatted lines, which a background thread writes to the log
+ * file in batches.  The <code>flushInterval</code> property bounds the time
+ * a line may be held before it is written, and the <code>bufferSize</code>
+ * and <code>queueSize</code> properties size the output buffer and the
+ * queue of pending lines.</p>
+ *
  * <p><b>FIXME</b> - Improve the parsing so that things like
  * <code>%{xxx}i</code> can be implemented.</p>
  *
@@ -154,11 +162,33 @@ public final class AccessLogValve
     // ----------------------------------------------------- Instance Variables
 
 
+    /**
+     * Should lines be written by a background thread?
+     */
+    private boolean asynchronous = false;
+
+
+    /**
+     * The size in bytes of the output buffer used in asynchronous mode.
+     */
+    private int bufferSize = 65536;
+
+
+    /**
+     * Per-thread buffers in which log lines are formatted.
+     */
+    private static final ThreadLocal buffers = new ThreadLocal() {
+        protected Object initialValue() {
+            return (new StringBuffer(256));
+        }
+    };
+
+
     /**
      * The as-of date for the currently open log file, or a zero-length
      * string if there is no open log file.
      */
-    private String dateStamp = "";
+    private volatile String dateStamp = "";
 
 
     /**
@@ -174,12 +204,31 @@ public final class AccessLogValve
         "org.apache.catalina.valves.AccessLogValve/1.0";
 
 
+    /**
+     * The maximum number of milliseconds a line is held before it is
+     * written to the log file in asynchronous mode.
+     */
+    private int flushInterval = 1000;
+
+
     /**
      * The lifecycle event support for this component.
      */
     protected LifecycleSupport lifecycle = new LifecycleSupport(this);
 
 
+    /**
+     * The current date and its formatted forms, replaced once per second.
+     */
+    private volatile LogDate logDate = null;
+
+
+    /**
+     * The background writer used in asynchronous mode, if started.
+     */
+    private AccessLogWriter logWriter = null;
+
+
     /**
      * The set of month abbreviations for log messages.
      */
@@ -215,6 +264,13 @@ public final class AccessLogValve
     private String prefix = "access_log.";
 
 
+    /**
+     * The number of lines which may wait for the background writer in
+     * asynchronous mode.
+     */
+    private int queueSize = 8192;
+
+
     /**
      * The string manager for this package.
      */
@@ -241,72 +297,63 @@ public final class AccessLogValve
 
 
     /**
-     * A date formatter to format a Date into a date in the format
-     * "yyyy-MM-dd".
+     * When formatting log lines, we often use strings like this one (" ").
      */
-    private SimpleDateFormat dateFormatter = null;
+    private String space = " ";
 
 
     /**
-     * A date formatter to format Dates into a day string in the format
-     * "dd".
+     * Resolve hosts.
      */
-    private SimpleDateFormat dayFormatter = null;
+    private boolean resolveHosts = false;
 
 
-    /**
-     * A date formatter to format a Date into a month string in the format
-     * "MM".
-     */
-    private SimpleDateFormat monthFormatter = null;
+    // ------------------------------------------------------------- Properties
 
 
     /**
-     * A date formatter to format a Date into a year string in the format
-     * "yyyy".
+     * Return the asynchronous mode flag.
      */
-    private SimpleDateFormat yearFormatter = null;
+    public boolean isAsynchronous() {
 
+        return (asynchronous);
 
-    /**
-     * A date formatter to format a Date into a time in the format
-     * "kk:mm:ss" (kk is a 24-hour representation of the hour).
-     */
-    private SimpleDateFormat timeFormatter = null;
+    }
 
 
     /**
-     * The time zone relative to GMT.
+     * Set the asynchronous mode flag.  A change takes effect the next time
+     * this valve is started.
+     *
+     * @param asynchronous The new asynchronous mode flag
      */
-    private String timeZone = null;
+    public void setAsynchronous(boolean asynchronous) {
 
+        this.asynchronous = asynchronous;
 
-    /**
-     * The system time when we last updated the Date that this valve
-     * uses for log lines.
-     */
-    private Date currentDate = null;
+    }
 
 
     /**
-     * When formatting log lines, we often use strings like this one (" ").
+     * Return the size of the output buffer used in asynchronous mode.
      */
-    private String space = " ";
+    public int getBufferSize() {
 
+        return (bufferSize);
 
-    /**
-     * Resolve hosts.
-     */
-    private boolean resolveHosts = false;
+    }
 
 
     /**
-     * Instant when the log daily rotation was last checked.
+     * Set the size of the output buffer used in asynchronous mode.
+     *
+     * @param bufferSize The new buffer size in bytes
      */
-    private long rotationLastChecked = 0L;
+    public void setBufferSize(int bufferSize) {
 
+        this.bufferSize = bufferSize;
 
-    // ------------------------------------------------------------- Properties
+    }
 
 
     /**
@@ -331,6 +378,28 @@ public final class AccessLogValve
     }
 
 
+    /**
+     * Return the flush interval used in asynchronous mode.
+     */
+    public int getFlushInterval() {
+
+        return (flushInterval);
+
+    }
+
+
+    /**
+     * Set the flush interval used in asynchronous mode.
+     *
+     * @param flushInterval The new flush interval in milliseconds
+     */
+    public void setFlushInterval(int flushInterval) {
+
+        this.flushInterval = flushInterval;
+
+    }
+
+
     /**
      * Return descriptive information about this implementation.
      */
@@ -401,6 +470,28 @@ public final class AccessLogValve
     }
 
 
+    /**
+     * Return the size of the queue of lines used in asynchronous mode.
+     */
+    public int getQueueSize() {
+
+        return (queueSize);
+
+    }
+
+
+    /**
+     * Set the size of the queue of lines used in asynchronous mode.
+     *
+     * @param queueSize The new queue size
+     */
+    public void setQueueSize(int queueSize) {
+
+        this.queueSize = queueSize;
+
+    }
+
+
     /**
      * Return the log file suffix.
      */
@@ -467,8 +558,14 @@ public final class AccessLogValve
         // Pass this request on to the next valve in our pipeline
         context.invokeNext(request, response);
 
-        Date date = getDate();
-        StringBuffer result = new StringBuffer();
+        LogDate logDate = getLogDate();
+        Date date = logDate.date;
+        StringBuffer result = (StringBuffer) buffers.get();
+        if (result.capacity() > 8192) {
+            result = new StringBuffer(256);
+            buffers.set(result);
+        }
+        result.setLength(0);
 
         // Check to see if we should log using the "common" access log pattern
         if (common || combined) {
@@ -495,17 +592,8 @@ public final class AccessLogValve
                 result.append(space);
             }
 
-            result.append("[");
-            result.append(dayFormatter.format(date));            // Day
-            result.append('/');
-            result.append(lookup(monthFormatter.format(date))); // Month
-            result.append('/');
-            result.append(yearFormatter.format(date));            // Year
-            result.append(':');
-            result.append(timeFormatter.format(date));        // Time
-            result.append(space);
-            result.append(timeZone);                            // Time Zone
-            result.append("] \"");
+            result.append(logDate.timestamp);
+            result.append(" \"");
 
             result.append(hreq.getMethod());
             result.append(space);
@@ -525,10 +613,9 @@ public final class AccessLogValve
             int length = response.getContentCount();
 
             if (length <= 0)
-                value = "-";
+                result.append('-');
             else
-                value = "" + length;
-            result.append(value);
+                result.append(length);
 
             if (combined) {
                 result.append(space);
@@ -556,7 +643,7 @@ public final class AccessLogValve
             for (int i = 0; i < pattern.length(); i++) {
                 char ch = pattern.charAt(i);
                 if (replace) {
-                    result.append(replace(ch, date, request, response));
+                    result.append(replace(ch, logDate, request, response));
                     replace = false;
                 } else if (ch == '%') {
                     replace = true;
@@ -590,7 +677,8 @@ public final class AccessLogValve
 
     /**
      * Log the specified message to the log file, switching files if the date
-     * has changed since the previous log call.
+     * has changed since the previous log call.  In asynchronous mode, the
+     * message is queued for the background writer instead.
      *
      * @param message Message to be logged
      * @param date the current Date object (so this method doesn't need to
@@ -598,31 +686,26 @@ public final class AccessLogValve
      */
     public void log(String message, Date date) {
 
-        // Only do a logfile switch check once a second, max.
-        long systime = System.currentTimeMillis();
-        if ((systime - rotationLastChecked) > 1000) {
-
-            // We need a new currentDate
-            currentDate = new Date(systime);
-            rotationLastChecked = systime;
-
-            // Check for a change of date
-            String tsDate = dateFormatter.format(currentDate);
-
-            // If the date has changed, switch log files
-            if (!dateStamp.equals(tsDate)) {
-                synchronized (this) {
-                    if (!dateStamp.equals(tsDate)) {
-                        close();
-                        dateStamp = tsDate;
-                        open();
-                    }
+        AccessLogWriter logWriter = this.logWriter;
+        if (logWriter != null) {
+            logWriter.log(message);
+            return;
+        }
+
+        // If the date has changed, switch log files
+        String tsDate = getLogDate().dateStamp;
+        if (!dateStamp.equals(tsDate)) {
+            synchronized (this) {
+                if (!dateStamp.equals(tsDate)) {
+                    close();
+                    dateStamp = tsDate;
+                    open();
                 }
             }
-
         }
 
         // Log this message
+        PrintWriter writer = this.writer;
         if (writer != null) {
             writer.println(message);
         }
@@ -630,34 +713,13 @@ public final class AccessLogValve
     }
 
 
-    /**
-     * Return the month abbreviation for the specified month, which must
-     * be a two-digit String.
-     *
-     * @param month Month number ("01" .. "12").
-     */
-    private String lookup(String month) {
-
-        int index;
-        try {
-            index = Integer.parseInt(month) - 1;
-        } catch (Throwable t) {
-            index = 0;  // Can not happen, in theory
-        }
-        return (months[index]);
-
-    }
-
-
     /**
      * Open the new log file for the date specified by <code>dateStamp</code>.
      */
     private synchronized void open() {
 
         // Create the directory if necessary
-        File dir = new File(directory);
-        if (!dir.isAbsolute())
-            dir = new File(System.getProperty("catalina.base"), directory);
+        File dir = getDirectoryFile();
         dir.mkdirs();
 
         // Open the current log file
@@ -676,12 +738,12 @@ public final class AccessLogValve
      * Return the replacement text for the specified pattern character.
      *
      * @param pattern Pattern character identifying the desired text
-     * @param date the current Date so that this method doesn't need to
+     * @param logDate the current date so that this method doesn't need to
      *        create one
      * @param request Request being processed
      * @param response Response being processed
      */
-    private String replace(char pattern, Date date, Request request,
+    private String replace(char pattern, LogDate logDate, Request request,
                            Response response) {
 
         String value = null;
@@ -758,18 +820,7 @@ public final class AccessLogValve
             else
                 value = "-";
         } else if (pattern == 't') {
-            StringBuffer temp = new StringBuffer("[");
-            temp.append(dayFormatter.format(date));             // Day
-            temp.append('/');
-            temp.append(lookup(monthFormatter.format(date)));   // Month
-            temp.append('/');
-            temp.append(yearFormatter.format(date));            // Year
-            temp.append(':');
-            temp.append(timeFormatter.format(date));            // Time
-            temp.append(' ');
-            temp.append(timeZone);                              // Timezone
-            temp.append(']');
-            value = temp.toString();
+            value = logDate.timestamp;
         } else if (pattern == 'u') {
             if (hreq != null)
                 value = hreq.getRemoteUser();
@@ -795,21 +846,33 @@ public final class AccessLogValve
 
 
     /**
-     * This method returns a Date object that is accurate to within one
-     * second.  If a thread calls this method to get a Date and it's been
-     * less than 1 second since a new Date was created, this method
-     * simply gives out the same Date again so that the system doesn't
-     * spend time creating Date objects unnecessarily.
+     * Return the directory in which log files are created, resolved against
+     * the <code>catalina.base</code> directory if it is relative.
+     */
+    private File getDirectoryFile() {
+
+        File dir = new File(directory);
+        if (!dir.isAbsolute())
+            dir = new File(System.getProperty("catalina.base"), directory);
+        return (dir);
+
+    }
+
+
+    /**
+     * This method returns the current date, accurate to within one second.
+     * The date and its formatted forms are built once per second and shared
+     * by all the threads logging during that second.
      */
-    private Date getDate() {
+    private LogDate getLogDate() {
 
-        // Only create a new Date once per second, max.
         long systime = System.currentTimeMillis();
-        if ((systime - currentDate.getTime()) > 1000) {
-            currentDate = new Date(systime);
+        LogDate logDate = this.logDate;
+        if ((systime - logDate.second) >= 1000) {
+            logDate = new LogDate(systime, logDate.zone);
+            this.logDate = logDate;
         }
-
-        return currentDate;
+        return (logDate);
 
     }
 
@@ -869,26 +932,19 @@ public final class AccessLogValve
         lifecycle.fireLifecycleEvent(START_EVENT, null);
         started = true;
 
-        // Initialize the timeZone, Date formatters, and currentDate
+        // Initialize the current date
         TimeZone tz = TimeZone.getDefault();
-        timeZone = "" + (tz.getRawOffset() / (60 * 60 * 10));
-        if (timeZone.length() < 5)
-            timeZone = timeZone.substring(0, 1) + "0" +
-                timeZone.substring(1, timeZone.length());
-        dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
-        dateFormatter.setTimeZone(tz);
-        dayFormatter = new SimpleDateFormat("dd");
-        dayFormatter.setTimeZone(tz);
-        monthFormatter = new SimpleDateFormat("MM");
-        monthFormatter.setTimeZone(tz);
-        yearFormatter = new SimpleDateFormat("yyyy");
-        yearFormatter.setTimeZone(tz);
-        timeFormatter = new SimpleDateFormat("HH:mm:ss");
-        timeFormatter.setTimeZone(tz);
-        currentDate = new Date();
-        dateStamp = dateFormatter.format(currentDate);
+        logDate = new LogDate(System.currentTimeMillis(), tz);
 
-        open();
+        if (asynchronous) {
+            logWriter = new AccessLogWriter(getDirectoryFile(), prefix, suffix,
+                                            tz, bufferSize, flushInterval,
+                                            queueSize);
+            logWriter.start("AccessLogValve[" + prefix + "]");
+        } else {
+            dateStamp = logDate.dateStamp;
+            open();
+        }
 
     }
 
@@ -910,9 +966,88 @@ public final class AccessLogValve
         lifecycle.fireLifecycleEvent(STOP_EVENT, null);
         started = false;
 
+        if (logWriter != null) {
+            AccessLogWriter logWriter = this.logWriter;
+            this.logWriter = null;
+            logWriter.stop();
+        }
         close();
 
     }
 
 
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A second and the forms in which it is written to the log.
+     */
+    private static final class LogDate {
+
+        /**
+         * The first millisecond of the second.
+         */
+        final long second;
+
+        /**
+         * The time zone in which the date is formatted.
+         */
+        final TimeZone zone;
+
+        /**
+         * The date.
+         */
+        final Date date;
+
+        /**
+         * The date in the format "yyyy-MM-dd", used to name log files.
+         */
+        final String dateStamp;
+
+        /**
+         * The date in Common Log Format, including the brackets.
+         */
+        final String timestamp;
+
+        LogDate(long time, TimeZone zone) {
+            this.second = time - (time % 1000);
+            this.zone = zone;
+            this.date = new Date(time);
+            Calendar calendar = new GregorianCalendar(zone);
+            calendar.setTime(date);
+            int year = calendar.get(Calendar.YEAR);
+            int month = calendar.get(Calendar.MONTH);
+            int day = calendar.get(Calendar.DAY_OF_MONTH);
+
+            StringBuffer sb = new StringBuffer(32);
+            sb.append(year).append('-');
+            append2(sb, month + 1).append('-');
+            append2(sb, day);
+            this.dateStamp = sb.toString();
+
+            int offset = zone.getOffset(time) / (60 * 1000);
+            sb.setLength(0);
+            sb.append('[');
+            append2(sb, day).append('/');
+            sb.append(months[month]).append('/');
+            sb.append(year).append(':');
+            append2(sb, calendar.get(Calendar.HOUR_OF_DAY)).append(':');
+            append2(sb, calendar.get(Calendar.MINUTE)).append(':');
+            append2(sb, calendar.get(Calendar.SECOND)).append(' ');
+            sb.append((offset < 0) ? '-' : '+');
+            offset = Math.abs(offset);
+            append2(sb, offset / 60);
+            append2(sb, offset % 60).append(']');
+            this.timestamp = sb.toString();
+        }
+
+        private static StringBuffer append2(StringBuffer sb, int n) {
+            if (n < 10)
+                sb.append('0');
+            return (sb.append(n));
+        }
+
+    }
+
+
 }
@@ -0,0 +1,435 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+
+package org.apache.catalina.valves;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Background writer used by <code>AccessLogValve</code> in asynchronous
+ * mode.  Request threads hand their formatted lines to a bounded ring
+ * buffer without taking any lock, and a single background thread drains
+ * the ring, encodes the lines into a byte buffer and writes the buffer to
+ * a <code>FileChannel</code> when it is full or when the flush interval
+ * expires.  The background thread also switches to a new log file when
+ * the date changes.
+ * <p>
+ * When the ring is full, request threads wait for the background thread
+ * to catch up rather than dropping lines.
+ */
+
+final class AccessLogWriter implements Runnable {
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new writer.
+     *
+     * @param dir The directory in which log files are created
+     * @param prefix The prefix that is added to log file filenames
+     * @param suffix The suffix that is added to log file filenames
+     * @param zone The time zone used to date log files
+     * @param bufferSize The size of the output buffer in bytes
+     * @param flushInterval The maximum number of milliseconds a line is
+     *  buffered before it is written to the file
+     * @param queueSize The minimum number of lines the ring buffer holds
+     */
+    AccessLogWriter(File dir, String prefix, String suffix, TimeZone zone,
+                    int bufferSize, int flushInterval, int queueSize) {
+
+        this.dir = dir;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.flushInterval = Math.max(flushInterval, 1);
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, 1024));
+        this.dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
+        this.dateFormatter.setTimeZone(zone);
+
+        int capacity = 1;
+        while (capacity < queueSize)
+            capacity <<= 1;
+        this.ring = new AtomicReferenceArray(capacity);
+        this.mask = capacity - 1;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The line separator appended to each line.
+     */
+    private static final byte separator[] =
+        System.getProperty("line.separator").getBytes();
+
+
+    /**
+     * The output buffer, only accessed by the background thread.
+     */
+    private ByteBuffer buffer = null;
+
+
+    /**
+     * The channel of the currently open log file, if any.
+     */
+    private FileChannel channel = null;
+
+
+    /**
+     * The as-of date of the currently open log file.
+     */
+    private String dateStamp = "";
+
+
+    /**
+     * Date formatter used to name log files.
+     */
+    private SimpleDateFormat dateFormatter = null;
+
+
+    /**
+     * The directory in which log files are created.
+     */
+    private File dir = null;
+
+
+    /**
+     * The maximum time a line is buffered, in milliseconds.
+     */
+    private int flushInterval = 1000;
+
+
+    /**
+     * The sequence number of the next line to be taken from the ring,
+     * only written by the background thread.
+     */
+    private volatile long head = 0L;
+
+
+    /**
+     * The mask turning a sequence number into a ring index.
+     */
+    private int mask = 0;
+
+
+    /**
+     * The prefix that is added to log file filenames.
+     */
+    private String prefix = null;
+
+
+    /**
+     * The ring buffer of lines waiting to be written.
+     */
+    private AtomicReferenceArray ring = null;
+
+
+    /**
+     * Is the background thread running?
+     */
+    private volatile boolean running = false;
+
+
+    /**
+     * The suffix that is added to log file filenames.
+     */
+    private String suffix = null;
+
+
+    /**
+     * The sequence number of the next slot to be claimed by a request
+     * thread.
+     */
+    private AtomicLong tail = new AtomicLong();
+
+
+    /**
+     * The background thread.
+     */
+    private Thread thread = null;
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Queue the specified line, waiting for room in the ring buffer if it
+     * is full.  Lines logged after the writer has been stopped are
+     * discarded.
+     *
+     * @param line The line to be logged, without line separator
+     */
+    void log(String line) {
+
+        while (running) {
+            long t = tail.get();
+            long used = t - head;
+            if (used >= ring.length()) {
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(100000L);
+                continue;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                ring.set((int) (t & mask), line);
+                // Wake the writer early when the ring fills up
+                if (used == (ring.length() >> 1))
+                    LockSupport.unpark(thread);
+                return;
+            }
+        }
+
+    }
+
+
+    /**
+     * Start the background thread.
+     *
+     * @param name The name of the background thread
+     */
+    void start(String name) {
+
+        running = true;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+
+    /**
+     * Stop the background thread, after it has written all queued lines
+     * and closed the log file.
+     */
+    void stop() {
+
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            ;
+        }
+
+    }
+
+
+    // ------------------------------------------------------ Background Thread
+
+
+    /**
+     * The background thread that writes the queued lines.
+     */
+    public void run() {
+
+        long rotationLastChecked = 0L;
+        long nextFlush = System.currentTimeMillis() + flushInterval;
+        while (true) {
+            boolean stopping = !running;
+
+            // Switch log files if the date has changed
+            long now = System.currentTimeMillis();
+            if ((now - rotationLastChecked) >= 1000) {
+                rotationLastChecked = now;
+                String tsDate = dateFormatter.format(new Date(now));
+                if (!dateStamp.equals(tsDate)) {
+                    flush();
+                    close();
+                    dateStamp = tsDate;
+                    open();
+                }
+            }
+
+            // Move the queued lines to the output buffer
+            int count = 0;
+            String line = null;
+            while ((line = poll()) != null) {
+                write(line.getBytes());
+                write(separator);
+                count++;
+            }
+
+            now = System.currentTimeMillis();
+            if (stopping) {
+                flush();
+                close();
+                break;
+            }
+            if (now >= nextFlush) {
+                flush();
+                nextFlush = now + flushInterval;
+            }
+            if (count == 0)
+                LockSupport.parkNanos(this, (nextFlush - now) * 1000000L);
+        }
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Close the currently open log file, if any.
+     */
+    private void close() {
+
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ;
+        }
+        channel = null;
+
+    }
+
+
+    /**
+     * Write the output buffer to the log file.
+     */
+    private void flush() {
+
+        buffer.flip();
+        try {
+            while ((channel != null) && buffer.hasRemaining())
+                channel.write(buffer);
+        } catch (IOException e) {
+            ;
+        }
+        buffer.clear();
+
+    }
+
+
+    /**
+     * Open the log file for the date specified by <code>dateStamp</code>.
+     */
+    private void open() {
+
+        dir.mkdirs();
+        try {
+            String pathname = dir.getAbsolutePath() + File.separator +
+                prefix + dateStamp + suffix;
+            channel = new FileOutputStream(pathname, true).getChannel();
+        } catch (IOException e) {
+            channel = null;
+        }
+
+    }
+
+
+    /**
+     * Take the next line from the ring buffer, or return <code>null</code>
+     * if there is none.
+     */
+    private String poll() {
+
+        int index = (int) (head & mask);
+        String line = (String) ring.get(index);
+        if (line == null)
+            return (null);
+        ring.lazySet(index, null);
+        head = head + 1;
+        return (line);
+
+    }
+
+
+    /**
+     * Append the specified bytes to the output buffer, writing the buffer
+     * to the log file first if they do not fit.
+     */
+    private void write(byte b[]) {
+
+        if (b.length > buffer.remaining()) {
+            flush();
+            if (b.length > buffer.remaining()) {
+                try {
+                    ByteBuffer large = ByteBuffer.wrap(b);
+                    while ((channel != null) && large.hasRemaining())
+                        channel.write(large);
+                } catch (IOException e) {
+                    ;
+                }
+                return;
+            }
+        }
+        buffer.put(b);
+
+    }
+
+
+}
@@ -76,7 +76,13 @@ import org.apache.catalina.util.LifecycleSupport;
 import org.apache.catalina.util.StringManager;
 import org.apache.catalina.valves.ValveBase;
 import org.apache.catalina.valves.Constants;
+import org.apache.catalina.Logger;
+import java.util.ArrayList;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.sql.Timestamp;
 import java.sql.SQLException;
 import java.sql.DriverManager;
@@ -146,6 +152,16 @@ import java.sql.PreparedStatement;
  * to be defined.
  * </p>
  * <p>
+ * With <code>asynchronous="true"</code>, request threads only queue their
+ * log records, and a background thread writes them with JDBC batch
+ * inserts of up to <code>batchSize</code> records.  At most
+ * <code>queueSize</code> records may wait; when the queue is full, records
+ * are discarded, or request threads wait if <code>blockWhenFull</code> is
+ * set.  If the database cannot be reached, the background thread reconnects
+ * with a delay starting at <code>reconnectDelay</code> milliseconds and
+ * doubling after each failure, up to one minute.
+ * </p>
+ * <p>
  * If the request method is "common", only these fields are used:
  * <code>remoteHost, user, timeStamp, query, status, bytes</code>
  * </p>
@@ -159,7 +175,7 @@ import java.sql.PreparedStatement;
 
 public final class JDBCAccessLogValve 
     extends ValveBase 
-    implements Lifecycle {
+    implements Lifecycle, Runnable {
 
 
     // ----------------------------------------------------------- Constructors
@@ -236,6 +252,67 @@ public final class JDBCAccessLogValve
     private long currentTimeMillis;
 
 
+    /**
+     * Should records be written by a background thread?
+     */
+    private boolean asynchronous = false;
+
+
+    /**
+     * The maximum number of records written with one batch insert.
+     */
+    private int batchSize = 100;
+
+
+    /**
+     * Should request threads wait for room when the queue is full, rather
+     * than discard their record?
+     */
+    private boolean blockWhenFull = false;
+
+
+    /**
+     * The number of records discarded since it was last reported.
+     */
+    private AtomicLong dropped = new AtomicLong();
+
+
+    /**
+     * The maximum delay between two reconnection attempts.
+     */
+    private static final long MAX_RECONNECT_DELAY = 60000L;
+
+
+    /**
+     * The records waiting for the background thread, in asynchronous mode.
+     */
+    private BlockingQueue queue = null;
+
+
+    /**
+     * The maximum number of records waiting for the background thread.
+     */
+    private int queueSize = 1000;
+
+
+    /**
+     * The initial delay in milliseconds between reconnection attempts.
+     */
+    private long reconnectDelay = 1000L;
+
+
+    /**
+     * The background thread.
+     */
+    private Thread thread = null;
+
+
+    /**
+     * The background thread completion semaphore.
+     */
+    private volatile boolean threadDone = false;
+
+
     /**
      * The descriptive information about this implementation.
      */
@@ -419,6 +496,58 @@ public final class JDBCAccessLogValve
     }
 
 
+    /**
+     * Determines whether records are written by a background thread.
+     * 
+     * @param asynchronous <code>true</code> to queue records for a
+     * background thread.
+     */
+    public void setAsynchronous(boolean asynchronous) {
+        this.asynchronous = asynchronous;
+    }
+
+
+    /**
+     * Sets the maximum number of records written with one batch insert.
+     * 
+     * @param batchSize The maximum batch size.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Determines whether request threads wait when the queue is full,
+     * rather than discard their record.
+     * 
+     * @param blockWhenFull <code>true</code> to wait for room in the queue.
+     */
+    public void setBlockWhenFull(boolean blockWhenFull) {
+        this.blockWhenFull = blockWhenFull;
+    }
+
+
+    /**
+     * Sets the maximum number of records waiting to be written.
+     * 
+     * @param queueSize The queue capacity.
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+
+    /**
+     * Sets the initial delay between reconnection attempts.
+     * 
+     * @param reconnectDelay The delay in milliseconds.
+     */
+    public void setReconnectDelay(long reconnectDelay) {
+        this.reconnectDelay = reconnectDelay;
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -458,46 +587,42 @@ public final class JDBCAccessLogValve
             bytes = 0;
         int status = ((HttpResponse)response).getStatus();
 
+        String virtualHost = "";
+        String method = "";
+        String referer = "";
+        String userAgent = "";
+        if (pattern.equals("combined") && (hreq != null)) {
+            virtualHost = hreq.getServerName();
+            method = hreq.getMethod();
+            referer = hreq.getHeader("referer");
+            userAgent = hreq.getHeader("user-agent");
+        }
+
+        LogRecord record = new LogRecord
+            (remoteHost, user, getCurrentTimeMillis(), query, status, bytes,
+             virtualHost, method, referer, userAgent);
+
+        BlockingQueue queue = this.queue;
+        if (queue != null) {
+            if (blockWhenFull) {
+                try {
+                    queue.put(record);
+                } catch (InterruptedException e) {
+                    dropped.incrementAndGet();
+                }
+            } else if (!queue.offer(record)) {
+                dropped.incrementAndGet();
+            }
+            return;
+        }
+
         synchronized (ps) {
             try {
-                ps.setString(1, remoteHost);
-                ps.setString(2, user);
-                ps.setTimestamp(3, new Timestamp(getCurrentTimeMillis()));
-                ps.setString(4, query);
-                ps.setInt(5, status);
-                ps.setInt(6, bytes);
+                bind(record);
+                ps.executeUpdate();
             } catch(SQLException e) {
                 throw new ServletException(e);
             }
-            if (pattern.equals("common")) {
-                try {
-                    ps.executeUpdate();
-                } catch(SQLException e) {
-                    throw new ServletException(e);
-                }
-            } else if (pattern.equals("combined")) {
-                String virtualHost = "";
-                if(hreq != null)
-                    virtualHost = hreq.getServerName();
-                String method = "";
-                if(hreq != null)
-                    method = hreq.getMethod();
-                String referer = "";
-                if(hreq != null)
-                    referer = hreq.getHeader("referer");
-                String userAgent = "";
-                if(hreq != null)
-                    userAgent = hreq.getHeader("user-agent");
-                try {
-                    ps.setString(7, virtualHost);
-                    ps.setString(8, method);
-                    ps.setString(9, referer);
-                    ps.setString(10, userAgent);
-                    ps.executeUpdate();
-                } catch (SQLException e) {
-                    throw new ServletException(e);
-                }
-            }
         }
 
     }	
@@ -561,29 +686,21 @@ public final class JDBCAccessLogValve
         } catch (IllegalAccessException e) {
             throw new LifecycleException(e);
         }
-        Properties info = new Properties();
-        info.setProperty("autoReconnect", "true");
-        try {
-            conn = DriverManager.getConnection(connectionURL, info);
-            if (pattern.equals("common")) {
-                ps = conn.prepareStatement
-                    ("INSERT INTO " + tableName + " (" 
-                     + remoteHostField + ", " + userField + ", "
-                     + timestampField +", " + queryField + ", "
-                     + statusField + ", " + bytesField 
-                     + ") VALUES(?, ?, ?, ?, ?, ?)");
-            } else if (pattern.equals("combined")) {
-                ps = conn.prepareStatement
-                    ("INSERT INTO " + tableName + " (" 
-                     + remoteHostField + ", " + userField + ", "
-                     + timestampField + ", " + queryField + ", " 
-                     + statusField + ", " + bytesField + ", " 
-                     + virtualHostField + ", " + methodField + ", "
-                     + refererField + ", " + userAgentField
-                     + ") VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        if (asynchronous) {
+            try {
+                open();
+            } catch (SQLException e) {
+                log(sm.getString("jdbcAccessLogValve.connectFailed"), e);
+                close();
+            }
+            queue = new ArrayBlockingQueue(Math.max(queueSize, 1));
+            threadStart();
+        } else {
+            try {
+                open();
+            } catch (SQLException e) {
+                throw new LifecycleException(e);
             }
-        } catch (SQLException e) {
-            throw new LifecycleException(e);
         }
 
     }
@@ -603,6 +720,12 @@ public final class JDBCAccessLogValve
         lifecycle.fireLifecycleEvent(STOP_EVENT, null);
         started = false;
 
+        if (queue != null) {
+            threadStop();
+            queue = null;
+            return;
+        }
+
         try {
             if (ps != null)
                 ps.close();
@@ -624,4 +747,298 @@ public final class JDBCAccessLogValve
     }
 
 
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Bind the fields of the specified record to the insert statement.
+     *
+     * @param record The record to bind
+     *
+     * @exception SQLException if a database error occurs
+     */
+    private void bind(LogRecord record) throws SQLException {
+
+        ps.setString(1, record.remoteHost);
+        ps.setString(2, record.user);
+        ps.setTimestamp(3, new Timestamp(record.timestamp));
+        ps.setString(4, record.query);
+        ps.setInt(5, record.status);
+        ps.setInt(6, record.bytes);
+        if (pattern.equals("combined")) {
+            ps.setString(7, record.virtualHost);
+            ps.setString(8, record.method);
+            ps.setString(9, record.referer);
+            ps.setString(10, record.userAgent);
+        }
+
+    }
+
+
+    /**
+     * Close the database connection, ignoring any error.
+     */
+    private void close() {
+
+        try {
+            if (ps != null)
+                ps.close();
+        } catch (SQLException e) {
+            ;
+        }
+        try {
+            if (conn != null)
+                conn.close();
+        } catch (SQLException e) {
+            ;
+        }
+        ps = null;
+        conn = null;
+
+    }
+
+
+    /**
+     * Log a message on the Logger associated with our Container (if any).
+     *
+     * @param message Message to be logged
+     */
+    private void log(String message) {
+
+        Logger logger = null;
+        if (container != null)
+            logger = container.getLogger();
+        if (logger != null)
+            logger.log(this.toString() + ": " + message);
+        else
+            System.out.println(this.toString() + ": " + message);
+
+    }
+
+
+    /**
+     * Log a message on the Logger associated with our Container (if any).
+     *
+     * @param message Message to be logged
+     * @param throwable Associated exception
+     */
+    private void log(String message, Throwable throwable) {
+
+        Logger logger = null;
+        if (container != null)
+            logger = container.getLogger();
+        if (logger != null)
+            logger.log(this.toString() + ": " + message, throwable);
+        else {
+            System.out.println(this.toString() + ": " + message);
+            throwable.printStackTrace(System.out);
+        }
+
+    }
+
+
+    /**
+     * Open the database connection and prepare the insert statement.
+     *
+     * @exception SQLException if a database error occurs
+     */
+    private void open() throws SQLException {
+
+        Properties info = new Properties();
+        info.setProperty("autoReconnect", "true");
+        conn = DriverManager.getConnection(connectionURL, info);
+        if (pattern.equals("common")) {
+            ps = conn.prepareStatement
+                ("INSERT INTO " + tableName + " (" 
+                 + remoteHostField + ", " + userField + ", "
+                 + timestampField +", " + queryField + ", "
+                 + statusField + ", " + bytesField 
+                 + ") VALUES(?, ?, ?, ?, ?, ?)");
+        } else if (pattern.equals("combined")) {
+            ps = conn.prepareStatement
+                ("INSERT INTO " + tableName + " (" 
+                 + remoteHostField + ", " + userField + ", "
+                 + timestampField + ", " + queryField + ", " 
+                 + statusField + ", " + bytesField + ", " 
+                 + virtualHostField + ", " + methodField + ", "
+                 + refererField + ", " + userAgentField
+                 + ") VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+
+    }
+
+
+    /**
+     * Write the specified records with a single batch insert, connecting
+     * to the database first if needed.  A batch which fails on a new
+     * connection is discarded, so that a record the database rejects does
+     * not stop the background thread.
+     *
+     * @param batch The records to write
+     * @return <code>true</code> if the records have been written or
+     *  discarded, <code>false</code> if they should be written again
+     *  after a delay
+     */
+    private boolean write(ArrayList batch) {
+
+        boolean connected = (conn != null);
+        if (!connected) {
+            try {
+                open();
+            } catch (SQLException e) {
+                close();
+                return (false);
+            }
+        }
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                bind((LogRecord) batch.get(i));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            return (true);
+        } catch (SQLException e) {
+            log(sm.getString("jdbcAccessLogValve.writeFailed"), e);
+            close();
+            if (connected)
+                return (false);
+            dropped.addAndGet(batch.size());
+            return (true);
+        }
+
+    }
+
+
+    // ------------------------------------------------------ Background Thread
+
+
+    /**
+     * The background thread that writes the queued records.
+     */
+    public void run() {
+
+        ArrayList batch = new ArrayList(batchSize);
+        long delay = reconnectDelay;
+        while (true) {
+
+            long count = dropped.getAndSet(0L);
+            if (count > 0)
+                log(sm.getString("jdbcAccessLogValve.dropped",
+                                 Long.toString(count)));
+
+            // Take the next batch of records from the queue
+            if (batch.isEmpty()) {
+                if (threadDone && queue.isEmpty())
+                    break;
+                Object record = null;
+                try {
+                    record = queue.poll(1000L, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    ;
+                }
+                if (record == null)
+                    continue;
+                batch.add(record);
+                queue.drainTo(batch, batchSize - 1);
+            }
+
+            // Write it, waiting before the next attempt on failure
+            if (write(batch)) {
+                batch.clear();
+                delay = reconnectDelay;
+            } else if (threadDone) {
+                dropped.addAndGet(batch.size() + queue.size());
+                batch.clear();
+                queue.clear();
+            } else {
+                log(sm.getString("jdbcAccessLogValve.reconnect",
+                                 Long.toString(delay)));
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    ;
+                }
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+            }
+
+        }
+        close();
+
+    }
+
+
+    /**
+     * Start the background thread that writes the queued records.
+     */
+    private void threadStart() {
+
+        if (thread != null)
+            return;
+
+        threadDone = false;
+        thread = new Thread(this, "JDBCAccessLogValve[" + tableName + "]");
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+
+    /**
+     * Stop the background thread, after it has written the queued records.
+     */
+    private void threadStop() {
+
+        if (thread == null)
+            return;
+
+        threadDone = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            ;
+        }
+
+        thread = null;
+
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * The fields logged for one request.
+     */
+    private static final class LogRecord {
+
+        final String remoteHost;
+        final String user;
+        final long timestamp;
+        final String query;
+        final int status;
+        final int bytes;
+        final String virtualHost;
+        final String method;
+        final String referer;
+        final String userAgent;
+
+        LogRecord(String remoteHost, String user, long timestamp,
+                  String query, int status, int bytes, String virtualHost,
+                  String method, String referer, String userAgent) {
+            this.remoteHost = remoteHost;
+            this.user = user;
+            this.timestamp = timestamp;
+            this.query = query;
+            this.status = status;
+            this.bytes = bytes;
+            this.virtualHost = virtualHost;
+            this.method = method;
+            this.referer = referer;
+            this.userAgent = userAgent;
+        }
+
+    }
+
+
 }
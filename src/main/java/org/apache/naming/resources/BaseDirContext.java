@@ -160,6 +160,24 @@ public abstract class BaseDirContext implements DirContext {
     protected int cacheObjectMaxSize = 32768; // 32 KB
 
 
+    /**
+     * Max size of the cache, in KB.
+     */
+    protected int cacheMaxSize = 10240; // 10 MB
+
+
+    /**
+     * Max size of the content mapped outside of the heap, in KB.  Mapping is
+     * disabled by default, as a mapped file cannot be deleted or replaced on
+     * some platforms until the mapping is garbage collected.  A mapped file
+     * must not be truncated or rewritten in place while it may be served:
+     * reading past the new end of the file fails in the middle of a
+     * response.  Expired mapped entries are revalidated before they are
+     * served, which narrows, but does not close, that window.
+     */
+    protected int cacheMappedMaxSize = 0;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -244,6 +262,38 @@ public abstract class BaseDirContext implements DirContext {
     }
 
 
+    /**
+     * Set cacheMaxSize, in KB.
+     */
+    public void setCacheMaxSize(int cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+
+    /**
+     * Get cacheMaxSize, in KB.
+     */
+    public int getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+
+    /**
+     * Set cacheMappedMaxSize, in KB.
+     */
+    public void setCacheMappedMaxSize(int cacheMappedMaxSize) {
+        this.cacheMappedMaxSize = cacheMappedMaxSize;
+    }
+
+
+    /**
+     * Get cacheMappedMaxSize, in KB.
+     */
+    public int getCacheMappedMaxSize() {
+        return cacheMappedMaxSize;
+    }
+
+
     /**
      * Set cacheObjectMaxSize.
      */
@@ -73,6 +73,9 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.OperationNotSupportedException;
@@ -996,13 +999,43 @@ public class FileDirContext extends BaseDirContext {
          */
         public InputStream streamContent()
             throws IOException {
-            if (binaryContent == null) {
+            if ((binaryContent == null) && (mappedContent == null)) {
                 inputStream = new FileInputStream(file);
             }
             return super.streamContent();
         }
         
         
+        /**
+         * Map the file read-only into memory.  The mapping stays valid after
+         * the file is closed.
+         * 
+         * @return the mapped content
+         */
+        public ByteBuffer mapContent()
+            throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, 
+                                   channel.size());
+            } finally {
+                raf.close();
+            }
+        }
+
+
+        /**
+         * Open a channel reading the file.
+         *
+         * @return a new channel
+         */
+        public FileChannel openChannel()
+            throws IOException {
+            return new FileInputStream(file).getChannel();
+        }
+
+
     }
 
 
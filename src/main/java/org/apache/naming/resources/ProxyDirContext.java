@@ -64,12 +64,15 @@
 
 package org.apache.naming.resources;
 
-import java.util.Collections;
 import java.util.Hashtable;
-import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 
 import javax.naming.Context;
 import javax.naming.Name;
@@ -83,8 +86,6 @@ import javax.naming.directory.SearchControls;
 
 import org.apache.naming.StringManager;
 
-import org.apache.commons.collections.LRUMap;
-
 /**
  * Proxy Directory Context implementation.
  *
@@ -115,7 +116,11 @@ public class ProxyDirContext implements DirContext {
             // Initialize parameters based on the associated dir context, like
             // the caching policy.
             if (((BaseDirContext) dirContext).isCached()) {
-                cache = Collections.synchronizedMap(new LRUMap(cacheSize));
+                cacheMaxSize = ((BaseDirContext) dirContext).getCacheMaxSize();
+                cacheMappedMaxSize = 
+                    ((BaseDirContext) dirContext).getCacheMappedMaxSize();
+                cache = new ResourceCache(cacheMaxSize * 1024L,
+                                          cacheMappedMaxSize * 1024L);
                 cacheTTL = ((BaseDirContext) dirContext).getCacheTTL();
                 cacheObjectMaxSize = 
                     ((BaseDirContext) dirContext).getCacheObjectMaxSize();
@@ -136,7 +141,8 @@ public class ProxyDirContext implements DirContext {
         this.dirContext = dirContext;
         this.vPath = vPath;
         this.cache = proxyDirContext.cache;
-        this.cacheSize = proxyDirContext.cacheSize;
+        this.cacheMaxSize = proxyDirContext.cacheMaxSize;
+        this.cacheMappedMaxSize = proxyDirContext.cacheMappedMaxSize;
         this.cacheTTL = proxyDirContext.cacheTTL;
         this.cacheObjectMaxSize = proxyDirContext.cacheObjectMaxSize;
         this.hostName = proxyDirContext.hostName;
@@ -187,13 +193,22 @@ public class ProxyDirContext implements DirContext {
      * Cache.
      * Path -> Cache entry.
      */
-    protected Map cache = null;
+    protected ResourceCache cache = null;
+
+
+    /**
+     * Max size of the cache, in KB.
+     */
+    protected int cacheMaxSize = 10240; // 10 MB
 
 
     /**
-     * Cache size
+     * Max size of the content mapped outside of the heap, in KB.  A mapped
+     * file must not be truncated or rewritten in place while it may be
+     * served, so expired mapped entries are revalidated before they are
+     * served rather than in the background.
      */
-    protected int cacheSize = 1000;
+    protected int cacheMappedMaxSize = 0;
 
 
     /**
@@ -208,6 +223,29 @@ public class ProxyDirContext implements DirContext {
     protected int cacheObjectMaxSize = 32768; // 32 KB
 
 
+    /**
+     * Executor revalidating expired cache entries in the background, shared
+     * by all the proxy dir contexts.
+     */
+    private static final ThreadPoolExecutor revalidator =
+        new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                               new LinkedBlockingQueue(),
+                               new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ProxyDirContext revalidation");
+                thread.setDaemon(true);
+                thread.setContextClassLoader
+                    (ProxyDirContext.class.getClassLoader());
+                return (thread);
+            }
+        });
+
+
+    static {
+        revalidator.allowCoreThreadTimeOut(true);
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -246,6 +284,40 @@ public class ProxyDirContext implements DirContext {
     }
 
 
+    /**
+     * Cache a variant of the content of the named resource, such as the
+     * content encoded with a given content coding, next to the content
+     * itself.  The variant is dropped along with the cache entry of the
+     * resource, and so is never served once the resource has changed.
+     * Variants held as binary content are accounted for in the size of the
+     * cache, and are not cached if they are larger than the maximum size
+     * of a cached resource.
+     *
+     * @param name The name of the resource
+     * @param resource The resource, as returned by a lookup of the name
+     * @param variantName The name of the variant
+     * @param variant The variant
+     * @return <code>true</code> if the variant has been cached
+     */
+    public boolean cacheVariant(String name, Resource resource,
+                                String variantName, Object variant) {
+        if (cache == null)
+            return false;
+        int length = 0;
+        if (variant instanceof byte[]) {
+            length = ((byte[]) variant).length;
+            if (length >= cacheObjectMaxSize)
+                return false;
+        }
+        CacheEntry entry = cache.lookup(name);
+        if ((entry == null) || (entry.resource != resource))
+            return false;
+        if (!resource.addVariant(variantName, variant))
+            return false;
+        return cache.grow(entry, length);
+    }
+
+
     // -------------------------------------------------------- Context Methods
 
 
@@ -1371,31 +1443,33 @@ public class ProxyDirContext implements DirContext {
 
 
     /**
-     * Lookup in cache.
+     * Lookup in cache.  An expired entry is still returned, and revalidated
+     * in the background, unless its content is mapped from a file: the file
+     * may have been truncated, so such an entry is revalidated first, and
+     * loaded again if it is no longer valid.
      */
     protected CacheEntry cacheLookup(String name) {
         if (cache == null)
             return (null);
-        CacheEntry cacheEntry = (CacheEntry) cache.get(name);
+        CacheEntry cacheEntry = cache.lookup(name);
+        if ((cacheEntry != null) && !validate(cacheEntry)) {
+            if (cacheEntry.mappedSize == 0) {
+                cacheRevalidate(cacheEntry);
+            } else if (revalidate(cacheEntry)) {
+                cacheEntry.timestamp = System.currentTimeMillis() + cacheTTL;
+            } else {
+                cache.unload(cacheEntry);
+                cacheEntry = null;
+            }
+        }
         if (cacheEntry == null) {
             cacheEntry = new CacheEntry();
             cacheEntry.name = name;
             // Load entry
             if (!cacheLoad(cacheEntry))
                 return null;
-            return (cacheEntry);
-        } else {
-            if (!validate(cacheEntry)) {
-                if (!revalidate(cacheEntry)) {
-                    cacheUnload(cacheEntry.name);
-                    return (null);
-                } else {
-                    cacheEntry.timestamp = 
-                        System.currentTimeMillis() + cacheTTL;
-                }
-            }
-            return (cacheEntry);
         }
+        return (cacheEntry);
     }
 
 
@@ -1403,12 +1477,36 @@ public class ProxyDirContext implements DirContext {
      * Validate entry.
      */
     protected boolean validate(CacheEntry entry) {
-        if ((entry.resource != null) 
-            && (entry.resource.getContent() != null) 
-            && (System.currentTimeMillis() < entry.timestamp)) {
-            return true;
+        return (System.currentTimeMillis() < entry.timestamp);
+    }
+
+
+    /**
+     * Revalidate entry in the background, unless a revalidation is already
+     * pending.  The entry is removed from the cache if it is no longer
+     * valid.
+     */
+    protected void cacheRevalidate(final CacheEntry entry) {
+        synchronized (entry) {
+            if (entry.revalidating)
+                return;
+            entry.revalidating = true;
         }
-        return false;
+        revalidator.execute(new Runnable() {
+            public void run() {
+                try {
+                    if (revalidate(entry))
+                        entry.timestamp = 
+                            System.currentTimeMillis() + cacheTTL;
+                    else
+                        cache.unload(entry);
+                } finally {
+                    synchronized (entry) {
+                        entry.revalidating = false;
+                    }
+                }
+            }
+        });
     }
 
 
@@ -1516,12 +1614,33 @@ public class ProxyDirContext implements DirContext {
                 }
             }
         }
+
+        // Map larger object content outside of the heap
+        if ((entry.resource != null) && (entry.resource.getContent() == null) 
+            && (entry.resource.getMappedContent() == null)
+            && (entry.attributes.getContentLength() >= cacheObjectMaxSize)
+            && (entry.attributes.getContentLength() <= Integer.MAX_VALUE)
+            && cache.reserve(entry.attributes.getContentLength())) {
+            long length = entry.attributes.getContentLength();
+            ByteBuffer content = null;
+            try {
+                content = entry.resource.mapContent();
+            } catch (IOException e) {
+                ; // Ignore
+            }
+            if ((content != null) && (content.remaining() == length)) {
+                entry.resource.setMappedContent(content);
+                entry.mappedSize = length;
+            } else {
+                cache.release(length);
+            }
+        }
         
         // Set timestamp
         entry.timestamp = System.currentTimeMillis() + cacheTTL;
 
         // Add new entry to cache
-        cache.put(name, entry);
+        cache.load(entry);
 
         return true;
 
@@ -1534,7 +1653,7 @@ public class ProxyDirContext implements DirContext {
     protected boolean cacheUnload(String name) {
         if (cache == null)
             return false;
-        return (cache.remove(name) != null);
+        return (cache.unload(name));
     }
 
 
@@ -1547,7 +1666,11 @@ public class ProxyDirContext implements DirContext {
         // ------------------------------------------------- Instance Variables
 
 
-        long timestamp = -1;
+        volatile long timestamp = -1;
+        volatile long accessed = 0;
+        boolean revalidating = false;
+        int size = 0;
+        long mappedSize = 0;
         String name = null;
         ResourceAttributes attributes = null;
         Resource resource = null;
@@ -1559,6 +1682,9 @@ public class ProxyDirContext implements DirContext {
 
         public void recycle() {
             timestamp = -1;
+            accessed = 0;
+            size = 0;
+            mappedSize = 0;
             name = null;
             attributes = null;
             resource = null;
@@ -66,6 +66,11 @@ package org.apache.naming.resources;
 import java.io.InputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * Encapsultes the contents of a resource.
@@ -106,6 +111,20 @@ public class Resource {
      * Input stream.
      */
     protected InputStream inputStream = null;
+
+
+    /**
+     * Content held outside of the heap, in a direct or mapped buffer.
+     */
+    protected ByteBuffer mappedContent = null;
+    
+    
+    /**
+     * Variants of the content, such as the content encoded with a given
+     * content coding, keyed by name.  The map is never modified once it has
+     * been published.
+     */
+    protected volatile Map variants = null;
     
     
     // ------------------------------------------------------------- Properties
@@ -121,6 +140,9 @@ public class Resource {
         if (binaryContent != null) {
             return new ByteArrayInputStream(binaryContent);
         }
+        if (mappedContent != null) {
+            return new ByteBufferInputStream(mappedContent.duplicate());
+        }
         return inputStream;
     }
     
@@ -155,4 +177,153 @@ public class Resource {
     }
     
     
+    /**
+     * Mapped content accessor.  The returned buffer is a view of the
+     * content with its own position, which the caller may consume.
+     * 
+     * @return content held outside of the heap, or <code>null</code>
+     */
+    public ByteBuffer getMappedContent() {
+        if (mappedContent == null)
+            return null;
+        return mappedContent.duplicate();
+    }
+    
+    
+    /**
+     * Mapped content mutator.
+     * 
+     * @param mappedContent New content held outside of the heap
+     */
+    public void setMappedContent(ByteBuffer mappedContent) {
+        this.mappedContent = mappedContent;
+    }
+    
+    
+    /**
+     * Map the content of this resource into memory, without reading it into
+     * the heap.  The default implementation does not support mapping.
+     * 
+     * @return the mapped content, or <code>null</code> if this resource
+     * cannot be mapped
+     */
+    public ByteBuffer mapContent()
+        throws IOException {
+        return null;
+    }
+    
+    
+    /**
+     * Open a channel reading the content of this resource, which allows it
+     * to be transferred to another channel without being copied through
+     * the heap.  The caller must close the channel.  The default
+     * implementation does not support channels.
+     * 
+     * @return a new channel, or <code>null</code> if the content of this
+     * resource is not backed by a file
+     */
+    public FileChannel openChannel()
+        throws IOException {
+        return null;
+    }
+    
+    
+    /**
+     * Variant accessor.
+     * 
+     * @param name Name of the variant
+     * @return the variant, or <code>null</code>
+     */
+    public Object getVariant(String name) {
+        Map variants = this.variants;
+        if (variants == null)
+            return null;
+        return variants.get(name);
+    }
+    
+    
+    /**
+     * Add a variant of the content, unless a variant with the same name
+     * has already been added.
+     * 
+     * @param name Name of the variant
+     * @param variant The variant
+     * @return <code>true</code> if the variant has been added
+     */
+    public synchronized boolean addVariant(String name, Object variant) {
+        HashMap newVariants = null;
+        if (variants == null) {
+            newVariants = new HashMap();
+        } else if (variants.containsKey(name)) {
+            return false;
+        } else {
+            newVariants = new HashMap(variants);
+        }
+        newVariants.put(name, variant);
+        variants = newVariants;
+        return true;
+    }
+    
+    
+    /**
+     * Return the total length of the variants held as binary content.
+     */
+    public int getVariantsLength() {
+        Map variants = this.variants;
+        if (variants == null)
+            return 0;
+        int length = 0;
+        Iterator values = variants.values().iterator();
+        while (values.hasNext()) {
+            Object value = values.next();
+            if (value instanceof byte[])
+                length += ((byte[]) value).length;
+        }
+        return length;
+    }
+    
+    
+    // ------------------------------------ ByteBufferInputStream Inner Class
+    
+    
+    /**
+     * Input stream reading the remaining content of a buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        
+        private ByteBuffer buffer;
+        
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        public int read() {
+            if (!buffer.hasRemaining())
+                return -1;
+            return buffer.get() & 0xff;
+        }
+        
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+        
+        public long skip(long n) {
+            n = Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + (int) n);
+            return n;
+        }
+        
+        public int available() {
+            return buffer.remaining();
+        }
+        
+    }
+    
+    
 }
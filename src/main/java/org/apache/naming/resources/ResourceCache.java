@@ -0,0 +1,448 @@
+/*
+ * ====================================================================
+ *
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 1999 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ * [Additional notices, if required by prior licensing conditions]
+ *
+ */
+
+
+package org.apache.naming.resources;
+
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Cache of the entries of a <code>ProxyDirContext</code>, bounded by the
+ * memory its entries hold rather than by their number.  Lookups never take
+ * a lock: entries live in a concurrent map, and a lookup only records the
+ * time the entry was last used.  When the total weight of the entries goes
+ * over the maximum size, the thread which added the last entry evicts the
+ * least recently used entries, down to a lower watermark so that eviction
+ * is not repeated on every addition.
+ * <p>
+ * The weight of an entry is a fixed overhead, accounting for its name and
+ * attributes, plus the length of its cached content and of the variants
+ * of that content added later, if any.  Content mapped outside of the heap
+ * is accounted for separately, against its own budget: room for it is
+ * reserved before the content is mapped, evicting the least recently used
+ * mapped entries if needed, and released when the entry leaves the cache.
+ * The mapping itself is only released when the buffer is garbage collected.
+ */
+public final class ResourceCache {
+
+
+    // -------------------------------------------------------------- Constants
+
+
+    /**
+     * The weight of an entry without content.
+     */
+    private static final int ENTRY_OVERHEAD = 512;
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    /**
+     * Construct a new cache.
+     *
+     * @param maxSize The maximum total weight of the entries, in bytes
+     * @param mappedMaxSize The maximum total length of the content mapped
+     *  outside of the heap, in bytes
+     */
+    public ResourceCache(long maxSize, long mappedMaxSize) {
+
+        this.maxSize = maxSize;
+        this.mappedMaxSize = mappedMaxSize;
+
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The entries, keyed by name.
+     */
+    private ConcurrentHashMap entries = new ConcurrentHashMap();
+
+
+    /**
+     * Lock held by the thread evicting entries.
+     */
+    private ReentrantLock evictionLock = new ReentrantLock();
+
+
+    /**
+     * The maximum total length of the mapped content.
+     */
+    private long mappedMaxSize = 0L;
+
+
+    /**
+     * The total length of the mapped content.
+     */
+    private AtomicLong mappedSize = new AtomicLong();
+
+
+    /**
+     * The maximum total weight of the entries.
+     */
+    private long maxSize = 0L;
+
+
+    /**
+     * The total weight of the entries.
+     */
+    private AtomicLong size = new AtomicLong();
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the number of entries.
+     */
+    public int getCount() {
+
+        return (entries.size());
+
+    }
+
+
+    /**
+     * Return the maximum total length of the mapped content, in bytes.
+     */
+    public long getMappedMaxSize() {
+
+        return (mappedMaxSize);
+
+    }
+
+
+    /**
+     * Return the total length of the mapped content, in bytes.
+     */
+    public long getMappedSize() {
+
+        return (mappedSize.get());
+
+    }
+
+
+    /**
+     * Return the maximum total weight of the entries, in bytes.
+     */
+    public long getMaxSize() {
+
+        return (maxSize);
+
+    }
+
+
+    /**
+     * Return the total weight of the entries, in bytes.
+     */
+    public long getSize() {
+
+        return (size.get());
+
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the entry with the specified name, or <code>null</code>.
+     *
+     * @param name The name of the entry
+     */
+    ProxyDirContext.CacheEntry lookup(String name) {
+
+        ProxyDirContext.CacheEntry entry =
+            (ProxyDirContext.CacheEntry) entries.get(name);
+        if (entry != null) {
+            long now = System.currentTimeMillis();
+            if (entry.accessed != now)
+                entry.accessed = now;
+        }
+        return (entry);
+
+    }
+
+
+    /**
+     * Add the specified entry, replacing any entry with the same name, and
+     * evict entries if the cache has grown over its maximum size.  The
+     * entry must not be modified, except for its timestamp and through
+     * <code>grow()</code>, once it has been added.
+     *
+     * @param entry The entry to add
+     */
+    void load(ProxyDirContext.CacheEntry entry) {
+
+        entry.size = weigh(entry);
+        entry.accessed = System.currentTimeMillis();
+        ProxyDirContext.CacheEntry old = (ProxyDirContext.CacheEntry)
+            entries.put(entry.name, entry);
+        size.addAndGet(entry.size);
+        if (old != null)
+            removed(old);
+        shrink();
+
+    }
+
+
+    /**
+     * Add the specified weight to an entry, for a variant of its content
+     * which has been added to its resource, and evict entries if the cache
+     * has grown over its maximum size.
+     *
+     * @param entry The entry
+     * @param weight The weight to add
+     * @return <code>true</code> if the entry is still in the cache
+     */
+    boolean grow(ProxyDirContext.CacheEntry entry, int weight) {
+
+        synchronized (entry) {
+            if (entries.get(entry.name) != entry)
+                return (false);
+            entry.size += weight;
+            size.addAndGet(weight);
+        }
+        shrink();
+        return (true);
+
+    }
+
+
+    /**
+     * Reserve room for the specified length of mapped content, evicting the
+     * least recently used mapped entries if needed.  The reservation is
+     * released when the entry holding the content is removed, or by
+     * <code>release()</code> if the content could not be mapped.
+     *
+     * @param length The length of the content
+     * @return <code>true</code> if the room has been reserved
+     */
+    boolean reserve(long length) {
+
+        if (length > mappedMaxSize)
+            return (false);
+        if (mappedSize.addAndGet(length) <= mappedMaxSize)
+            return (true);
+        evictionLock.lock();
+        try {
+            evict(maxSize, mappedMaxSize);
+        } finally {
+            evictionLock.unlock();
+        }
+        if (mappedSize.get() <= mappedMaxSize)
+            return (true);
+        mappedSize.addAndGet(-length);
+        return (false);
+
+    }
+
+
+    /**
+     * Release room reserved for mapped content which has not been added to
+     * the cache.
+     *
+     * @param length The length of the content
+     */
+    void release(long length) {
+
+        mappedSize.addAndGet(-length);
+
+    }
+
+
+    /**
+     * Remove the entry with the specified name.
+     *
+     * @param name The name of the entry
+     * @return <code>true</code> if an entry was removed
+     */
+    boolean unload(String name) {
+
+        ProxyDirContext.CacheEntry entry =
+            (ProxyDirContext.CacheEntry) entries.remove(name);
+        if (entry == null)
+            return (false);
+        removed(entry);
+        return (true);
+
+    }
+
+
+    /**
+     * Remove the specified entry, if it is still the one cached under its
+     * name.
+     *
+     * @param entry The entry to remove
+     * @return <code>true</code> if the entry was removed
+     */
+    boolean unload(ProxyDirContext.CacheEntry entry) {
+
+        if (!entries.remove(entry.name, entry))
+            return (false);
+        removed(entry);
+        return (true);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Release the weight and the mapped content of an entry which has just
+     * been removed from the map.
+     *
+     * @param entry The removed entry
+     */
+    private void removed(ProxyDirContext.CacheEntry entry) {
+
+        synchronized (entry) {
+            size.addAndGet(-entry.size);
+            entry.size = 0;
+        }
+        mappedSize.addAndGet(-entry.mappedSize);
+
+    }
+
+
+    /**
+     * Evict entries if the cache has grown over its maximum size, unless
+     * another thread is already doing so.
+     */
+    private void shrink() {
+
+        if ((size.get() > maxSize) && evictionLock.tryLock()) {
+            try {
+                evict(maxSize - (maxSize / 10), mappedMaxSize);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+
+    }
+
+
+    /**
+     * Evict the least recently used entries, until the total weight and
+     * the total length of the mapped content are under the specified
+     * targets.  Only entries holding mapped content are evicted once the
+     * total weight is under its target.
+     *
+     * @param target The target total weight
+     * @param mappedTarget The target total length of the mapped content
+     */
+    private void evict(long target, long mappedTarget) {
+
+        // Freeze the access times, which concurrent lookups keep updating
+        Object snapshot[] = entries.values().toArray();
+        final long accessed[] = new long[snapshot.length];
+        Integer order[] = new Integer[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            accessed[i] = ((ProxyDirContext.CacheEntry) snapshot[i]).accessed;
+            order[i] = new Integer(i);
+        }
+        Arrays.sort(order, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long a1 = accessed[((Integer) o1).intValue()];
+                long a2 = accessed[((Integer) o2).intValue()];
+                return ((a1 < a2) ? -1 : ((a1 == a2) ? 0 : 1));
+            }
+        });
+
+        for (int i = 0; i < order.length; i++) {
+            boolean overWeight = (size.get() > target);
+            boolean overMapped = (mappedSize.get() > mappedTarget);
+            if (!overWeight && !overMapped)
+                break;
+            ProxyDirContext.CacheEntry entry = (ProxyDirContext.CacheEntry)
+                snapshot[order[i].intValue()];
+            if (overWeight || (entry.mappedSize > 0))
+                unload(entry);
+        }
+
+    }
+
+
+    /**
+     * Return the weight of the specified entry.
+     */
+    private static int weigh(ProxyDirContext.CacheEntry entry) {
+
+        int weight = ENTRY_OVERHEAD;
+        if ((entry.resource != null)
+            && (entry.resource.getContent() != null))
+            weight += entry.resource.getContent().length;
+        if (entry.resource != null)
+            weight += entry.resource.getVariantsLength();
+        return (weight);
+
+    }
+
+
+}
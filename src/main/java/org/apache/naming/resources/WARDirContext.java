@@ -978,7 +978,7 @@ public class WARDirContext extends BaseDirContext {
         public InputStream streamContent()
             throws IOException {
             try {
-                if (binaryContent == null) {
+                if ((binaryContent == null) && (mappedContent == null)) {
                     inputStream = base.getInputStream(entry);
                 }
             } catch (ZipException e) {
@@ -0,0 +1,113 @@
+package org.apache.catalina.connector.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.catalina.Connector;
+import org.apache.catalina.Container;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.Request;
+import org.apache.catalina.Response;
+
+/**
+ * Checks that a response is sent right away on a keep-alive connection
+ * when the client has only sent part of its next request, or the blank
+ * line that may follow a request body, for both HTTP connectors.
+ */
+public class KeepAliveTest {
+
+    private static final int PORT = 18089;
+
+    public static void main(String[] args) throws Exception {
+        boolean passed = test(new HttpConnector())
+            & test(new NioHttpConnector());
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean test(Connector connector) throws Exception {
+        Container container = (Container) Proxy.newProxyInstance
+            (KeepAliveTest.class.getClassLoader(),
+             new Class[] { Container.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method,
+                                     Object[] args) throws Throwable {
+                    if (method.getName().equals("invoke")) {
+                        HttpServletRequest request = (HttpServletRequest)
+                            ((Request) args[0]).getRequest();
+                        ((Response) args[1]).getResponse().getWriter().print
+                            ("hello " + request.getRequestURI() + " "
+                             + request.getParameter("a"));
+                    }
+                    return (null);
+                }
+            });
+        connector.getClass().getMethod("setPort", new Class[] { int.class })
+            .invoke(connector, new Object[] { new Integer(PORT) });
+        connector.setContainer(container);
+        connector.initialize();
+        ((Lifecycle) connector).start();
+        boolean passed = true;
+        try {
+            Socket socket = new Socket("localhost", PORT);
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            // A request body followed by a blank line
+            send(out, "POST /post HTTP/1.1\r\nHost: localhost\r\n"
+                 + "Content-Type: application/x-www-form-urlencoded\r\n"
+                 + "Content-Length: 3\r\n\r\na=1\r\n");
+            passed &= check(connector, in, "hello /post 1");
+
+            // A request followed by the beginning of the next one
+            send(out, "GET /first?a=2 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                 + "GET /second?a=3 HTTP/1.1\r\nHo");
+            passed &= check(connector, in, "hello /first 2");
+            send(out, "st: localhost\r\n\r\n");
+            passed &= check(connector, in, "hello /second 3");
+
+            socket.close();
+        } finally {
+            ((Lifecycle) connector).stop();
+        }
+        return (passed);
+    }
+
+    private static void send(OutputStream out, String data)
+        throws IOException {
+        out.write(data.getBytes("ISO-8859-1"));
+        out.flush();
+    }
+
+    private static boolean check(Connector connector, InputStream in,
+                                 String expected) throws IOException {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        byte buffer[] = new byte[4096];
+        String name = connector.getClass().getName();
+        try {
+            while (received.toString("ISO-8859-1").indexOf(expected) < 0) {
+                int n = in.read(buffer);
+                if (n < 0) {
+                    System.out.println(name + ": connection closed before \""
+                                       + expected + "\"");
+                    return (false);
+                }
+                received.write(buffer, 0, n);
+            }
+        } catch (SocketTimeoutException e) {
+            System.out.println(name + ": timed out waiting for \""
+                               + expected + "\"");
+            return (false);
+        }
+        System.out.println(name + ": received \"" + expected + "\"");
+        return (true);
+    }
+
+}